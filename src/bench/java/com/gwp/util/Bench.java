@@ -0,0 +1,153 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * A small timing harness for the benchmarks in src/bench.
+ * <p>
+ * Each measurement first finds an iteration count that runs for about
+ * ROUND_NANOS, then runs WARMUP_ROUNDS untimed rounds so the JIT has
+ * compiled the code, then reports the median of MEASURED_ROUNDS timed
+ * rounds.  Bodies return a value that is folded into a volatile sink so the
+ * work cannot be optimised away.
+ * <p>
+ * Run a benchmark with <code>gradlew bench -Pbenchmark=ClassName</code>.  To
+ * compare with another build, run the same class with that build's classes
+ * ahead of this one's on the class path.
+ */
+final class Bench {
+
+    static final long ROUND_NANOS = 100_000_000L;
+    static final int WARMUP_ROUNDS = 10;
+    static final int MEASURED_ROUNDS = 10;
+
+    static volatile long sink;
+
+
+    /**
+     * Work measured by the harness
+     */
+    interface Body {
+        /**
+         * Runs the operation the given number of times
+         *
+         * @return Any value derived from the results
+         */
+        long run(int iterations) throws Exception;
+    }
+
+
+    private Bench() {
+    }
+
+
+    /**
+     * Returns the median time of one iteration of the body, in nanoseconds
+     */
+    static double nanosPerOp(Body body) throws Exception {
+        int iterations = calibrate(body);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += body.run(iterations);
+        }
+
+        double[] results = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < results.length; i++) {
+            long start = System.nanoTime();
+            sink += body.run(iterations);
+            results[i] = (double) (System.nanoTime() - start) / iterations;
+        }
+        return median(results);
+    }
+
+
+    /**
+     * Runs the body on several threads at once and returns the median total
+     * throughput, in operations per second.  Each round starts all threads
+     * together and ends when the last one finishes; a round's iterations are
+     * shared between the threads.
+     */
+    static double opsPerSecond(int threads, Body body) throws Exception {
+        int iterations = Math.max(1, calibrate(body) / threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                runTogether(pool, threads, body, iterations);
+            }
+
+            double[] results = new double[MEASURED_ROUNDS];
+            for (int i = 0; i < results.length; i++) {
+                long nanos = runTogether(pool, threads, body, iterations);
+                results[i] = (double) threads * iterations * 1e9 / nanos;
+            }
+            return median(results);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    private static long runTogether(ExecutorService pool, int threads, Body body, int iterations) throws Exception {
+        long[] startTime = new long[1];
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> startTime[0] = System.nanoTime());
+
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            futures[i] = pool.submit(() -> {
+                barrier.await();
+                sink += body.run(iterations);
+                return null;
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return System.nanoTime() - startTime[0];
+    }
+
+
+    /**
+     * Doubles the iteration count until one run takes a tenth of a round,
+     * then scales it to a full round
+     */
+    private static int calibrate(Body body) throws Exception {
+        int iterations = 1;
+        while (true) {
+            long start = System.nanoTime();
+            sink += body.run(iterations);
+            long nanos = System.nanoTime() - start;
+
+            if (nanos >= ROUND_NANOS / 10) {
+                return (int) Math.max(1, Math.min(Integer.MAX_VALUE, iterations * (ROUND_NANOS / (double) nanos)));
+            }
+            if (iterations >= Integer.MAX_VALUE / 2) {
+                return iterations;
+            }
+            iterations *= 2;
+        }
+    }
+
+
+    private static double median(double[] results) {
+        double[] sorted = results.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+
+    /**
+     * Prints one result line
+     */
+    static void report(String benchmark, String variant, double value, String unit) {
+        System.out.printf("%-44s %-28s %12.2f %s%n", benchmark, variant, value, unit);
+    }
+}
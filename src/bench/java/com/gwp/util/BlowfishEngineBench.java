@@ -0,0 +1,62 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.Random;
+
+
+/**
+ * Single threaded throughput of the Blowfish engine in ECB mode, and the
+ * cost of a key schedule.
+ * <p>
+ * Only methods the engine has always had are used, so the same class can be
+ * run with an older build's classes first on the class path to compare the
+ * engines.
+ */
+public class BlowfishEngineBench {
+
+    static final int[] SIZES = {8, 64, 1024, 64 * 1024, 1024 * 1024};
+
+
+    public static void main(String[] args) throws Exception {
+        byte[] key = new byte[56];
+        Random random = new Random(15);
+        random.nextBytes(key);
+
+        Blowfish agent = new Blowfish();
+        agent.initialize(key, key.length);
+
+        for (int size : SIZES) {
+            byte[] input = new byte[size];
+            random.nextBytes(input);
+            byte[] encrypted = new byte[agent.getOutputLength(size)];
+            byte[] decrypted = new byte[encrypted.length];
+
+            double encrypt = Bench.nanosPerOp(iterations -> {
+                for (int i = 0; i < iterations; i++) {
+                    agent.encrypt(input, 0, encrypted, 0, size);
+                }
+                return encrypted[size - 1];
+            });
+            Bench.report("encrypt, " + size + " bytes", "Blowfish", size / encrypt * 1e9 / (1024 * 1024), "MiB/s");
+
+            double decrypt = Bench.nanosPerOp(iterations -> {
+                for (int i = 0; i < iterations; i++) {
+                    agent.decrypt(encrypted, 0, decrypted, 0, size);
+                }
+                return decrypted[size - 1];
+            });
+            Bench.report("decrypt, " + size + " bytes", "Blowfish", size / decrypt * 1e9 / (1024 * 1024), "MiB/s");
+        }
+
+        Bench.report("initialize, 56 byte key", "Blowfish", Bench.nanosPerOp(iterations -> {
+            Blowfish fresh = new Blowfish();
+            for (int i = 0; i < iterations; i++) {
+                fresh.initialize(key, key.length);
+            }
+            return fresh.getOutputLength(iterations);
+        }) / 1000, "us/op");
+    }
+}
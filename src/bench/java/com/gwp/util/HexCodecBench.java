@@ -0,0 +1,110 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.HexFormat;
+import java.util.Random;
+
+
+/**
+ * Cost of the hex conversions in Utilities on short and long inputs, with
+ * java.util.HexFormat for reference.
+ * <p>
+ * The string methods have always existed, so they can be compared with an
+ * older build by putting its classes first on the class path.  The codecs
+ * that write into caller arrays are skipped when the build lacks them.
+ */
+public class HexCodecBench {
+
+    static final int[] SIZES = {4, 32, 1024, 64 * 1024};
+
+
+    static void report(String name, int size, double nanos) {
+        Bench.report(name + ", " + size + " bytes", "", nanos, "ns/op");
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(17);
+        HexFormat format = HexFormat.of().withUpperCase();
+
+        for (int size : SIZES) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            String hex = Utilities.hexBytesToString(bytes);
+
+            report("hexBytesToString", size, Bench.nanosPerOp(iterations -> {
+                long sum = 0;
+                for (int i = 0; i < iterations; i++) {
+                    sum += Utilities.hexBytesToString(bytes).length();
+                }
+                return sum;
+            }));
+
+            report("hexStringToBytes", size, Bench.nanosPerOp(iterations -> {
+                long sum = 0;
+                for (int i = 0; i < iterations; i++) {
+                    sum += Utilities.hexStringToBytes(hex).length;
+                }
+                return sum;
+            }));
+
+            report("HexFormat.formatHex", size, Bench.nanosPerOp(iterations -> {
+                long sum = 0;
+                for (int i = 0; i < iterations; i++) {
+                    sum += format.formatHex(bytes).length();
+                }
+                return sum;
+            }));
+
+            report("HexFormat.parseHex", size, Bench.nanosPerOp(iterations -> {
+                long sum = 0;
+                for (int i = 0; i < iterations; i++) {
+                    sum += format.parseHex(hex).length;
+                }
+                return sum;
+            }));
+
+            try {
+                char[] chars = new char[size * 2];
+                byte[] decoded = new byte[size];
+
+                report("encodeHex into char[]", size, Bench.nanosPerOp(iterations -> {
+                    long sum = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        sum += Utilities.encodeHex(bytes, 0, size, chars, 0);
+                    }
+                    return sum;
+                }));
+
+                report("decodeHex into byte[]", size, Bench.nanosPerOp(iterations -> {
+                    long sum = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        sum += Utilities.decodeHex(hex, 0, hex.length(), decoded, 0);
+                    }
+                    return sum;
+                }));
+            } catch (NoSuchMethodError e) {
+                System.out.println("encodeHex/decodeHex are not in this build, skipped");
+            }
+        }
+
+        report("byteToHex", 1, Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += Utilities.byteToHex((byte) i).charAt(1);
+            }
+            return sum;
+        }));
+
+        report("intToHex", 4, Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += Utilities.intToHex(i * 0x9e3779b9).length();
+            }
+            return sum;
+        }));
+    }
+}
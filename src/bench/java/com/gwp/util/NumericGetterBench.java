@@ -0,0 +1,97 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+
+/**
+ * Single threaded cost of the typed numeric getters on values that do not
+ * change, and of one getInt after each setInt.
+ * <p>
+ * Run against an older build's classes to compare with getters that parse
+ * the string on every call.
+ */
+public class NumericGetterBench {
+
+    static final int KEYS = 64;
+
+    private static final String[] intKeys = new String[KEYS];
+    private static final String[] longKeys = new String[KEYS];
+    private static final String[] floatKeys = new String[KEYS];
+    private static final String[] arrayKeys = new String[KEYS];
+
+
+    static BasicProperties sample() {
+        BasicProperties props = new BasicProperties();
+        for (int i = 0; i < KEYS; i++) {
+            intKeys[i] = "threshold.int." + i;
+            longKeys[i] = "threshold.long." + i;
+            floatKeys[i] = "threshold.float." + i;
+            arrayKeys[i] = "threshold.array." + i;
+
+            props.setInt(intKeys[i], 100000 + i * 7919);
+            props.setLong(longKeys[i], 10000000000L + i * 7919L);
+            props.setFloat(floatKeys[i], 0.25f + i * 1.5f);
+            props.setIntArray(arrayKeys[i], new int[]{i, i * 10, i * 100, i * 1000});
+        }
+        return props;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        BasicProperties props = sample();
+
+        Bench.report("getInt", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += props.getInt(intKeys[i & (KEYS - 1)]);
+            }
+            return sum;
+        }), "ns/op");
+
+        Bench.report("getLong", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += props.getLong(longKeys[i & (KEYS - 1)]);
+            }
+            return sum;
+        }), "ns/op");
+
+        Bench.report("getFloat", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += (long) props.getFloat(floatKeys[i & (KEYS - 1)]);
+            }
+            return sum;
+        }), "ns/op");
+
+        Bench.report("getIntArray", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += props.getIntArray(arrayKeys[i & (KEYS - 1)])[3];
+            }
+            return sum;
+        }), "ns/op");
+
+        // the string parse the cache saves, for reference
+        Bench.report("getProperty + Integer.parseInt", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                sum += Integer.parseInt(props.getProperty(intKeys[i & (KEYS - 1)]));
+            }
+            return sum;
+        }), "ns/op");
+
+        // every read after a write misses the cache
+        Bench.report("setInt + getInt", "BasicProperties", Bench.nanosPerOp(iterations -> {
+            long sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                String key = intKeys[i & (KEYS - 1)];
+                props.setInt(key, i);
+                sum += props.getInt(key);
+            }
+            return sum;
+        }), "ns/op");
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Throughput of Blowfish bulk encryption on one thread against the fork-join
+ * versions, from below the parallel threshold up to 256 MiB.
+ * <p>
+ * The parallel methods use the common pool; set
+ * <code>-Djava.util.concurrent.ForkJoinPool.common.parallelism=N</code> to
+ * measure scaling with the number of workers.
+ */
+public class ParallelEncryptionBench {
+
+    static final int[] SIZES = {16 * 1024, 1024 * 1024, 16 * 1024 * 1024, 256 * 1024 * 1024};
+
+
+    static String sizeName(int size) {
+        return (size >= 1024 * 1024) ? (size / (1024 * 1024)) + " MiB" : (size / 1024) + " KiB";
+    }
+
+
+    static void report(String name, int size, double nanos) {
+        Bench.report(name + ", " + sizeName(size), "Blowfish", size / nanos * 1e9 / (1024 * 1024), "MiB/s");
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors()
+                + ", common pool parallelism: " + ForkJoinPool.getCommonPoolParallelism());
+
+        byte[] key = new byte[32];
+        byte[] iv = new byte[8];
+        Random random = new Random(13);
+        random.nextBytes(key);
+        random.nextBytes(iv);
+
+        Blowfish agent = new Blowfish();
+        agent.initialize(key, key.length);
+
+        for (int size : SIZES) {
+            byte[] input = new byte[size];
+            random.nextBytes(input);
+            byte[] output = new byte[agent.getOutputLength(size)];
+
+            report("encrypt", size, Bench.nanosPerOp(iterations -> {
+                for (int i = 0; i < iterations; i++) {
+                    agent.encrypt(input, 0, output, 0, size);
+                }
+                return output[size - 1];
+            }));
+
+            report("encryptParallel", size, Bench.nanosPerOp(iterations -> {
+                for (int i = 0; i < iterations; i++) {
+                    agent.encryptParallel(input, 0, output, 0, size);
+                }
+                return output[size - 1];
+            }));
+
+            report("cryptCTR", size, Bench.nanosPerOp(iterations -> {
+                for (int i = 0; i < iterations; i++) {
+                    agent.cryptCTR(iv, input, 0, output, 0, size);
+                }
+                return output[size - 1];
+            }));
+        }
+    }
+}
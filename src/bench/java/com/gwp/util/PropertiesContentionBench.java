@@ -0,0 +1,197 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Reads of a shared configuration from several threads, with and without
+ * a thread writing to it at the same time.
+ * <p>
+ * BasicProperties is compared with the two designs it sits between: a
+ * ConcurrentHashMap of strings parsed on every read, which is what a
+ * separate lock-free sibling class would be, and a Hashtable, whose reads
+ * take the table monitor as Properties did before Java 9.
+ * <p>
+ * Arguments name the variants to run, optionally followed by "writer";
+ * with none, all variants run with and without a writer.  Variants share
+ * call sites, so run each in its own JVM for figures to compare.
+ */
+public class PropertiesContentionBench {
+
+    static final int KEYS = 256;
+    static final int[] THREADS = {1, 2, 4, 8};
+
+    private static final String[] keys = new String[KEYS];
+
+    static {
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "worker.setting." + i;
+        }
+    }
+
+
+    /**
+     * Lookups a variant has to support
+     */
+    interface Config {
+        String getProperty(String key);
+
+        int getInt(String key);
+
+        void setString(String key, String value);
+    }
+
+
+    static Config basicProperties() {
+        BasicProperties props = new BasicProperties();
+        return new Config() {
+            public String getProperty(String key) {
+                return props.getProperty(key);
+            }
+
+            public int getInt(String key) {
+                return props.getInt(key);
+            }
+
+            public void setString(String key, String value) {
+                props.setString(key, value);
+            }
+        };
+    }
+
+
+    static Config concurrentMap() {
+        ConcurrentHashMap<String, String> map = new ConcurrentHashMap<String, String>();
+        return new Config() {
+            public String getProperty(String key) {
+                return map.get(key);
+            }
+
+            public int getInt(String key) {
+                String value = map.get(key);
+                return (value == null) ? 0 : Integer.parseInt(value);
+            }
+
+            public void setString(String key, String value) {
+                map.put(key, value);
+            }
+        };
+    }
+
+
+    static Config hashtable() {
+        Hashtable<String, String> table = new Hashtable<String, String>();
+        return new Config() {
+            public String getProperty(String key) {
+                return table.get(key);
+            }
+
+            public int getInt(String key) {
+                String value = table.get(key);
+                return (value == null) ? 0 : Integer.parseInt(value);
+            }
+
+            public void setString(String key, String value) {
+                table.put(key, value);
+            }
+        };
+    }
+
+
+    static Config fill(Config config) {
+        for (int i = 0; i < KEYS; i++) {
+            config.setString(keys[i], String.valueOf(i * 1000));
+        }
+        return config;
+    }
+
+
+    static void measure(String variant, Config config, boolean withWriter) throws Exception {
+        Thread writer = null;
+        if (withWriter) {
+            // one update every 100 microseconds to a key the readers also read
+            writer = new Thread(() -> {
+                int i = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    config.setString(keys[i++ & (KEYS - 1)], String.valueOf(i));
+                    LockSupport.parkNanos(100_000L);
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        try {
+            String suffix = withWriter ? " + writer" : "";
+            for (int threads : THREADS) {
+                double property = Bench.opsPerSecond(threads, iterations -> {
+                    long sum = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        sum += config.getProperty(keys[i & (KEYS - 1)]).length();
+                    }
+                    return sum;
+                });
+                Bench.report("getProperty, " + threads + " threads" + suffix, variant, property / 1e6, "Mops/s");
+
+                double typed = Bench.opsPerSecond(threads, iterations -> {
+                    long sum = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        sum += config.getInt(keys[i & (KEYS - 1)]);
+                    }
+                    return sum;
+                });
+                Bench.report("getInt, " + threads + " threads" + suffix, variant, typed / 1e6, "Mops/s");
+            }
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+                writer.join();
+            }
+        }
+    }
+
+
+    static Config variant(String name) {
+        switch (name) {
+            case "BasicProperties":
+                return basicProperties();
+            case "ConcurrentHashMap":
+                return concurrentMap();
+            case "Hashtable":
+                return hashtable();
+            default:
+                throw new IllegalArgumentException("Unknown variant: " + name);
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+
+        List<String> variants = new ArrayList<String>(Arrays.asList(args));
+        boolean[] writerModes = {false, true};
+        if (variants.remove("writer")) {
+            writerModes = new boolean[]{true};
+        } else if (!variants.isEmpty()) {
+            writerModes = new boolean[]{false};
+        }
+        if (variants.isEmpty()) {
+            variants = Arrays.asList("BasicProperties", "ConcurrentHashMap", "Hashtable");
+        }
+
+        for (boolean withWriter : writerModes) {
+            for (String name : variants) {
+                measure(name, fill(variant(name)), withWriter);
+            }
+        }
+    }
+}
@@ -15,14 +15,45 @@ import java.awt.*;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.text.ParseException;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * A class the defines some strong typed properties
+ * <p>
+ * Reads do not take the table monitor: <code>getProperty</code> is served
+ * from the concurrent map backing <code>java.util.Properties</code> and the
+ * typed getters consult a concurrent cache of parsed values.  Only writers
+ * synchronize on the instance.
  */
 public class BasicProperties extends Properties {
 
@@ -38,32 +69,136 @@ public class BasicProperties extends Properties {
                     (byte) 0x56, (byte) 0x8d, (byte) 0xb9, (byte) 0xa7, (byte) 0xb6, (byte) 0x97, (byte) 0x68, (byte) 0xf7
             };
 
-    private Blowfish encryptionAgent;
+    /**
+     * Leading bytes of the compact binary encoding.  Neither can start the
+     * text encoding, which never contains bytes above 0x7e.
+     */
+    static private final byte BINARY_MAGIC_0 = (byte) 0xb7;
+    static private final byte BINARY_MAGIC_1 = (byte) 'P';
+    static private final byte BINARY_VERSION = 1;
+
+    // States of the numeric slots in ParsedValues
+    static private final byte UNPARSED = 0;
+    static private final byte PARSED = 1;
+    static private final byte INVALID = 2;
+
+
+    /**
+     * Runs deferred stores for all instances
+     */
+    static private ScheduledExecutorService storeExecutor;
+
+    /**
+     * Instances with a deferred store pending or running, flushed by a
+     * shutdown hook.  Compared by identity, as a table's hash code changes
+     * with its contents.
+     */
+    static private final Set<BasicProperties> pendingInstances =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<BasicProperties, Boolean>()));
+
+    /**
+     * Cipher for the encrypted string properties.  The key schedule is
+     * only read once initialized, so one instance serves every thread.
+     */
+    static private final Blowfish encryptionAgent = BlowfishKeyCache.getShared().get(blowfish_key, 32);
+
+    /**
+     * Parsed typed values, keyed by property name.  Entries are validated
+     * against the raw string they were parsed from, so a stale entry is
+     * never returned even if the underlying table changed behind our back.
+     */
+    private transient ConcurrentHashMap<String, ParsedValues> parsedValues =
+            new ConcurrentHashMap<String, ParsedValues>();
+
+    /**
+     * Sorted index of the local keys, used for prefix operations
+     */
+    private transient ConcurrentSkipListSet<String> keyIndex = new ConcurrentSkipListSet<String>();
+
+    /**
+     * A file read by load(File) whose entries are not in the table yet.
+     * Lookups are answered from it until anything needs the whole table,
+     * see ensureLoaded().
+     */
+    private transient volatile PropertiesFileIndex pendingFile;
+
+    // Deferred store settings, see setDeferredStore()
+    private transient String deferredFilename;
+    private transient String deferredHeader;
+    private transient long deferredDelay;
+    private transient boolean deferredForce;
+    private transient ScheduledFuture<?> pendingStore;
+    private transient int runningStores;
+
+    /**
+     * Serializes storeAtomic calls on this instance
+     */
+    private transient Object storeLock = new Object();
 
 
     public BasicProperties() {
         super();
-        encryptionAgent = new Blowfish();
-        encryptionAgent.initialize(blowfish_key, 32);
     }
 
     public BasicProperties(Properties defaultProperties) {
         super(defaultProperties);
-        encryptionAgent = new Blowfish();
-        encryptionAgent.initialize(blowfish_key, 32);
     }
 
     public BasicProperties(File propertiesFile) throws IOException {
         super();
 
         if (propertiesFile != null && propertiesFile.exists()) {
-            load(new FileInputStream(propertiesFile));
+            load(propertiesFile);
         }
+    }
+
+    /**
+     * Creates an empty layer on top of this instance.
+     * <p>
+     * The overlay stores only the values set on it; every other lookup falls
+     * through to this instance and its own defaults.  Creating an overlay does
+     * not copy anything, so defaults, site and user settings can be stacked
+     * cheaply per session.  Changes made to this instance later are visible
+     * through the overlay, and storing the overlay writes only its own values.
+     *
+     * @return The new overlay
+     */
+    public BasicProperties createOverlay() {
+        return new BasicProperties(this);
+    }
 
-        encryptionAgent = new Blowfish();
-        encryptionAgent.initialize(blowfish_key, 32);
+
+    /**
+     * Returns the layer that lookups fall through to, or null
+     */
+    public Properties getDefaults() {
+        return defaults;
+    }
+
+
+    /**
+     * Tests whether a property is set on this layer itself rather than
+     * inherited from the defaults
+     *
+     * @param key Property key
+     * @return true if this layer holds its own value for the key
+     */
+    public boolean isOverridden(String key) {
+        return get(key) instanceof String;
+    }
+
+
+    /**
+     * Collapses this layer and all layers beneath it into a single
+     * stand-alone instance.
+     *
+     * @return The flattened copy
+     */
+    public BasicProperties flatten() {
+        return makeClone();
     }
 
+
     /**
      * Pseudo clone method
      *
@@ -84,16 +219,25 @@ public class BasicProperties extends Properties {
 
 
     /**
-     * Populates the properties from data stored in the byte array
+     * Populates the properties from data stored in the byte array.
+     * <p>
+     * Accepts both the compact binary encoding and the original
+     * NUL terminated text encoding.
+     *
      * @param  data the property object encoded as a byte array
      * @param  offset the offset to start parsing in the byte array
      * @return The number of bytes consumed by the method
      * @see BasicProperties#toByteArray
+     * @see BasicProperties#toCompactByteArray
      */
     public int fromByteArray(byte[] data, int offset) {
         int length = 0;
         int result = 0;
 
+        if (isCompactEncoding(data, offset, data.length - offset)) {
+            return fromCompactByteArray(data, offset, data.length - offset);
+        }
+
         try {
             while (data[length + offset] != '\0') {
                 length++;
@@ -116,9 +260,14 @@ public class BasicProperties extends Properties {
      *
      * @return The number of bytes consumed by the method
      * @see BasicProperties#toByteArray
+     * @see BasicProperties#toCompactByteArray
      */
     public int fromByteArray(byte[] data, int offset, int length) {
 
+        if (isCompactEncoding(data, offset, length)) {
+            return fromCompactByteArray(data, offset, length);
+        }
+
         try {
             load(new ByteArrayInputStream(data, offset, length));
             return length;
@@ -132,6 +281,49 @@ public class BasicProperties extends Properties {
     }
 
 
+    /**
+     * Decodes the compact binary encoding
+     *
+     * @return The number of bytes consumed, or 0 if the data is malformed
+     *         or of an unknown version
+     */
+    private int fromCompactByteArray(byte[] data, int offset, int length) {
+        if ((length < 3) || (offset + 2 >= data.length) || (data[offset + 2] != BINARY_VERSION)) {
+            return 0;
+        }
+
+        int end = offset + length;
+        int[] position = {offset + 3};
+
+        try {
+            int count = readVarint(data, position, end);
+
+            // Every entry needs at least two length bytes
+            if ((count < 0) || (count > (end - position[0]) / 2)) {
+                return 0;
+            }
+
+            String[] keys = new String[count];
+            String[] values = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                keys[i] = readUtf8(data, position, end);
+                values[i] = readUtf8(data, position, end);
+            }
+
+            // Only apply the data once it has been fully decoded
+            for (int i = 0; i < count; i++) {
+                put(keys[i], values[i]);
+            }
+
+            return position[0] - offset;
+
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+
     /**
      * Gets a boolean property value
      */
@@ -173,6 +365,10 @@ public class BasicProperties extends Properties {
         if (result == null) {
             return defaultValue;
         } else {
+            ParsedValues parsed = getParsedValues(key, result);
+            if (parseInt(parsed) && (parsed.intValue >= Byte.MIN_VALUE) && (parsed.intValue <= Byte.MAX_VALUE)) {
+                return (byte) parsed.intValue;
+            }
             return Byte.valueOf(result).byteValue();
         }
     }
@@ -186,12 +382,17 @@ public class BasicProperties extends Properties {
      */
     public Color getColor(String key) {
         String value = getString(key);
-        int[] rgb = new int[3];
-        int index = 0;
 
         if ((value == null) || (value.length() < 1)) {
             return null;
-        } else {
+        }
+
+        ParsedValues parsed = getParsedValues(key, value);
+        Color result = parsed.color;
+        if (result == null) {
+            int[] rgb = new int[3];
+            int index = 0;
+
             StringTokenizer tokens = new StringTokenizer(value, ",");
             while (tokens.hasMoreElements()) {
                 try {
@@ -201,8 +402,11 @@ public class BasicProperties extends Properties {
                 index++;
             }
 
-            return (new Color(rgb[0], rgb[1], rgb[2]));
+            result = new Color(rgb[0], rgb[1], rgb[2]);
+            parsed.color = result;
         }
+
+        return result;
     }
 
 
@@ -210,35 +414,40 @@ public class BasicProperties extends Properties {
      * Gets a byte value
      */
     public String getEncryptedString(String key) {
-        byte input[];
-        byte padded[];
-        int size;
-        String value;
-
-        value = getString(key);
+        String value = getString(key);
         if (value == null)
             return "";
-        try {
-            input = Utilities.hexStringToBytes(value);
-        } catch (NumberFormatException e) {
-            return "";
-        }
-        size = encryptionAgent.getOutputLength(input.length);
-        padded = new byte[size];
-        java.util.Arrays.fill(padded, (byte) 0);
-        System.arraycopy(input, 0, padded, 0, input.length);
 
-        encryptionAgent.decrypt(padded, 0, padded, 0, size);
+        return decryptHexString(value, new byte[encryptionAgent.getOutputLength(value.length() / 2)]);
+    }
 
-        String resString;
 
-        try {
-            resString = new String(padded, "UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            resString = new String(padded);
+    /**
+     * Gets several encrypted string values in one call, sharing a single
+     * work buffer across the decryptions.
+     *
+     * @param keys Property keys
+     * @return The decrypted values, in key order
+     */
+    public String[] getEncryptedStrings(String[] keys) {
+        String[] result = new String[keys.length];
+        byte[] buffer = new byte[64];
+
+        for (int i = 0; i < keys.length; i++) {
+            String value = getString(keys[i]);
+            if (value == null) {
+                result[i] = "";
+                continue;
+            }
+
+            int size = encryptionAgent.getOutputLength(value.length() / 2);
+            if (size > buffer.length) {
+                buffer = new byte[Math.max(size, buffer.length * 2)];
+            }
+            result[i] = decryptHexString(value, buffer);
         }
 
-        return resString.trim();
+        return result;
     }
 
 
@@ -260,10 +469,21 @@ public class BasicProperties extends Properties {
             return defaultValue;
 
         } else {
-            try {
-                return Float.valueOf(result).floatValue();
+            ParsedValues parsed = getParsedValues(key, result);
+            int state = parsed.floatState;
 
-            } catch (NumberFormatException e) {
+            if (state == UNPARSED) {
+                try {
+                    parsed.floatValue = Float.parseFloat(result);
+                    state = PARSED;
+                } catch (NumberFormatException e) {
+                    state = INVALID;
+                }
+                parsed.floatState = (byte) state;
+            }
+
+            if (state == PARSED) {
+                return parsed.floatValue;
             }
         }
 
@@ -283,6 +503,21 @@ public class BasicProperties extends Properties {
         // sanity check
         if (value == null) return null;
 
+        ParsedValues parsed = getParsedValues(key, value);
+        Font result = parsed.font;
+        if (result == null) {
+            result = parseFont(value);
+            parsed.font = result;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Parses a font value in the form name,style,size
+     */
+    private static Font parseFont(String value) {
         // Parse the font constructor arguments
         StringTokenizer tokens = new StringTokenizer(value, ",");
         if (tokens.countTokens() < 3) return null;
@@ -317,8 +552,31 @@ public class BasicProperties extends Properties {
      */
     public InetAddress getInetAddress(String key) {
         String result = getProperty(key);
+        if (result == null) {
+            return resolveInetAddress(result, null);
+        }
+
+        ParsedValues parsed = getParsedValues(key, result);
+        InetAddress address = parsed.inetAddress;
+        if (address == null) {
+            address = resolveInetAddress(result, parsed);
+        }
+
+        return address;
+    }
+
+
+    /**
+     * Resolves an InetAddress.  Only literal addresses are cached so that
+     * host names are still resolved according to the JVM's DNS policy.
+     */
+    private static InetAddress resolveInetAddress(String value, ParsedValues parsed) {
         try {
-            return InetAddress.getByName(result);
+            InetAddress address = InetAddress.getByName(value);
+            if ((parsed != null) && address.getHostAddress().equals(value)) {
+                parsed.inetAddress = address;
+            }
+            return address;
         } catch (UnknownHostException uhe) {
             return null;
         }
@@ -332,8 +590,23 @@ public class BasicProperties extends Properties {
      */
     public IpAddress getIpAddress(String key) {
         String result = getProperty(key);
+        ParsedValues parsed = null;
+
+        // IpAddress is mutable, so callers always get their own copy
+        if (result != null) {
+            parsed = getParsedValues(key, result);
+            IpAddress cached = parsed.ipAddress;
+            if (cached != null) {
+                return new IpAddress(cached.getBytes());
+            }
+        }
+
         try {
-            return (new IpAddress(result));
+            IpAddress address = new IpAddress(result);
+            if ((parsed != null) && (address.getBytes().length == IpAddress.IP_ADDRESS_SIZE)) {
+                parsed.ipAddress = new IpAddress(address.getBytes());
+            }
+            return address;
         } catch (ParseException pe) {
         }
 
@@ -357,9 +630,10 @@ public class BasicProperties extends Properties {
         if (result == null || result.equals("")) {
             return defaultValue;
         } else {
-            try {
-                return Integer.valueOf(result).intValue();
-            } catch (NumberFormatException e) {
+            ParsedValues parsed = getParsedValues(key, result);
+            if (parseInt(parsed)) {
+                return parsed.intValue;
+            } else {
                 if (result.equals("true")) {
                     return 1;
                 }
@@ -383,16 +657,25 @@ public class BasicProperties extends Properties {
 
         String val = getString(key, null);
         if (val != null) {
-            StringTokenizer tokens = new StringTokenizer(val, ",");
-            result = new int[tokens.countTokens()];
-
-            for (int index = 0; tokens.hasMoreTokens(); index++) {
-                result[index] = 0;
-                try {
-                    result[index] = Integer.parseInt(tokens.nextToken());
-                } catch (NumberFormatException pe) {
+            ParsedValues parsed = getParsedValues(key, val);
+            result = parsed.intArray;
+
+            if (result == null) {
+                StringTokenizer tokens = new StringTokenizer(val, ",");
+                result = new int[tokens.countTokens()];
+
+                for (int index = 0; tokens.hasMoreTokens(); index++) {
+                    result[index] = 0;
+                    try {
+                        result[index] = Integer.parseInt(tokens.nextToken());
+                    } catch (NumberFormatException pe) {
+                    }
                 }
+
+                parsed.intArray = result;
             }
+
+            result = result.clone();
         }
 
         return result;
@@ -415,9 +698,22 @@ public class BasicProperties extends Properties {
         if (result == null || result.equals("")) {
             return defaultValue;
         } else {
-            try {
-                return Long.valueOf(result).longValue();
-            } catch (NumberFormatException e) {
+            ParsedValues parsed = getParsedValues(key, result);
+            int state = parsed.longState;
+
+            if (state == UNPARSED) {
+                try {
+                    parsed.longValue = Long.parseLong(result);
+                    state = PARSED;
+                } catch (NumberFormatException e) {
+                    state = INVALID;
+                }
+                parsed.longState = (byte) state;
+            }
+
+            if (state == PARSED) {
+                return parsed.longValue;
+            } else {
                 if (result.equals("true")) {
                     return 1;
                 }
@@ -443,6 +739,10 @@ public class BasicProperties extends Properties {
         if (result == null) {
             return defaultValue;
         } else {
+            ParsedValues parsed = getParsedValues(key, result);
+            if (parseInt(parsed) && (parsed.intValue >= Short.MIN_VALUE) && (parsed.intValue <= Short.MAX_VALUE)) {
+                return (short) parsed.intValue;
+            }
             return Short.valueOf(result).shortValue();
         }
     }
@@ -480,12 +780,21 @@ public class BasicProperties extends Properties {
 
         String val = getString(key, null);
         if (val != null) {
-            StringTokenizer tokens = new StringTokenizer(val, ",");
-            result = new String[tokens.countTokens()];
+            ParsedValues parsed = getParsedValues(key, val);
+            result = parsed.stringArray;
+
+            if (result == null) {
+                StringTokenizer tokens = new StringTokenizer(val, ",");
+                result = new String[tokens.countTokens()];
+
+                for (int index = 0; tokens.hasMoreTokens(); index++) {
+                    result[index] = tokens.nextToken();
+                }
 
-            for (int index = 0; tokens.hasMoreTokens(); index++) {
-                result[index] = tokens.nextToken();
+                parsed.stringArray = result;
             }
+
+            result = result.clone();
         }
 
         return result;
@@ -527,162 +836,745 @@ public class BasicProperties extends Properties {
      * Loads properties from a file
      */
     public void load(String filename) {
-        FileInputStream input = null;
-
-        try {
-            input = new FileInputStream(filename);
-        } catch (FileNotFoundException fnf1) {
-            return;
-        }
-
         try {
-            load(input);
+            load(new File(filename));
         } catch (IOException ioe1) {
         }
-
-        try {
-            input.close();
-        } catch (IOException ioe2) {
-        }
     }
 
 
     /**
-     * Merge this instance's property set into the specified set
+     * Loads properties from a file.
+     * <p>
+     * The file is read in one call and closed before returning.  Its lines
+     * are indexed in place and no strings are created yet: getProperty, get
+     * and the typed getters decode only the keys asked for.  The first call
+     * that needs the whole table, such as a change, iteration or size(),
+     * copies the file's entries into the table.  The result is the same as
+     * Properties.load on the file.
      *
-     * @param props  Recipient set
+     * @param file The properties file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file holds a malformed unicode
+     *         escape; the lines before it are loaded, as with Properties.load
      */
-    public void mergeInto(BasicProperties props) {
-        Enumeration<?> e = propertyNames();
-        while (e.hasMoreElements()) {
-            String s = (String) e.nextElement();
-            props.setString(s, getString(s));
+    public void load(File file) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+
+        PropertiesFileIndex index;
+        try {
+            index = new PropertiesFileIndex(data);
+        } catch (IllegalArgumentException iae) {
+            // let Properties.load apply the lines before the bad escape and throw
+            load(new ByteArrayInputStream(data));
+            throw iae;
         }
 
+        synchronized (this) {
+            ensureLoaded();
+            if (!index.isEmpty()) {
+                pendingFile = index;
+                scheduleDeferredStore();
+            }
+        }
     }
 
 
     /**
-     * Prints the properties to the print stream.
-     *
-     * @param output
+     * Copies the entries of a file loaded by load(File) into the table
      */
-    public void print(PrintStream output) {
-        Enumeration<?> e = propertyNames();
-
-        while (e.hasMoreElements()) {
-            String key = (String) e.nextElement();
-            String value = getString(key);
-            output.println(key + " = " + value);
+    private void ensureLoaded() {
+        if (pendingFile != null) {
+            synchronized (this) {
+                PropertiesFileIndex index = pendingFile;
+                if (index != null) {
+                    index.forEach((key, value) -> {
+                        super.put(key, value);
+                        keyIndex.add(key);
+                    });
+                    // lookups go to the pending file until the table is complete
+                    pendingFile = null;
+                }
+            }
         }
-
     }
 
 
     /**
-     * Delete all properties with the specified key prefix
-     *
-     * @param prefix The prefix
+     * Returns the value a pending file gives the key, or null
      */
-    public void removePrefix(String prefix) {
+    private String pendingValue(Object key) {
+        if ((pendingFile == null) || !(key instanceof String)) {
+            return null;
+        }
+        synchronized (this) {
+            PropertiesFileIndex index = pendingFile;
+            return (index != null) ? index.get((String) key) : null;
+        }
+    }
 
-        Enumeration<?> e = propertyNames();
 
-        while (e.hasMoreElements()) {
-            String s = (String) e.nextElement();
-            if (s.startsWith(prefix)) {
-                remove(s);
-            }
-        }
+    // Lookups that a pending file can answer without loading the table
+
+    @Override
+    public String getProperty(String key) {
+        String value = pendingValue(key);
+        return (value != null) ? value : super.getProperty(key);
     }
 
 
-    /**
-     * Stores a boolean value
-     */
-    public boolean setBoolean(String key, boolean value) {
-        String val = value ? String.valueOf(1) : String.valueOf(0);
-        String oldValue = (String) setProperty(key, val);
-        if (oldValue == null) {
-            return value;
-        } else {
-            if (oldValue.equals("1")) {
-                return true;
-            } else if (oldValue.equals("0")) {
-                return false;
-            } else {
-                return Boolean.valueOf(oldValue).booleanValue();
-            }
-        }
+    @Override
+    public Object get(Object key) {
+        String value = pendingValue(key);
+        return (value != null) ? value : super.get(key);
     }
 
 
-    /**
-     * Stores a byte value
-     */
-    public short setByte(String key, byte value) {
-        String oldValue = (String) setProperty(key, String.valueOf(value));
-        if (oldValue == null) {
-            return value;
-        } else {
-            return Byte.valueOf(oldValue).byteValue();
-        }
+    @Override
+    public boolean containsKey(Object key) {
+        return (pendingValue(key) != null) || super.containsKey(key);
     }
 
 
-    /**
-     * Stores a color value
-     *
-     * @param key
-     * @param color
-     */
-    public Color setColor(String key, Color color) {
-        // sanity check
-        if (color == null) return color;
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        String value = pendingValue(key);
+        return (value != null) ? value : super.getOrDefault(key, defaultValue);
+    }
 
-        String newValue = new String(String.valueOf(color.getRed()) + "," + String.valueOf(color.getGreen())
-                + "," + String.valueOf(color.getBlue()));
-        Color oldValue = getColor(key);
 
-        if (setProperty(key, newValue) == null) {
-            return color;
-        } else {
-            return oldValue;
-        }
+    @Override
+    public boolean isEmpty() {
+        // a file is only left pending if it has entries
+        return (pendingFile == null) && super.isEmpty();
     }
 
 
-    /**
-     * Stores a byte value
-     */
-    public String setEncryptedString(String key, String value) {
-        byte output[];
-        int size;
+    // The rest of the read-only Hashtable API works on the whole table
+
+    @Override
+    public int size() {
+        ensureLoaded();
+        return super.size();
+    }
 
-        byte[] u8;
 
-        try {
-            u8 = value.getBytes("UTF-8");
-        } catch (java.io.UnsupportedEncodingException uee) {
-            u8 = value.getBytes();
-        }
+    @Override
+    public Enumeration<Object> keys() {
+        ensureLoaded();
+        return super.keys();
+    }
 
-        size = encryptionAgent.getOutputLength(u8.length);
-        output = new byte[size];
-        java.util.Arrays.fill(output, (byte) 0);
-        System.arraycopy(u8, 0, output, 0, u8.length);
 
-        encryptionAgent.encrypt(output, 0, output, 0, size);
-        try {
-            return setString(key, Utilities.hexBytesToString(output));
-        } catch (NumberFormatException e) {
-            return setString(key, "");
-        }
+    @Override
+    public Enumeration<Object> elements() {
+        ensureLoaded();
+        return super.elements();
     }
 
 
-    /**
-     * Stores a font value
+    @Override
+    public boolean contains(Object value) {
+        ensureLoaded();
+        return super.contains(value);
+    }
+
+
+    @Override
+    public boolean containsValue(Object value) {
+        ensureLoaded();
+        return super.containsValue(value);
+    }
+
+
+    @Override
+    public void forEach(java.util.function.BiConsumer<? super Object, ? super Object> action) {
+        ensureLoaded();
+        super.forEach(action);
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        ensureLoaded();
+        return super.equals(o);
+    }
+
+
+    @Override
+    public int hashCode() {
+        ensureLoaded();
+        return super.hashCode();
+    }
+
+
+    @Override
+    public String toString() {
+        ensureLoaded();
+        return super.toString();
+    }
+
+
+    /**
+     * Merge this instance's property set into the specified set
+     *
+     * @param props  Recipient set
+     */
+    public void mergeInto(BasicProperties props) {
+        Enumeration<?> e = propertyNames();
+        while (e.hasMoreElements()) {
+            String s = (String) e.nextElement();
+            props.setString(s, getString(s));
+        }
+
+    }
+
+
+    /**
+     * Stores a raw property value, dropping any cached typed value for the key
+     */
+    @Override
+    public synchronized Object put(Object key, Object value) {
+        ensureLoaded();
+        Object oldValue = super.put(key, value);
+        if (oldValue == null) {
+            keyChanged(key);
+        } else {
+            // the key was already in the table, so the key index holds it
+            invalidate(key);
+            scheduleDeferredStore();
+        }
+        return oldValue;
+    }
+
+
+    /**
+     * Removes a raw property value, dropping any cached typed value for the key
+     */
+    @Override
+    public synchronized Object remove(Object key) {
+        ensureLoaded();
+        Object oldValue = super.remove(key);
+        keyChanged(key);
+        return oldValue;
+    }
+
+
+    /**
+     * Removes all properties and cached typed values
+     */
+    @Override
+    public synchronized void clear() {
+        pendingFile = null;
+        super.clear();
+
+        ConcurrentHashMap<String, ParsedValues> cache = parsedValues;
+        if (cache != null) {
+            cache.clear();
+        }
+        if (keyIndex != null) {
+            keyIndex.clear();
+        }
+        scheduleDeferredStore();
+    }
+
+
+    // The remaining Map mutators bypass put/remove in java.util.Properties
+
+    @Override
+    public synchronized void putAll(Map<?, ?> t) {
+        ensureLoaded();
+        super.putAll(t);
+        for (Object key : t.keySet()) {
+            keyChanged(key);
+        }
+    }
+
+
+    @Override
+    public synchronized Object putIfAbsent(Object key, Object value) {
+        ensureLoaded();
+        Object oldValue = super.putIfAbsent(key, value);
+        keyChanged(key);
+        return oldValue;
+    }
+
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        ensureLoaded();
+        boolean removed = super.remove(key, value);
+        keyChanged(key);
+        return removed;
+    }
+
+
+    @Override
+    public synchronized Object computeIfAbsent(Object key,
+            java.util.function.Function<? super Object, ?> mappingFunction) {
+        ensureLoaded();
+        Object result = super.computeIfAbsent(key, mappingFunction);
+        keyChanged(key);
+        return result;
+    }
+
+
+    @Override
+    public synchronized Object computeIfPresent(Object key,
+            java.util.function.BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        ensureLoaded();
+        Object result = super.computeIfPresent(key, remappingFunction);
+        keyChanged(key);
+        return result;
+    }
+
+
+    @Override
+    public synchronized Object compute(Object key,
+            java.util.function.BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        ensureLoaded();
+        Object result = super.compute(key, remappingFunction);
+        keyChanged(key);
+        return result;
+    }
+
+
+    @Override
+    public synchronized Object merge(Object key, Object value,
+            java.util.function.BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+        ensureLoaded();
+        Object result = super.merge(key, value, remappingFunction);
+        keyChanged(key);
+        return result;
+    }
+
+
+    @Override
+    public synchronized Object replace(Object key, Object value) {
+        ensureLoaded();
+        Object oldValue = super.replace(key, value);
+        keyChanged(key);
+        return oldValue;
+    }
+
+
+    @Override
+    public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+        ensureLoaded();
+        boolean replaced = super.replace(key, oldValue, newValue);
+        keyChanged(key);
+        return replaced;
+    }
+
+
+    @Override
+    public synchronized void replaceAll(
+            java.util.function.BiFunction<? super Object, ? super Object, ?> function) {
+        ensureLoaded();
+        super.replaceAll(function);
+
+        ConcurrentHashMap<String, ParsedValues> cache = parsedValues;
+        if (cache != null) {
+            cache.clear();
+        }
+        scheduleDeferredStore();
+    }
+
+
+    // The views write through to the table, so removals through them and
+    // their iterators are routed back through remove and keyChanged
+
+    /**
+     * Returns a view of the keys.  Removing through the view or its
+     * iterator removes the property.
+     */
+    @Override
+    public Set<Object> keySet() {
+        return new AbstractSet<Object>() {
+            public Iterator<Object> iterator() {
+                return new ViewIterator<Object>() {
+                    Object element(Map.Entry<Object, Object> entry) {
+                        return entry.getKey();
+                    }
+                };
+            }
+
+            public int size() {
+                return BasicProperties.this.size();
+            }
+
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            public boolean remove(Object o) {
+                synchronized (BasicProperties.this) {
+                    boolean found = containsKey(o);
+                    BasicProperties.this.remove(o);
+                    return found;
+                }
+            }
+
+            public void clear() {
+                BasicProperties.this.clear();
+            }
+        };
+    }
+
+
+    /**
+     * Returns a view of the entries.  Removing through the view or its
+     * iterator removes the property, and setValue stores through put.
+     */
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, Object>>() {
+            public Iterator<Map.Entry<Object, Object>> iterator() {
+                return new ViewIterator<Map.Entry<Object, Object>>() {
+                    Map.Entry<Object, Object> element(Map.Entry<Object, Object> entry) {
+                        return new ViewEntry(entry);
+                    }
+                };
+            }
+
+            public int size() {
+                return BasicProperties.this.size();
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Object value = get(entry.getKey());
+                return (value != null) && value.equals(entry.getValue());
+            }
+
+            public boolean remove(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                return BasicProperties.this.remove(entry.getKey(), entry.getValue());
+            }
+
+            public void clear() {
+                BasicProperties.this.clear();
+            }
+        };
+    }
+
+
+    /**
+     * Returns a view of the values.  Removing through the view or its
+     * iterator removes the property.
+     */
+    @Override
+    public Collection<Object> values() {
+        return new AbstractCollection<Object>() {
+            public Iterator<Object> iterator() {
+                return new ViewIterator<Object>() {
+                    Object element(Map.Entry<Object, Object> entry) {
+                        return entry.getValue();
+                    }
+                };
+            }
+
+            public int size() {
+                return BasicProperties.this.size();
+            }
+
+            public boolean contains(Object o) {
+                return containsValue(o);
+            }
+
+            public void clear() {
+                BasicProperties.this.clear();
+            }
+        };
+    }
+
+
+    /**
+     * Iterates the table for the views.  remove() goes through keyChanged.
+     */
+    private abstract class ViewIterator<E> implements Iterator<E> {
+        private final Iterator<Map.Entry<Object, Object>> entries = tableIterator();
+        private Object lastKey;
+
+        abstract E element(Map.Entry<Object, Object> entry);
+
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        public E next() {
+            Map.Entry<Object, Object> entry = entries.next();
+            lastKey = entry.getKey();
+            return element(entry);
+        }
+
+        public void remove() {
+            synchronized (BasicProperties.this) {
+                entries.remove();
+                keyChanged(lastKey);
+            }
+        }
+    }
+
+
+    private Iterator<Map.Entry<Object, Object>> tableIterator() {
+        ensureLoaded();
+        return super.entrySet().iterator();
+    }
+
+
+    /**
+     * An entry of the entrySet view whose setValue stores through put
+     */
+    private final class ViewEntry implements Map.Entry<Object, Object> {
+        private final Map.Entry<Object, Object> entry;
+
+        ViewEntry(Map.Entry<Object, Object> entry) {
+            this.entry = entry;
+        }
+
+        public Object getKey() {
+            return entry.getKey();
+        }
+
+        public Object getValue() {
+            return entry.getValue();
+        }
+
+        public Object setValue(Object value) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            return put(entry.getKey(), value);
+        }
+
+        public boolean equals(Object o) {
+            return entry.equals(o);
+        }
+
+        public int hashCode() {
+            return entry.hashCode();
+        }
+
+        public String toString() {
+            return entry.toString();
+        }
+    }
+
+
+    /**
+     * Clones the table; the copy gets its own typed value cache and key index
+     */
+    @Override
+    public synchronized Object clone() {
+        ensureLoaded();
+        BasicProperties theCopy = (BasicProperties) super.clone();
+        theCopy.parsedValues = new ConcurrentHashMap<String, ParsedValues>();
+        theCopy.keyIndex = theCopy.buildKeyIndex();
+        theCopy.deferredFilename = null;
+        theCopy.pendingStore = null;
+        theCopy.runningStores = 0;
+        theCopy.storeLock = new Object();
+        return theCopy;
+    }
+
+
+    @Serial
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        parsedValues = new ConcurrentHashMap<String, ParsedValues>();
+        keyIndex = buildKeyIndex();
+        storeLock = new Object();
+    }
+
+
+    /**
+     * Serialization writes the table directly, so a pending file is loaded
+     * into it first
+     */
+    @Serial
+    private Object writeReplace() {
+        ensureLoaded();
+        return this;
+    }
+
+
+    /**
+     * Prints the properties to the print stream.
+     *
+     * @param output
+     */
+    public void print(PrintStream output) {
+        Enumeration<?> e = propertyNames();
+
+        while (e.hasMoreElements()) {
+            String key = (String) e.nextElement();
+            String value = getString(key);
+            output.println(key + " = " + value);
+        }
+
+    }
+
+
+    /**
+     * Delete all properties with the specified key prefix
+     *
+     * @param prefix The prefix
+     */
+    public void removePrefix(String prefix) {
+        ensureLoaded();
+        for (String key : keyIndex.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            remove(key);
+        }
+    }
+
+
+    /**
+     * Returns the names of all properties, including defaults, that start
+     * with the specified prefix.  The cost is proportional to the number
+     * of matches rather than the size of the table.
+     *
+     * @param prefix The key prefix
+     * @return A sorted snapshot of the matching property names
+     */
+    public SortedSet<String> prefixKeys(String prefix) {
+        TreeSet<String> result = new TreeSet<String>();
+        collectPrefixKeys(prefix, result);
+        return result;
+    }
+
+
+    /**
+     * Returns a copy of all properties, including defaults, whose keys start
+     * with the specified prefix.  Keys are copied unchanged.
+     *
+     * @param prefix The key prefix
+     * @return The matching properties
+     */
+    public BasicProperties subset(String prefix) {
+        BasicProperties result = new BasicProperties();
+
+        for (String key : prefixKeys(prefix)) {
+            String value = getProperty(key);
+            if (value != null) {
+                result.setString(key, value);
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Adds the names of matching local and default properties to the set
+     */
+    private void collectPrefixKeys(String prefix, SortedSet<String> result) {
+        Properties parent = defaults;
+
+        if (parent instanceof BasicProperties) {
+            ((BasicProperties) parent).collectPrefixKeys(prefix, result);
+        } else if (parent != null) {
+            for (String key : parent.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    result.add(key);
+                }
+            }
+        }
+
+        ensureLoaded();
+        for (String key : keyIndex.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (get(key) instanceof String) {
+                result.add(key);
+            }
+        }
+    }
+
+
+    /**
+     * Stores a boolean value
+     */
+    public boolean setBoolean(String key, boolean value) {
+        String val = value ? String.valueOf(1) : String.valueOf(0);
+        String oldValue = (String) setProperty(key, val);
+        if (oldValue == null) {
+            return value;
+        } else {
+            if (oldValue.equals("1")) {
+                return true;
+            } else if (oldValue.equals("0")) {
+                return false;
+            } else {
+                return Boolean.valueOf(oldValue).booleanValue();
+            }
+        }
+    }
+
+
+    /**
+     * Stores a byte value
+     */
+    public short setByte(String key, byte value) {
+        String oldValue = (String) setProperty(key, String.valueOf(value));
+        if (oldValue == null) {
+            return value;
+        } else {
+            return Byte.valueOf(oldValue).byteValue();
+        }
+    }
+
+
+    /**
+     * Stores a color value
+     *
+     * @param key
+     * @param color
+     */
+    public Color setColor(String key, Color color) {
+        // sanity check
+        if (color == null) return color;
+
+        String newValue = new String(String.valueOf(color.getRed()) + "," + String.valueOf(color.getGreen())
+                + "," + String.valueOf(color.getBlue()));
+        Color oldValue = getColor(key);
+
+        if (setProperty(key, newValue) == null) {
+            return color;
+        } else {
+            return oldValue;
+        }
+    }
+
+
+    /**
+     * Stores a byte value
+     */
+    public String setEncryptedString(String key, String value) {
+        byte[] u8 = value.getBytes(StandardCharsets.UTF_8);
+        byte[] output = java.util.Arrays.copyOf(u8, encryptionAgent.getOutputLength(u8.length));
+
+        encryptionAgent.encrypt(output, 0, output, 0, output.length);
+
+        char[] hex = new char[output.length * 2];
+        Utilities.encodeHex(output, 0, output.length, hex, 0);
+
+        return setString(key, new String(hex));
+    }
+
+
+    /**
+     * Stores a font value
      *
      */
     public Font setFont(String key, Font font) {
@@ -742,7 +1634,11 @@ public class BasicProperties extends Properties {
      * Stores an float value
      */
     public float setFloat(String key, float value) {
-        String oldValue = (String) setProperty(key, String.valueOf(value));
+        String newValue = String.valueOf(value);
+        ParsedValues parsed = new ParsedValues(newValue);
+        parsed.floatValue = value;
+        parsed.floatState = PARSED;
+        String oldValue = putParsed(key, parsed);
 
         if (oldValue == null) {
             return value;
@@ -756,7 +1652,11 @@ public class BasicProperties extends Properties {
      * Stores an integer value
      */
     public int setInt(String key, int value) {
-        String oldValue = (String) setProperty(key, String.valueOf(value));
+        String newValue = String.valueOf(value);
+        ParsedValues parsed = new ParsedValues(newValue);
+        parsed.intValue = value;
+        parsed.intState = PARSED;
+        String oldValue = putParsed(key, parsed);
         if (oldValue == null) {
             return value;
         } else {
@@ -779,19 +1679,16 @@ public class BasicProperties extends Properties {
         if ((values == null) || (values.length == 0)) {
             remove(key);
         } else {
-            boolean noSep = true;
-            StringBuffer buffer = new StringBuffer();
-
-            for (int val : values) {
-                if (noSep) {
-                    buffer.append(val);
-                    noSep = false;
-                } else {
-                    buffer.append(",").append(val);
-                }
+            StringBuilder buffer = new StringBuilder(values.length * 6);
+
+            buffer.append(values[0]);
+            for (int index = 1; index < values.length; index++) {
+                buffer.append(',').append(values[index]);
             }
 
-            setProperty(key, buffer.toString());
+            ParsedValues parsed = new ParsedValues(buffer.toString());
+            parsed.intArray = values.clone();
+            putParsed(key, parsed);
         }
 
         return oldValue;
@@ -802,7 +1699,11 @@ public class BasicProperties extends Properties {
      * Stores a long value
      */
     public long setLong(String key, long value) {
-        String oldValue = (String) setProperty(key, String.valueOf(value));
+        String newValue = String.valueOf(value);
+        ParsedValues parsed = new ParsedValues(newValue);
+        parsed.longValue = value;
+        parsed.longState = PARSED;
+        String oldValue = putParsed(key, parsed);
         if (oldValue == null) {
             return value;
         } else {
@@ -926,6 +1827,225 @@ public class BasicProperties extends Properties {
     }
 
 
+    /**
+     * Stores the properties to file without ever exposing a partially
+     * written file.
+     * <p>
+     * The data is written through a buffered stream to a temporary file next
+     * to the target, optionally forced to the storage device, and then
+     * renamed over the target.
+     *
+     * @param filename Name of file to store the properties in
+     * @param header   Property file header comment or null
+     * @param force    true to force the data to disk before the rename
+     *
+     * @return true on success
+     */
+    public boolean storeAtomic(String filename, String header, boolean force) {
+        Path target = new File(filename).getAbsoluteFile().toPath();
+
+        synchronized (storeLock) {
+            Path temp = null;
+
+            try {
+                // a unique name, so stores from other processes cannot collide
+                temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+                copyPermissions(target, temp);
+
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+                    OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                    store(output, header);
+                    output.flush();
+
+                    if (force) {
+                        channel.force(true);
+                    }
+                }
+
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                return true;
+
+            } catch (IOException ioe1) {
+                if (temp != null) {
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch (IOException ioe2) {
+                    }
+                }
+
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * Gives the temporary file the permissions of the file it replaces, as
+     * temporary files are created readable by the owner only
+     */
+    private static void copyPermissions(Path target, Path temp) {
+        PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+        if ((view == null) || !Files.exists(target)) {
+            return;
+        }
+
+        try {
+            view.setPermissions(Files.getFileAttributeView(target, PosixFileAttributeView.class)
+                    .readAttributes().permissions());
+        } catch (IOException ioe) {
+        }
+    }
+
+
+    /**
+     * Enables deferred storing.  Once enabled, any change to the properties
+     * schedules an atomic store on a background thread after the specified
+     * delay.  Changes made while a store is pending are written by that same
+     * store, so frequent updates cost a single write per delay period.
+     * <p>
+     * Pending stores are written by a shutdown hook when the JVM exits
+     * normally; call <code>flushDeferredStore</code> to write them sooner.
+     *
+     * @param filename    Name of file to store the properties in, or null to disable
+     * @param header      Property file header comment or null
+     * @param delayMillis Delay between the first change and the write
+     * @param force       true to force the data to disk on each store
+     */
+    public synchronized void setDeferredStore(String filename, String header, long delayMillis, boolean force) {
+        deferredFilename = filename;
+        deferredHeader = header;
+        deferredDelay = Math.max(0L, delayMillis);
+        deferredForce = force;
+
+        if ((filename == null) && (pendingStore != null)) {
+            pendingStore.cancel(false);
+            pendingStore = null;
+            if (runningStores == 0) {
+                pendingInstances.remove(this);
+            }
+        }
+    }
+
+
+    /**
+     * Writes any pending deferred store immediately, and waits for one that
+     * is already being written.
+     *
+     * @return false if the store failed
+     */
+    public boolean flushDeferredStore() {
+        String filename;
+        String header;
+        boolean force;
+
+        synchronized (this) {
+            while (runningStores > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (pendingStore == null) {
+                return true;
+            }
+
+            pendingStore.cancel(false);
+            pendingStore = null;
+            pendingInstances.remove(this);
+            filename = deferredFilename;
+            header = deferredHeader;
+            force = deferredForce;
+        }
+
+        return storeAtomic(filename, header, force);
+    }
+
+
+    /**
+     * Schedules a deferred store if enabled and none is pending.
+     * Called with the instance monitor held.
+     */
+    private void scheduleDeferredStore() {
+        if ((deferredFilename == null) || (pendingStore != null)) {
+            return;
+        }
+
+        pendingInstances.add(this);
+        pendingStore = getStoreExecutor().schedule(new Runnable() {
+            public void run() {
+                String filename;
+                String header;
+                boolean force;
+
+                synchronized (BasicProperties.this) {
+                    pendingStore = null;
+                    runningStores++;
+                    filename = deferredFilename;
+                    header = deferredHeader;
+                    force = deferredForce;
+                }
+
+                try {
+                    if (filename != null) {
+                        storeAtomic(filename, header, force);
+                    }
+                } finally {
+                    synchronized (BasicProperties.this) {
+                        runningStores--;
+                        if ((runningStores == 0) && (pendingStore == null)) {
+                            pendingInstances.remove(BasicProperties.this);
+                        }
+                        BasicProperties.this.notifyAll();
+                    }
+                }
+            }
+        }, deferredDelay, TimeUnit.MILLISECONDS);
+    }
+
+
+    private static synchronized ScheduledExecutorService getStoreExecutor() {
+        if (storeExecutor == null) {
+            storeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BasicProperties-store");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            // the store thread is a daemon, so write what is still pending on exit
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    flushPendingStores();
+                }
+            }, "BasicProperties-flush"));
+        }
+
+        return storeExecutor;
+    }
+
+
+    private static void flushPendingStores() {
+        BasicProperties[] instances;
+        synchronized (pendingInstances) {
+            instances = pendingInstances.toArray(new BasicProperties[0]);
+        }
+
+        for (BasicProperties props : instances) {
+            props.flushDeferredStore();
+        }
+    }
+
+
     /**
      * Serializes the properties to a byte array
      * @return The property object encoded as an byte array
@@ -948,6 +2068,148 @@ public class BasicProperties extends Properties {
     }
 
 
+    /**
+     * Serializes the properties to a compact binary byte array.
+     * <p>
+     * The encoding is a two byte signature and a version byte, followed by
+     * the entry count and the key/value pairs.  Counts and string lengths
+     * are unsigned varints and strings are UTF-8, so decoding needs neither
+     * a terminator scan nor escape processing.  Only this instance's own
+     * entries are written, as with {@link #toByteArray()}.
+     *
+     * @return The property object encoded as a byte array
+     * @see BasicProperties#fromByteArray
+     */
+    public synchronized byte[] toCompactByteArray() {
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : entrySet()) {
+            if ((entry.getKey() instanceof String) && (entry.getValue() instanceof String)) {
+                count++;
+            }
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(8 + (size() * 25));
+        baos.write(BINARY_MAGIC_0);
+        baos.write(BINARY_MAGIC_1);
+        baos.write(BINARY_VERSION);
+        writeVarint(baos, count);
+
+        for (Map.Entry<Object, Object> entry : entrySet()) {
+            if ((entry.getKey() instanceof String) && (entry.getValue() instanceof String)) {
+                writeUtf8(baos, (String) entry.getKey());
+                writeUtf8(baos, (String) entry.getValue());
+            }
+        }
+
+        return baos.toByteArray();
+    }
+
+
+    /**
+     * Decodes and decrypts a hex encoded encrypted value.
+     *
+     * @param value  The hex string
+     * @param buffer Work buffer of at least the cipher output length
+     *               for value.length() / 2 bytes
+     * @return The decrypted and trimmed string, or "" if the value is not hex
+     */
+    private static String decryptHexString(String value, byte[] buffer) {
+        int length = value.length() / 2;
+        int size = encryptionAgent.getOutputLength(length);
+
+        try {
+            Utilities.decodeHexLenient(value, 0, length * 2, buffer, 0);
+        } catch (NumberFormatException nfe) {
+            return "";
+        }
+        java.util.Arrays.fill(buffer, length, size, (byte) 0);
+
+        encryptionAgent.decrypt(buffer, 0, buffer, 0, size);
+
+        // Equivalent to String.trim() as UTF-8 encodes those chars as single bytes
+        int start = 0;
+        int end = size;
+        while ((start < end) && ((buffer[start] & 0xff) <= ' ')) {
+            start++;
+        }
+        while ((end > start) && ((buffer[end - 1] & 0xff) <= ' ')) {
+            end--;
+        }
+
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Tests for the compact binary encoding magic bytes.  The version is
+     * checked by fromCompactByteArray, so that data from a later version is
+     * rejected rather than parsed as text.
+     */
+    private static boolean isCompactEncoding(byte[] data, int offset, int length) {
+        return (length >= 2) && (offset >= 0) && (offset + 1 < data.length)
+                && (data[offset] == BINARY_MAGIC_0)
+                && (data[offset + 1] == BINARY_MAGIC_1);
+    }
+
+
+    private static void writeVarint(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+
+    private static void writeUtf8(ByteArrayOutputStream output, String value) {
+        byte[] u8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, u8.length);
+        output.write(u8, 0, u8.length);
+    }
+
+
+    /**
+     * Reads an unsigned varint, advancing position[0]
+     */
+    private static int readVarint(byte[] data, int[] position, int end) {
+        int value = 0;
+        int shift = 0;
+        int index = position[0];
+
+        while (true) {
+            if ((index >= end) || (shift > 28)) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+
+            int b = data[index++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+
+        position[0] = index;
+        return value;
+    }
+
+
+    /**
+     * Reads a length prefixed UTF-8 string, advancing position[0]
+     */
+    private static String readUtf8(byte[] data, int[] position, int end) {
+        int length = readVarint(data, position, end);
+        int start = position[0];
+
+        if ((length < 0) || (length > end - start)) {
+            throw new ArrayIndexOutOfBoundsException(start + length);
+        }
+
+        position[0] = start + length;
+        return new String(data, start, length, StandardCharsets.UTF_8);
+    }
+
+
     /**
      * Greg's obsfuscation encryptor
      *
@@ -963,21 +2225,7 @@ public class BasicProperties extends Properties {
      * @return The encrypted string
      */
     public static final String encryptString(String data) {
-        StringBuffer temp = new StringBuffer();
-        int residue = 0x7e71;
-
-        for (int i = 0; i < data.length(); i++) {
-            char c1 = data.charAt(i);
-            int v1 = ((c1 >> 4) + 'A' + (residue) % 10);
-            int v2 = ((c1 & 0x0f) + 'A' + (residue >> 1) % 10);
-            residue += ((residue >> 4) + c1);
-            residue = residue & 0xffff;
-
-            temp.append((char) v1);
-            temp.append((char) v2);
-        }
-
-        return temp.toString();
+        return VeiledCodec.encodeString(data);
     }
 
 
@@ -991,20 +2239,7 @@ public class BasicProperties extends Properties {
      * @return The decrypted string
      */
     public static final String decryptString(String data) {
-
-        StringBuffer temp = new StringBuffer();
-        int residue = 0x7e71;
-
-        for (int i = 0; i < (data.length() / 2); i++) {
-
-            int v = ((data.charAt(i * 2) - 'A' - (residue) % 10) << 4) +
-                    (data.charAt(i * 2 + 1) - 'A' - (residue >> 1) % 10);
-            temp.append((char) v);
-            residue += (residue >> 4) + (char) v;
-            residue = residue & 0xffff;
-        }
-
-        return temp.toString();
+        return VeiledCodec.decodeString(data);
     }
 
 
@@ -1018,21 +2253,7 @@ public class BasicProperties extends Properties {
      * @return The encrypted string
      */
     private static final String encryptBytes(byte[] data) {
-        StringBuffer temp = new StringBuffer();
-        int residue = 0x7e71;
-
-        for (int i = 0; i < data.length; i++) {
-            int c1 = data[i] & 0xff;
-            int v1 = ((c1 >> 4) + 'A' + (residue) % 10);
-            int v2 = ((c1 & 0x0f) + 'A' + (residue >> 1) % 10);
-            residue += ((residue >> 4) + c1);
-            residue = residue & 0xffff;
-
-            temp.append((char) v1);
-            temp.append((char) v2);
-        }
-
-        return temp.toString();
+        return VeiledCodec.encodeBytes(data);
     }
 
 
@@ -1046,23 +2267,135 @@ public class BasicProperties extends Properties {
      * @return The decrypted bytes
      */
     private static final byte[] decryptBytes(String data) {
+        return VeiledCodec.decodeBytes(data);
+    }
+
+
+    /**
+     * Returns the cached parse results for a property, creating a fresh
+     * entry when the raw value is no longer the one the entry was built from.
+     *
+     * @param key   Property key
+     * @param value The current raw property value
+     */
+    private ParsedValues getParsedValues(String key, String value) {
+        ConcurrentHashMap<String, ParsedValues> cache = parsedValues;
+        ParsedValues parsed = cache.get(key);
+        if ((parsed == null) || (parsed.source != value)) {
+            parsed = new ParsedValues(value);
+            cache.put(key, parsed);
+        }
+
+        return parsed;
+    }
 
-        StringBuffer temp = new StringBuffer();
-        int residue = 0x7e71;
-        byte[] result = new byte[data.length() / 2];
 
-        for (int i = 0; i < (result.length); i++) {
+    /**
+     * Updates the derived state after a key was added, changed or removed
+     */
+    private void keyChanged(Object key) {
+        invalidate(key);
 
-            int v = ((data.charAt(i * 2) - 'A' - (residue) % 10) << 4) +
-                    (data.charAt(i * 2 + 1) - 'A' - (residue >> 1) % 10);
-            result[i] = (byte) (v & 0xff);
-            temp.append((char) v);
-            residue += (residue >> 4) + (char) v;
-            residue = residue & 0xffff;
+        if ((keyIndex != null) && (key instanceof String)) {
+            if (containsKey(key)) {
+                keyIndex.add((String) key);
+            } else {
+                keyIndex.remove(key);
+            }
         }
 
-        return result;
+        scheduleDeferredStore();
+    }
+
+
+    /**
+     * Stores a value along with its parsed form, so the next typed read does
+     * not parse it.  The cache entry is replaced in one step rather than
+     * dropped by put and added again.
+     *
+     * @return The previous raw value, or null
+     */
+    private synchronized String putParsed(String key, ParsedValues parsed) {
+        ensureLoaded();
+        Object oldValue = super.put(key, parsed.source);
+        parsedValues.put(key, parsed);
+        if (oldValue == null) {
+            keyIndex.add(key);
+        }
+        scheduleDeferredStore();
+        return (oldValue instanceof String) ? (String) oldValue : null;
+    }
+
+
+    /**
+     * Builds the sorted key index from the table contents
+     */
+    private ConcurrentSkipListSet<String> buildKeyIndex() {
+        ConcurrentSkipListSet<String> index = new ConcurrentSkipListSet<String>();
+        for (Object key : keySet()) {
+            if (key instanceof String) {
+                index.add((String) key);
+            }
+        }
+        return index;
+    }
+
+
+    /**
+     * Drops the cached parse results for a property
+     */
+    private void invalidate(Object key) {
+        ConcurrentHashMap<String, ParsedValues> cache = parsedValues;
+        if ((cache != null) && (key != null)) {
+            cache.remove(key);
+        }
     }
 
 
+    /**
+     * Parses the int slot on first use
+     *
+     * @return true if the raw value is a valid int
+     */
+    private static boolean parseInt(ParsedValues parsed) {
+        int state = parsed.intState;
+
+        if (state == UNPARSED) {
+            try {
+                parsed.intValue = Integer.parseInt(parsed.source);
+                state = PARSED;
+            } catch (NumberFormatException e) {
+                state = INVALID;
+            }
+            parsed.intState = (byte) state;
+        }
+
+        return state == PARSED;
+    }
+
+
+    /**
+     * Typed values parsed from a single raw property string
+     */
+    private static final class ParsedValues {
+        final String source;
+        volatile Color color;
+        volatile Font font;
+        volatile int[] intArray;
+        volatile String[] stringArray;
+        volatile InetAddress inetAddress;
+        volatile IpAddress ipAddress;
+
+        // Numeric slots; each value is written before its state is published
+        int intValue;
+        long longValue;
+        float floatValue;
+        volatile byte intState;
+        volatile byte longState;
+        volatile byte floatState;
+
+        ParsedValues(String source) {
+            this.source = source;
+        }
+    }
 }
@@ -0,0 +1,336 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Watches a properties file and applies changes to a <code>BasicProperties</code>
+ * instance without a restart.
+ * <p>
+ * Only keys whose values changed in the file are written to the target, and
+ * keys that disappeared from the file are removed from it.  Keys that were
+ * never in the file are left alone.  Saves arriving within the debounce
+ * window of each other are coalesced into a single reparse.
+ * <p>
+ * Listeners are notified on the watcher thread after the target has been
+ * updated.
+ */
+public class BasicPropertiesReloader implements Closeable {
+
+    /**
+     * Callback for reload notifications
+     */
+    public interface ReloadListener {
+        void propertiesReloaded(BasicPropertiesReloader source, Diff diff);
+    }
+
+
+    /**
+     * The set of changes applied by one reload
+     */
+    public static class Diff {
+        private final Map<String, String> added;
+        private final Map<String, String> changed;
+        private final Set<String> removed;
+
+        Diff(Map<String, String> added, Map<String, String> changed, Set<String> removed) {
+            this.added = Collections.unmodifiableMap(added);
+            this.changed = Collections.unmodifiableMap(changed);
+            this.removed = Collections.unmodifiableSet(removed);
+        }
+
+        /**
+         * Keys that are new in the file, with their values
+         */
+        public Map<String, String> getAdded() {
+            return added;
+        }
+
+        /**
+         * Keys whose value changed, with their new values
+         */
+        public Map<String, String> getChanged() {
+            return changed;
+        }
+
+        /**
+         * Keys that are no longer in the file
+         */
+        public Set<String> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+
+    private final BasicProperties target;
+    private final File file;
+    private final long debounceMillis;
+    private final CopyOnWriteArrayList<ReloadListener> listeners = new CopyOnWriteArrayList<ReloadListener>();
+
+    private Map<String, String> fileSnapshot;
+    private WatchService watchService;
+    private Thread watchThread;
+    private boolean closed;
+
+
+    /**
+     * Constructs a reloader.  Call {@link #start()} to begin watching.
+     *
+     * @param target         The properties to keep up to date
+     * @param file           The properties file to watch
+     * @param debounceMillis Quiet period required after the last change
+     *                       before the file is reparsed
+     */
+    public BasicPropertiesReloader(BasicProperties target, File file, long debounceMillis) {
+        this.target = target;
+        this.file = file.getAbsoluteFile();
+        this.debounceMillis = Math.max(0L, debounceMillis);
+    }
+
+
+    public void addReloadListener(ReloadListener listener) {
+        listeners.add(listener);
+    }
+
+
+    public void removeReloadListener(ReloadListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    /**
+     * Takes a snapshot of the file as the baseline and starts watching it.
+     * The target is assumed to have been loaded from the same file.
+     *
+     * @throws IOException if the directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (closed || (watchThread != null)) {
+            return;
+        }
+
+        fileSnapshot = readFile();
+        if (fileSnapshot == null) {
+            fileSnapshot = new HashMap<String, String>();
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        watchThread = new Thread(new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "BasicPropertiesReloader-" + file.getName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+
+    /**
+     * Stops watching the file and waits for the watcher thread to finish,
+     * so no reload is applied after this returns.  A closed reloader cannot
+     * be restarted.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException ioe) {
+                }
+                watchService = null;
+            }
+            thread = watchThread;
+            watchThread = null;
+        }
+
+        if ((thread != null) && (thread != Thread.currentThread())) {
+            thread.interrupt();
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Reparses the file and applies the differences to the target.
+     *
+     * @return The applied changes, or null if the file could not be read or
+     * the reloader has been closed
+     */
+    public synchronized Diff reload() {
+        if (closed) {
+            return null;
+        }
+
+        Map<String, String> current = readFile();
+        if (current == null) {
+            return null;
+        }
+
+        Map<String, String> previous = (fileSnapshot == null) ? new HashMap<String, String>() : fileSnapshot;
+        Map<String, String> added = new HashMap<String, String>();
+        Map<String, String> changed = new HashMap<String, String>();
+        Set<String> removed = new HashSet<String>();
+
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            String oldValue = previous.get(entry.getKey());
+            if (oldValue == null) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!oldValue.equals(entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            target.setString(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : changed.entrySet()) {
+            target.setString(entry.getKey(), entry.getValue());
+        }
+        for (String key : removed) {
+            target.remove(key);
+        }
+
+        fileSnapshot = current;
+
+        Diff diff = new Diff(added, changed, removed);
+        if (!diff.isEmpty()) {
+            for (ReloadListener listener : listeners) {
+                // one failing listener must not stop the others or the watcher
+                try {
+                    listener.propertiesReloaded(this, diff);
+                } catch (RuntimeException re) {
+                }
+            }
+        }
+
+        return diff;
+    }
+
+
+    /**
+     * Watch loop.  Runs until the watch service is closed or the thread is
+     * interrupted.
+     */
+    private void watch() {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        if (service == null) {
+            return;
+        }
+
+        Path fileName = file.toPath().getFileName();
+        long deadline = 0L;
+
+        try {
+            while (true) {
+                WatchKey key;
+                if (deadline == 0L) {
+                    key = service.take();
+                } else {
+                    long wait = deadline - System.currentTimeMillis();
+                    key = (wait > 0) ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(event.context())
+                                || (event.kind() == StandardWatchEventKinds.OVERFLOW)) {
+                            // restart the debounce window
+                            deadline = System.currentTimeMillis() + debounceMillis;
+                        }
+                    }
+                    key.reset();
+                }
+
+                if ((deadline != 0L) && (System.currentTimeMillis() >= deadline)) {
+                    deadline = 0L;
+                    try {
+                        reload();
+                    } catch (RuntimeException re) {
+                        // keep watching, the next change may apply cleanly
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException cwse) {
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Parses the file into a plain map
+     *
+     * @return The file contents, or null if the file is missing or unreadable
+     */
+    private Map<String, String> readFile() {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        BasicProperties props = new BasicProperties();
+        try {
+            props.load(file);
+        } catch (IOException ioe) {
+            return null;
+        } catch (IllegalArgumentException iae) {
+            // a malformed unicode escape, possibly a half written file; a
+            // later event reloads it
+            return null;
+        }
+
+        Map<String, String> result = new HashMap<String, String>();
+        for (String key : props.stringPropertyNames()) {
+            result.put(key, props.getProperty(key));
+        }
+
+        return result;
+    }
+}
@@ -4,9 +4,19 @@
  */
 package com.gwp.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Blowfish encryption class
+ * <p>
+ * Once initialized, encrypt and decrypt only read the key schedule, so an
+ * initialized instance may be shared between threads.
  */
 public class Blowfish {
   
@@ -148,18 +158,23 @@ public class Blowfish {
   };
 
   private int[]   m_PArray;
-  private int[][] m_SBoxes; // [x][256]
+  private int[]   m_SBoxes; // four boxes of 256, box i starts at i << 8
 
   static private final int MAXKEYBYTES    = 56; // max 448 bits
   static private final int NPASS          = 16; // SBox passes
 
+  static private final int PARALLEL_THRESHOLD = 64 * 1024; // bytes per bulk task
+
+  // blocks are read and written as little-endian longs straight from byte arrays
+  static private final VarHandle LE_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
   /**
    * Default constructor
    */
   public Blowfish()
   {
     m_PArray = new int [NPASS + 2];
-    m_SBoxes = new int [4][256];
+    m_SBoxes = new int [4 * 256];
   }
 
   public void initialize(byte[] p_key, int p_iBytes)
@@ -168,16 +183,10 @@ public class Blowfish {
     int   data;
 
     // first fill arrays from data tables
-    for (i = 0 ; i < NPASS + 2 ; i++)
-      m_PArray [i] = bf_P [i];
+    System.arraycopy(bf_P, 0, m_PArray, 0, NPASS + 2);
 
     for (i = 0 ; i < 4 ; i++)
-    {
-      for (j = 0 ; j < 256 ; j++)
-      {
-        m_SBoxes [i][j] = bf_S [i][j];
-      }
-    }
+      System.arraycopy(bf_S [i], 0, m_SBoxes, i << 8, 256);
 
 
     j = 0 ;
@@ -188,23 +197,20 @@ public class Blowfish {
       j = (j + 4) % p_iBytes ;
     }
 
-    byte[] datalr = { 0, 0, 0, 0, 0, 0, 0, 0 };
+    long datalr = 0;
 
     for (i = 0 ; i < NPASS + 2 ; i += 2)
     {
-      blowfish_encipher(datalr,0);
-      m_PArray [i] = make_int_from_le_bytes(datalr,0,8);
-      m_PArray [i + 1] = make_int_from_le_bytes(datalr,4,8);
+      datalr = blowfish_encipher(datalr);
+      m_PArray [i] = (int) datalr;
+      m_PArray [i + 1] = (int) (datalr >>> 32);
     }
 
-    for (i = 0 ; i < 4 ; ++i)
+    for (i = 0 ; i < 4 * 256 ; i += 2)
     {
-      for (j = 0 ; j < 256 ; j += 2)
-      {
-        blowfish_encipher (datalr,0);
-        m_SBoxes [i][j] = make_int_from_le_bytes(datalr,0,8);
-        m_SBoxes [i][j + 1] = make_int_from_le_bytes(datalr,4,8);
-      }
+      datalr = blowfish_encipher(datalr);
+      m_SBoxes [i] = (int) datalr;
+      m_SBoxes [i + 1] = (int) (datalr >>> 32);
     }
   }
 
@@ -234,10 +240,13 @@ public class Blowfish {
     for (lCount = 0 ; lCount < lOutSize ; lCount += 8)
     {
       lGoodBytes = p_lSize - lCount ;       // number of remaining data bytes
-      if (lGoodBytes > 8)
-        lGoodBytes = 8;
-
-      if (SameDest) // if encoded data is being written into input buffer
+      if (lGoodBytes >= 8) // whole block, no padding needed
+      {
+        LE_LONG.set(p_pOutput, iOutput, blowfish_encipher((long) LE_LONG.get(p_pInput, iInput)));
+        iInput += 8;
+        iOutput += 8;
+      }
+      else if (SameDest) // if encoded data is being written into input buffer
       {
         for (j = lGoodBytes ; j < 8 ; j++)
           p_pOutput[iInput+j] = 0;
@@ -267,34 +276,303 @@ public class Blowfish {
   public void decrypt(byte[] p_pInput, int iInput, byte[] p_pOutput, int iOutput, int p_lSize)
   {
     int lCount;
-    int   i;
-    boolean SameDest = (p_pInput == p_pOutput) && (iInput == iOutput);
 
     for (lCount = 0; lCount < p_lSize; lCount += 8)
     {
-      if (SameDest) // if encoded data is being written into input buffer
+      LE_LONG.set(p_pOutput, iOutput, blowfish_decipher((long) LE_LONG.get(p_pInput, iInput)));
+      iInput += 8;
+      iOutput += 8;
+    }
+  }
+  /**
+   * Encrypts the remaining bytes of the input buffer into the output buffer.
+   * <p>
+   * Works directly on heap, direct and memory-mapped buffers.  A trailing
+   * partial block is zero padded, so the output must have room for
+   * getOutputLength(input.remaining()) bytes.  Passing the same buffer for
+   * input and output encrypts in place.  Both buffers are advanced past the
+   * processed data.
+   *
+   * @return the number of bytes written to the output
+   */
+  public int encrypt(ByteBuffer p_Input, ByteBuffer p_Output)
+  {
+    int lSize = p_Input.remaining();
+    int lOutSize = getOutputLength(lSize);
+    int lFull = lSize & ~7;
+
+    if (p_Output.remaining() < lOutSize)
+      throw new BufferOverflowException();
+
+    ByteBuffer in = p_Input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer out = p_Output.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int iInput = in.position();
+    int iOutput = out.position();
+    int lCount;
+
+    for (lCount = 0; lCount < lFull; lCount += 8)
+      out.putLong(iOutput + lCount, blowfish_encipher(in.getLong(iInput + lCount)));
+
+    if (lFull < lSize)
+    {
+      long block = 0;
+      for (int j = 0; j < lSize - lFull; j++)
+        block |= ((long) (in.get(iInput + lFull + j) & 0xFF)) << (j * 8);
+      out.putLong(iOutput + lFull, blowfish_encipher(block));
+    }
+
+    p_Input.position(iInput + lSize);
+    p_Output.position(iOutput + lOutSize);
+    return lOutSize;
+  }
+
+  /**
+   * Decrypts the remaining bytes of the input buffer into the output buffer.
+   * The input length must be a multiple of the block size.  Passing the same
+   * buffer for input and output decrypts in place.  Both buffers are
+   * advanced past the processed data.
+   *
+   * @return the number of bytes written to the output
+   */
+  public int decrypt(ByteBuffer p_Input, ByteBuffer p_Output)
+  {
+    int lSize = p_Input.remaining();
+
+    if ((lSize & 7) != 0)
+      throw new IllegalArgumentException("input length is not a multiple of 8: " + lSize);
+    if (p_Output.remaining() < lSize)
+      throw new BufferOverflowException();
+
+    ByteBuffer in = p_Input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer out = p_Output.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int iInput = in.position();
+    int iOutput = out.position();
+
+    for (int lCount = 0; lCount < lSize; lCount += 8)
+      out.putLong(iOutput + lCount, blowfish_decipher(in.getLong(iInput + lCount)));
+
+    p_Input.position(iInput + lSize);
+    p_Output.position(iOutput + lSize);
+    return lSize;
+  }
+
+  /**
+   * Encrypts a single 8 byte block in place
+   */
+  public void encryptBlock(byte[] p_pBlock, int iOffset)
+  {
+    blowfish_encipher(p_pBlock, iOffset);
+  }
+
+  /**
+   * Decrypts a single 8 byte block in place
+   */
+  public void decryptBlock(byte[] p_pBlock, int iOffset)
+  {
+    blowfish_decipher(p_pBlock, iOffset);
+  }
+
+  /**
+   * Encrypts many small messages held in one buffer.  Message k starts at
+   * p_Segments[2 * k] and is p_Segments[2 * k + 1] bytes long.  Each message
+   * is zero padded like encrypt and the results are written back to back
+   * into the output, so message k takes getOutputLength(length) bytes.  No
+   * objects are allocated.  The output must not overlap the input.
+   *
+   * @return the total number of bytes written to the output
+   */
+  public int encryptBatch(byte[] p_pInput, int[] p_Segments, int iCount, byte[] p_pOutput, int iOutput)
+  {
+    int iStart = iOutput;
+
+    for (int k = 0; k < iCount; k++)
+    {
+      int iInput = p_Segments [2 * k];
+      int lSize = p_Segments [2 * k + 1];
+      int lFull = iInput + (lSize & ~7);
+
+      for ( ; iInput < lFull; iInput += 8, iOutput += 8)
+        LE_LONG.set(p_pOutput, iOutput, blowfish_encipher((long) LE_LONG.get(p_pInput, iInput)));
+
+      if ((lSize & 7) != 0)
       {
-        blowfish_decipher (p_pInput,iInput);
-        iInput += 8;
-      }
-      else 			// output buffer not equal to input buffer
-      {               // so copy input to output before decoding
-        for (i = 0; i < 8; i++)
-          p_pOutput[iOutput+i] = p_pInput[iInput+i];
-        blowfish_decipher (p_pOutput,iOutput);
-        iInput += 8;
+        long block = 0;
+        for (int j = 0; j < (lSize & 7); j++)
+          block |= ((long) (p_pInput[iInput + j] & 0xFF)) << (j * 8);
+        LE_LONG.set(p_pOutput, iOutput, blowfish_encipher(block));
         iOutput += 8;
       }
     }
+
+    return iOutput - iStart;
   }
-  static private int make_int_from_le_bytes ( byte[] b, int i, int d )
+
+  /**
+   * Decrypts many messages held in one buffer, laid out as for
+   * encryptBatch.  Every length must be a multiple of 8.  The results are
+   * written back to back into the output, which must not overlap the input.
+   *
+   * @return the total number of bytes written to the output
+   */
+  public int decryptBatch(byte[] p_pInput, int[] p_Segments, int iCount, byte[] p_pOutput, int iOutput)
   {
-    int data = 0;
-    data |= ((int)b[(i+3)%d])&0xFF; data <<= 8;
-    data |= ((int)b[(i+2)%d])&0xFF; data <<= 8;
-    data |= ((int)b[(i+1)%d])&0xFF; data <<= 8;
-    data |= ((int)b[ i     ])&0xFF;
-    return data;
+    int iStart = iOutput;
+
+    for (int k = 0; k < iCount; k++)
+    {
+      int iInput = p_Segments [2 * k];
+      int lSize = p_Segments [2 * k + 1];
+
+      if ((lSize & 7) != 0)
+        throw new IllegalArgumentException("message " + k + " length is not a multiple of 8: " + lSize);
+
+      for (int lEnd = iInput + lSize; iInput < lEnd; iInput += 8, iOutput += 8)
+        LE_LONG.set(p_pOutput, iOutput, blowfish_decipher((long) LE_LONG.get(p_pInput, iInput)));
+    }
+
+    return iOutput - iStart;
+  }
+
+  /**
+   * Bulk version of encrypt for large buffers.  Blocks are independent in
+   * this (ECB) mode, so inputs of PARALLEL_THRESHOLD bytes or more are split
+   * into segments and encrypted on the common fork-join pool; smaller inputs
+   * are handled sequentially.  Output matches encrypt.  Input and output
+   * must be the same region or must not overlap.
+   *
+   * @return the number of bytes written to the output
+   */
+  public int encryptParallel(byte[] p_pInput, int iInput, byte[] p_pOutput, int iOutput, int p_lSize)
+  {
+    int lFull = p_lSize & ~7;
+
+    if (lFull < PARALLEL_THRESHOLD)
+      return encrypt(p_pInput, iInput, p_pOutput, iOutput, p_lSize);
+
+    ForkJoinPool.commonPool().invoke(new BulkTask(BulkTask.ENCRYPT, 0, p_pInput, iInput, p_pOutput, iOutput, 0, lFull));
+    if (lFull < p_lSize)
+      encrypt(p_pInput, iInput + lFull, p_pOutput, iOutput + lFull, p_lSize - lFull);
+
+    return getOutputLength(p_lSize);
+  }
+
+  /**
+   * Bulk version of decrypt for large buffers, see encryptParallel.  The
+   * input length must be a multiple of the block size.
+   */
+  public void decryptParallel(byte[] p_pInput, int iInput, byte[] p_pOutput, int iOutput, int p_lSize)
+  {
+    if ((p_lSize & 7) != 0)
+      throw new IllegalArgumentException("input length is not a multiple of 8: " + p_lSize);
+
+    if (p_lSize < PARALLEL_THRESHOLD)
+      decrypt(p_pInput, iInput, p_pOutput, iOutput, p_lSize);
+    else
+      ForkJoinPool.commonPool().invoke(new BulkTask(BulkTask.DECRYPT, 0, p_pInput, iInput, p_pOutput, iOutput, 0, p_lSize));
+  }
+
+  /**
+   * Encrypts or decrypts in CTR mode; the operation is its own inverse.  The
+   * 8 byte IV is the initial counter block, incremented as a big-endian
+   * number, which produces the same output as BlowfishCipher in CTR mode.
+   * No padding is applied, so the output is exactly p_lSize bytes.  Large
+   * inputs are processed in parallel as in encryptParallel.
+   */
+  public void cryptCTR(byte[] p_IV, byte[] p_pInput, int iInput, byte[] p_pOutput, int iOutput, int p_lSize)
+  {
+    if ((p_IV == null) || (p_IV.length != 8))
+      throw new IllegalArgumentException("IV must be 8 bytes");
+
+    long lCounter = ByteBuffer.wrap(p_IV).getLong();
+    BulkTask task = new BulkTask(BulkTask.CTR, lCounter, p_pInput, iInput, p_pOutput, iOutput, 0, p_lSize);
+
+    if (p_lSize < PARALLEL_THRESHOLD)
+      task.process();
+    else
+      ForkJoinPool.commonPool().invoke(task);
+  }
+
+  /**
+   * Processes the byte range [from, to) of a bulk operation, splitting it in
+   * two while it is larger than PARALLEL_THRESHOLD.  Only the last range may
+   * end in a partial block, which is only allowed in CTR mode.
+   */
+  private class BulkTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    static final int ENCRYPT = 0;
+    static final int DECRYPT = 1;
+    static final int CTR     = 2;
+
+    private final int    m_iMode;
+    private final long   m_lCounter;
+    private final byte[] m_pInput;
+    private final int    m_iInput;
+    private final byte[] m_pOutput;
+    private final int    m_iOutput;
+    private final int    m_iFrom;
+    private final int    m_iTo;
+
+    BulkTask(int p_iMode, long p_lCounter, byte[] p_pInput, int iInput, byte[] p_pOutput, int iOutput, int iFrom, int iTo)
+    {
+      m_iMode = p_iMode;
+      m_lCounter = p_lCounter;
+      m_pInput = p_pInput;
+      m_iInput = iInput;
+      m_pOutput = p_pOutput;
+      m_iOutput = iOutput;
+      m_iFrom = iFrom;
+      m_iTo = iTo;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (m_iTo - m_iFrom <= PARALLEL_THRESHOLD)
+      {
+        process();
+        return;
+      }
+
+      int iMid = m_iFrom + (((m_iTo - m_iFrom) / 2) & ~7);
+      invokeAll(new BulkTask(m_iMode, m_lCounter, m_pInput, m_iInput, m_pOutput, m_iOutput, m_iFrom, iMid),
+                new BulkTask(m_iMode, m_lCounter, m_pInput, m_iInput, m_pOutput, m_iOutput, iMid, m_iTo));
+    }
+
+    void process()
+    {
+      int lFull = m_iFrom + ((m_iTo - m_iFrom) & ~7);
+      int lCount;
+
+      for (lCount = m_iFrom; lCount < lFull; lCount += 8)
+      {
+        long block = (long) LE_LONG.get(m_pInput, m_iInput + lCount);
+        if (m_iMode == ENCRYPT)
+          block = blowfish_encipher(block);
+        else if (m_iMode == DECRYPT)
+          block = blowfish_decipher(block);
+        else
+          block ^= keyStream(lCount);
+        LE_LONG.set(m_pOutput, m_iOutput + lCount, block);
+      }
+
+      if (lFull < m_iTo)
+      {
+        long key = keyStream(lFull);
+        for (int j = 0; j < m_iTo - lFull; j++)
+          m_pOutput[m_iOutput + lFull + j] = (byte) (m_pInput[m_iInput + lFull + j] ^ (key >>> (j * 8)));
+      }
+    }
+
+    /**
+     * Returns the key stream block for the given byte offset; the big-endian
+     * counter bytes are enciphered as a little-endian block
+     */
+    private long keyStream(int lOffset)
+    {
+      return blowfish_encipher(Long.reverseBytes(m_lCounter + (lOffset >>> 3)));
+    }
   }
 
   static private int make_int_from_be_bytes ( byte[] b, int i, int d )
@@ -307,77 +585,73 @@ public class Blowfish {
     return data;
   }
 
-  static private void make_le_bytes_from_int ( byte[] b, int i, int d, int value )
-  {
-    b[ i     ] = (byte)(value&0xFF); value >>>= 8;
-    b[(i+1)%d] = (byte)(value&0xFF); value >>>= 8;
-    b[(i+2)%d] = (byte)(value&0xFF); value >>>= 8;
-    b[(i+3)%d] = (byte)(value&0xFF);
-  }
-
-  private int S ( int x, int i )
+  /**
+   * The Blowfish F function; S is the flattened S-box array
+   */
+  static private int F ( int[] S, int x )
   {
-    x >>>= (3-i)*8;
-    return m_SBoxes[i][x&0xFF];
+    return ((S[x >>> 24] + S[0x100 | ((x >>> 16) & 0xFF)]) ^ S[0x200 | ((x >>> 8) & 0xFF)]) + S[0x300 | (x & 0xFF)];
   }
 
-  private int bf_F ( int x )
+  private void blowfish_encipher(byte[] p_x, int index)
   {
-    return (((S(x,0) + S(x,1)) ^ S(x,2)) + S(x,3));
+    LE_LONG.set(p_x, index, blowfish_encipher((long) LE_LONG.get(p_x, index)));
   }
 
-  private int round ( int a, int b, int n )
+  private void blowfish_decipher(byte[] p_x, int index)
   {
-    a ^= bf_F(b) ^ m_PArray[n];
-    return a;
+    LE_LONG.set(p_x, index, blowfish_decipher((long) LE_LONG.get(p_x, index)));
   }
 
-  private void blowfish_encipher(byte[] p_x, int index)
+  /**
+   * Enciphers one block held as a little-endian long
+   */
+  private long blowfish_encipher(long block)
   {
-    int Xl, Xr ;
-
-    Xl = make_int_from_le_bytes(p_x,index+0,index+8);
-    Xr = make_int_from_le_bytes(p_x,index+4,index+8);
+    final int[] P = m_PArray;
+    final int[] S = m_SBoxes;
+    int Xl = (int) block;
+    int Xr = (int) (block >>> 32);
 
-    Xl ^= m_PArray [0];
+    Xl ^= P [0];
 
-    Xr = round (Xr, Xl, 1);  Xl = round (Xl, Xr, 2);
-    Xr = round (Xr, Xl, 3);  Xl = round (Xl, Xr, 4);
-    Xr = round (Xr, Xl, 5);  Xl = round (Xl, Xr, 6);
-    Xr = round (Xr, Xl, 7);  Xl = round (Xl, Xr, 8);
-    Xr = round (Xr, Xl, 9);  Xl = round (Xl, Xr, 10);
-    Xr = round (Xr, Xl, 11); Xl = round (Xl, Xr, 12);
-    Xr = round (Xr, Xl, 13); Xl = round (Xl, Xr, 14);
-    Xr = round (Xr, Xl, 15); Xl = round (Xl, Xr, 16);
+    Xr ^= F(S, Xl) ^ P [1];   Xl ^= F(S, Xr) ^ P [2];
+    Xr ^= F(S, Xl) ^ P [3];   Xl ^= F(S, Xr) ^ P [4];
+    Xr ^= F(S, Xl) ^ P [5];   Xl ^= F(S, Xr) ^ P [6];
+    Xr ^= F(S, Xl) ^ P [7];   Xl ^= F(S, Xr) ^ P [8];
+    Xr ^= F(S, Xl) ^ P [9];   Xl ^= F(S, Xr) ^ P [10];
+    Xr ^= F(S, Xl) ^ P [11];  Xl ^= F(S, Xr) ^ P [12];
+    Xr ^= F(S, Xl) ^ P [13];  Xl ^= F(S, Xr) ^ P [14];
+    Xr ^= F(S, Xl) ^ P [15];  Xl ^= F(S, Xr) ^ P [16];
 
-    Xr ^= m_PArray [17];
+    Xr ^= P [17];
 
-    make_le_bytes_from_int(p_x,index+4,index+8,Xl);
-    make_le_bytes_from_int(p_x,index+0,index+8,Xr);
+    return (((long) Xl) << 32) | (Xr & 0xFFFFFFFFL);
   }
 
-  private void blowfish_decipher(byte[] p_x, int index)
+  /**
+   * Deciphers one block held as a little-endian long
+   */
+  private long blowfish_decipher(long block)
   {
-    int Xl ;
-    int Xr ;
-
-    Xl = make_int_from_le_bytes(p_x,index+0,index+8);
-    Xr = make_int_from_le_bytes(p_x,index+4,index+8);
+    final int[] P = m_PArray;
+    final int[] S = m_SBoxes;
+    int Xl = (int) block;
+    int Xr = (int) (block >>> 32);
 
-    Xl ^= m_PArray [17];
+    Xl ^= P [17];
 
-    Xr = round (Xr, Xl, 16);  Xl = round (Xl, Xr, 15);
-    Xr = round (Xr, Xl, 14);  Xl = round (Xl, Xr, 13);
-    Xr = round (Xr, Xl, 12);  Xl = round (Xl, Xr, 11);
-    Xr = round (Xr, Xl, 10);  Xl = round (Xl, Xr, 9);
-    Xr = round (Xr, Xl, 8);   Xl = round (Xl, Xr, 7);
-    Xr = round (Xr, Xl, 6);   Xl = round (Xl, Xr, 5);
-    Xr = round (Xr, Xl, 4);   Xl = round (Xl, Xr, 3);
-    Xr = round (Xr, Xl, 2);   Xl = round (Xl, Xr, 1);
+    Xr ^= F(S, Xl) ^ P [16];  Xl ^= F(S, Xr) ^ P [15];
+    Xr ^= F(S, Xl) ^ P [14];  Xl ^= F(S, Xr) ^ P [13];
+    Xr ^= F(S, Xl) ^ P [12];  Xl ^= F(S, Xr) ^ P [11];
+    Xr ^= F(S, Xl) ^ P [10];  Xl ^= F(S, Xr) ^ P [9];
+    Xr ^= F(S, Xl) ^ P [8];   Xl ^= F(S, Xr) ^ P [7];
+    Xr ^= F(S, Xl) ^ P [6];   Xl ^= F(S, Xr) ^ P [5];
+    Xr ^= F(S, Xl) ^ P [4];   Xl ^= F(S, Xr) ^ P [3];
+    Xr ^= F(S, Xl) ^ P [2];   Xl ^= F(S, Xr) ^ P [1];
 
-    Xr ^= m_PArray[0];
+    Xr ^= P [0];
 
-    make_le_bytes_from_int(p_x,index+4,index+8,Xl);
-    make_le_bytes_from_int(p_x,index+0,index+8,Xr);
+    return (((long) Xl) << 32) | (Xr & 0xFFFFFFFFL);
   }
 }
@@ -0,0 +1,294 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import javax.crypto.BadPaddingException;
+
+
+/**
+ * Incremental Blowfish encryption and decryption with a chaining mode.
+ * <p>
+ * Data is fed through {@link #update} in pieces of any size and completed
+ * with {@link #doFinal}, so arbitrarily large payloads can be processed with
+ * a fixed amount of memory.  ECB and CBC use PKCS#5 padding; CTR is a stream
+ * mode and needs no padding.  The 8 byte IV is the CBC initial vector or
+ * the initial CTR counter block, which is incremented as a big-endian
+ * 64 bit number.
+ * <p>
+ * Instances hold chaining state and are not thread safe.  After doFinal the
+ * cipher is reset to its initial IV and can be reused.
+ */
+public class BlowfishCipher {
+
+    public static final int BLOCK_SIZE = 8;
+
+    /**
+     * Block chaining modes
+     */
+    public enum Mode {
+        ECB, CBC, CTR
+    }
+
+
+    private final Blowfish engine;
+    private final Mode mode;
+    private final boolean encrypting;
+    private final byte[] iv = new byte[BLOCK_SIZE];
+
+    private final byte[] buffer = new byte[BLOCK_SIZE];    // partial input block
+    private byte[] chain = new byte[BLOCK_SIZE];           // CBC vector or CTR counter
+    private byte[] scratch = new byte[BLOCK_SIZE];
+    private final byte[] keyStream = new byte[BLOCK_SIZE];
+    private int buffered;
+    private int keyStreamUsed;
+
+
+    /**
+     * Constructs a cipher
+     *
+     * @param engine     An initialized Blowfish instance, which may be shared
+     * @param mode       The chaining mode
+     * @param iv         8 byte IV for CBC and CTR, ignored for ECB
+     * @param encrypting true to encrypt, false to decrypt
+     */
+    public BlowfishCipher(Blowfish engine, Mode mode, byte[] iv, boolean encrypting) {
+        if (mode != Mode.ECB) {
+            if ((iv == null) || (iv.length != BLOCK_SIZE)) {
+                throw new IllegalArgumentException("IV must be " + BLOCK_SIZE + " bytes");
+            }
+            System.arraycopy(iv, 0, this.iv, 0, BLOCK_SIZE);
+        }
+
+        this.engine = engine;
+        this.mode = mode;
+        this.encrypting = encrypting;
+        reset();
+    }
+
+
+    public Mode getMode() {
+        return mode;
+    }
+
+
+    public boolean isEncrypting() {
+        return encrypting;
+    }
+
+
+    /**
+     * Returns the largest number of bytes that update plus doFinal can
+     * produce for the given amount of further input
+     */
+    public int getOutputSize(int inputLength) {
+        if (mode == Mode.CTR) {
+            return inputLength;
+        }
+        return buffered + inputLength + BLOCK_SIZE;
+    }
+
+
+    /**
+     * Restores the initial state
+     */
+    public void reset() {
+        System.arraycopy(iv, 0, chain, 0, BLOCK_SIZE);
+        buffered = 0;
+        keyStreamUsed = BLOCK_SIZE;
+    }
+
+
+    /**
+     * Processes more input.
+     *
+     * @return The number of bytes written to the output, which may differ
+     * from the input length in the block modes
+     */
+    public int update(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        if (mode == Mode.CTR) {
+            return updateCtr(input, inputOffset, length, output, outputOffset);
+        } else if (encrypting) {
+            return updateEncrypt(input, inputOffset, length, output, outputOffset);
+        } else {
+            return updateDecrypt(input, inputOffset, length, output, outputOffset);
+        }
+    }
+
+
+    /**
+     * Completes the operation and resets the cipher.  When encrypting in a
+     * block mode this writes the padding block; when decrypting it writes the
+     * last block with the padding removed.
+     *
+     * @return The number of bytes written to the output
+     * @throws BadPaddingException if the decrypted padding is invalid or the
+     *                             input was not a whole number of blocks
+     */
+    public int doFinal(byte[] output, int outputOffset) throws BadPaddingException {
+        try {
+            if (mode == Mode.CTR) {
+                return 0;
+            }
+
+            if (encrypting) {
+                int pad = BLOCK_SIZE - buffered;
+                for (int i = buffered; i < BLOCK_SIZE; i++) {
+                    buffer[i] = (byte) pad;
+                }
+                encryptBlock(buffer, 0, output, outputOffset);
+                return BLOCK_SIZE;
+            }
+
+            if (buffered != BLOCK_SIZE) {
+                throw new BadPaddingException("input is not a multiple of the block size");
+            }
+
+            decryptBlock(buffer, 0, output, outputOffset);
+            int pad = output[outputOffset + BLOCK_SIZE - 1] & 0xff;
+            if ((pad < 1) || (pad > BLOCK_SIZE)) {
+                throw new BadPaddingException("invalid padding");
+            }
+            for (int i = BLOCK_SIZE - pad; i < BLOCK_SIZE; i++) {
+                if ((output[outputOffset + i] & 0xff) != pad) {
+                    throw new BadPaddingException("invalid padding");
+                }
+            }
+
+            return BLOCK_SIZE - pad;
+
+        } finally {
+            reset();
+        }
+    }
+
+
+    private int updateEncrypt(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        int written = 0;
+
+        // complete a pending partial block
+        if (buffered > 0) {
+            int count = Math.min(length, BLOCK_SIZE - buffered);
+            System.arraycopy(input, inputOffset, buffer, buffered, count);
+            buffered += count;
+            inputOffset += count;
+            length -= count;
+
+            if (buffered < BLOCK_SIZE) {
+                return 0;
+            }
+            encryptBlock(buffer, 0, output, outputOffset);
+            written = BLOCK_SIZE;
+            buffered = 0;
+        }
+
+        while (length >= BLOCK_SIZE) {
+            encryptBlock(input, inputOffset, output, outputOffset + written);
+            inputOffset += BLOCK_SIZE;
+            length -= BLOCK_SIZE;
+            written += BLOCK_SIZE;
+        }
+
+        System.arraycopy(input, inputOffset, buffer, 0, length);
+        buffered = length;
+        return written;
+    }
+
+
+    private int updateDecrypt(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        int written = 0;
+
+        // The last full block is held back until doFinal so that its
+        // padding can be removed
+        while (length > 0) {
+            if (buffered == BLOCK_SIZE) {
+                decryptBlock(buffer, 0, output, outputOffset + written);
+                written += BLOCK_SIZE;
+                buffered = 0;
+            }
+
+            while ((buffered == 0) && (length > BLOCK_SIZE)) {
+                decryptBlock(input, inputOffset, output, outputOffset + written);
+                inputOffset += BLOCK_SIZE;
+                length -= BLOCK_SIZE;
+                written += BLOCK_SIZE;
+            }
+
+            int count = Math.min(length, BLOCK_SIZE - buffered);
+            System.arraycopy(input, inputOffset, buffer, buffered, count);
+            buffered += count;
+            inputOffset += count;
+            length -= count;
+        }
+
+        return written;
+    }
+
+
+    private int updateCtr(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        for (int i = 0; i < length; i++) {
+            if (keyStreamUsed == BLOCK_SIZE) {
+                System.arraycopy(chain, 0, keyStream, 0, BLOCK_SIZE);
+                engine.encryptBlock(keyStream, 0);
+                incrementCounter(chain);
+                keyStreamUsed = 0;
+            }
+            output[outputOffset + i] = (byte) (input[inputOffset + i] ^ keyStream[keyStreamUsed++]);
+        }
+
+        return length;
+    }
+
+
+    /**
+     * Encrypts one block from input into output, applying CBC chaining
+     */
+    private void encryptBlock(byte[] input, int inputOffset, byte[] output, int outputOffset) {
+        if (mode == Mode.CBC) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                output[outputOffset + i] = (byte) (input[inputOffset + i] ^ chain[i]);
+            }
+            engine.encryptBlock(output, outputOffset);
+            System.arraycopy(output, outputOffset, chain, 0, BLOCK_SIZE);
+        } else {
+            System.arraycopy(input, inputOffset, output, outputOffset, BLOCK_SIZE);
+            engine.encryptBlock(output, outputOffset);
+        }
+    }
+
+
+    /**
+     * Decrypts one block from input into output, applying CBC chaining.
+     * Input and output may be the same region.
+     */
+    private void decryptBlock(byte[] input, int inputOffset, byte[] output, int outputOffset) {
+        if (mode == Mode.CBC) {
+            System.arraycopy(input, inputOffset, scratch, 0, BLOCK_SIZE);
+            System.arraycopy(input, inputOffset, output, outputOffset, BLOCK_SIZE);
+            engine.decryptBlock(output, outputOffset);
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                output[outputOffset + i] ^= chain[i];
+            }
+
+            byte[] previous = chain;
+            chain = scratch;
+            scratch = previous;
+        } else {
+            System.arraycopy(input, inputOffset, output, outputOffset, BLOCK_SIZE);
+            engine.decryptBlock(output, outputOffset);
+        }
+    }
+
+
+    /**
+     * Adds one to a big-endian counter block
+     */
+    static void incrementCounter(byte[] counter) {
+        for (int i = BLOCK_SIZE - 1; i >= 0; i--) {
+            if (++counter[i] != 0) {
+                break;
+            }
+        }
+    }
+}
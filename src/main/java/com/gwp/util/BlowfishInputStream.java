@@ -0,0 +1,123 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import javax.crypto.BadPaddingException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * An input stream that passes the data read from the underlying stream
+ * through a <code>BlowfishCipher</code>.
+ * <p>
+ * Data is processed in fixed size chunks, so memory use does not depend on
+ * the size of the payload.
+ */
+public class BlowfishInputStream extends FilterInputStream {
+
+    private final BlowfishCipher cipher;
+    private final byte[] inputBuffer = new byte[BlowfishOutputStream.CHUNK_SIZE];
+    private final byte[] outputBuffer = new byte[BlowfishOutputStream.CHUNK_SIZE + 2 * BlowfishCipher.BLOCK_SIZE];
+    private final byte[] single = new byte[1];
+    private int outputStart;
+    private int outputEnd;
+    private boolean finished;
+
+
+    public BlowfishInputStream(InputStream in, BlowfishCipher cipher) {
+        super(in);
+        this.cipher = cipher;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        int count = read(single, 0, 1);
+        return (count == 1) ? (single[0] & 0xff) : -1;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (outputStart == outputEnd) {
+            if (finished) {
+                return -1;
+            }
+            fill();
+        }
+
+        int count = Math.min(len, outputEnd - outputStart);
+        System.arraycopy(outputBuffer, outputStart, b, off, count);
+        outputStart += count;
+        return count;
+    }
+
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        byte[] discard = new byte[(int) Math.min(n, 512)];
+
+        while (skipped < n) {
+            int count = read(discard, 0, (int) Math.min(n - skipped, discard.length));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+
+    @Override
+    public int available() {
+        return outputEnd - outputStart;
+    }
+
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+
+    /**
+     * Reads and processes the next chunk of input
+     */
+    private void fill() throws IOException {
+        outputStart = 0;
+        outputEnd = 0;
+
+        int count = in.read(inputBuffer, 0, inputBuffer.length);
+        if (count > 0) {
+            outputEnd = cipher.update(inputBuffer, 0, count, outputBuffer, 0);
+        } else if (count < 0) {
+            finished = true;
+            try {
+                outputEnd = cipher.doFinal(outputBuffer, 0);
+            } catch (BadPaddingException bpe) {
+                throw new IOException(bpe);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A bounded cache of initialized <code>Blowfish</code> instances.
+ * <p>
+ * Building a key schedule takes 521 block encryptions, which adds up when
+ * the same keys are used over and over.  Instances are cached under the
+ * SHA-256 digest of the key bytes, so the keys themselves are not retained,
+ * and the least recently used entry is evicted when the cache is full.
+ * <p>
+ * The returned instances are shared between callers.  An initialized
+ * Blowfish only reads its key schedule, so this is thread safe.  Instances
+ * from the cache cannot be re-keyed: <code>initialize</code> throws
+ * UnsupportedOperationException, so one caller cannot change the key under
+ * another.
+ */
+public class BlowfishKeyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    static private final BlowfishKeyCache shared = new BlowfishKeyCache();
+
+    static private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    });
+
+    private final int maxEntries;
+    private final LinkedHashMap<ByteBuffer, Blowfish> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * A Blowfish that refuses to be re-keyed once its schedule is built
+     */
+    static private final class SharedBlowfish extends Blowfish {
+        private boolean sealed;
+
+        SharedBlowfish(byte[] key, int length) {
+            super.initialize(key, length);
+            sealed = true;
+        }
+
+        @Override
+        public void initialize(byte[] key, int length) {
+            if (sealed) {
+                throw new UnsupportedOperationException("cached Blowfish instances cannot be re-keyed");
+            }
+            super.initialize(key, length);
+        }
+    }
+
+
+    /**
+     * Constructs a cache holding up to DEFAULT_MAX_ENTRIES key schedules
+     */
+    public BlowfishKeyCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+
+    /**
+     * Constructs a cache
+     *
+     * @param maxEntries The maximum number of key schedules to keep, or zero
+     *                   for no limit
+     */
+    public BlowfishKeyCache(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<ByteBuffer, Blowfish>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Blowfish> eldest) {
+                if ((BlowfishKeyCache.this.maxEntries > 0) && (size() > BlowfishKeyCache.this.maxEntries)) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cache shared by BasicProperties and other callers that
+     * have no reason to keep their own
+     */
+    public static BlowfishKeyCache getShared() {
+        return shared;
+    }
+
+
+    /**
+     * Returns an initialized Blowfish for the key, building the key schedule
+     * only if it is not already cached.  The instance may be shared and
+     * cannot be re-keyed.
+     *
+     * @param key    The key bytes
+     * @param length The number of key bytes to use
+     */
+    public Blowfish get(byte[] key, int length) {
+        MessageDigest digest = digests.get();
+        digest.update(key, 0, length);
+        ByteBuffer id = ByteBuffer.wrap(digest.digest());
+
+        Blowfish agent;
+        synchronized (cache) {
+            agent = cache.get(id);
+        }
+
+        if (agent != null) {
+            hits.incrementAndGet();
+            return agent;
+        }
+
+        misses.incrementAndGet();
+
+        // build the schedule outside the lock so other keys are not held up
+        agent = new SharedBlowfish(key, length);
+
+        synchronized (cache) {
+            Blowfish existing = cache.putIfAbsent(id, agent);
+            return (existing != null) ? existing : agent;
+        }
+    }
+
+
+    /**
+     * Returns an initialized Blowfish for the whole key
+     */
+    public Blowfish get(byte[] key) {
+        return get(key, key.length);
+    }
+
+
+    /**
+     * Returns a new cipher for the key, taking the key schedule from the
+     * cache
+     *
+     * @param key        The key bytes
+     * @param mode       The chaining mode
+     * @param iv         8 byte IV for CBC and CTR, ignored for ECB
+     * @param encrypting true to encrypt, false to decrypt
+     */
+    public BlowfishCipher newCipher(byte[] key, BlowfishCipher.Mode mode, byte[] iv, boolean encrypting) {
+        return new BlowfishCipher(get(key), mode, iv, encrypting);
+    }
+
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+
+    /**
+     * Removes all cached key schedules and resets the counters
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+}
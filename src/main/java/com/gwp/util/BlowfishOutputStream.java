@@ -0,0 +1,83 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import javax.crypto.BadPaddingException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * An output stream that passes everything written to it through a
+ * <code>BlowfishCipher</code> before writing it to the underlying stream.
+ * <p>
+ * Data is processed in fixed size chunks, so memory use does not depend on
+ * the amount of data written.  The final block is only written when the
+ * stream is closed.
+ */
+public class BlowfishOutputStream extends FilterOutputStream {
+
+    static final int CHUNK_SIZE = 8192;
+
+    private final BlowfishCipher cipher;
+    private final byte[] outputBuffer = new byte[CHUNK_SIZE + 2 * BlowfishCipher.BLOCK_SIZE];
+    private final byte[] single = new byte[1];
+    private boolean closed;
+
+
+    public BlowfishOutputStream(OutputStream out, BlowfishCipher cipher) {
+        super(out);
+        this.cipher = cipher;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (len > 0) {
+            int count = Math.min(len, CHUNK_SIZE);
+            int produced = cipher.update(b, off, count, outputBuffer, 0);
+            if (produced > 0) {
+                out.write(outputBuffer, 0, produced);
+            }
+            off += count;
+            len -= count;
+        }
+    }
+
+
+    /**
+     * Writes the final block and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            int produced = cipher.doFinal(outputBuffer, 0);
+            if (produced > 0) {
+                out.write(outputBuffer, 0, produced);
+            }
+        } catch (BadPaddingException bpe) {
+            throw new IOException(bpe);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import javax.crypto.BadPaddingException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A channel that passes everything written to it through a
+ * <code>BlowfishCipher</code> before writing it to the target channel.
+ * <p>
+ * Data is processed in fixed size chunks, so memory use does not depend on
+ * the amount of data written.  The final block is only written when the
+ * channel is closed.
+ */
+public class BlowfishWritableByteChannel implements WritableByteChannel {
+
+    private final WritableByteChannel target;
+    private final BlowfishCipher cipher;
+    private final byte[] inputBuffer = new byte[BlowfishOutputStream.CHUNK_SIZE];
+    private final byte[] outputBuffer = new byte[BlowfishOutputStream.CHUNK_SIZE + 2 * BlowfishCipher.BLOCK_SIZE];
+    private boolean open = true;
+
+
+    public BlowfishWritableByteChannel(WritableByteChannel target, BlowfishCipher cipher) {
+        this.target = target;
+        this.cipher = cipher;
+    }
+
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+
+    /**
+     * Processes all remaining bytes of the source buffer
+     *
+     * @return The number of bytes consumed from the source
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+
+        int total = src.remaining();
+
+        while (src.hasRemaining()) {
+            int count = Math.min(src.remaining(), inputBuffer.length);
+            src.get(inputBuffer, 0, count);
+            writeFully(cipher.update(inputBuffer, 0, count, outputBuffer, 0));
+        }
+
+        return total;
+    }
+
+
+    /**
+     * Writes the final block and closes the target channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        try {
+            writeFully(cipher.doFinal(outputBuffer, 0));
+        } catch (BadPaddingException bpe) {
+            throw new IOException(bpe);
+        } finally {
+            target.close();
+        }
+    }
+
+
+    private void writeFully(int length) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(outputBuffer, 0, length);
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+}
@@ -6,141 +6,189 @@ package com.gwp.util;
 import com.sun.security.auth.module.NTSystem;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * A class that generates a consistent GUID for the installation machine.
- * 
+ * <p>
+ * Finding the hardware ids forks an OS command, which can take hundreds of
+ * milliseconds.  The results are kept in memory and in a small properties
+ * file, so later runs skip the command until the cached value is older than
+ * the cache TTL.  The async methods let callers start the lookup early and
+ * collect the result later.
+ *
  * @author Greg
  *
  */
 public class GUIDGenerator {
   
-  private static String SERIAL_NUMBER = null;
-  
-  
-  public static final String getSerialNumber() {
-    if ( SERIAL_NUMBER != null ) return SERIAL_NUMBER;
-    
-    if ( OSChecker.isMac() ) {
-      OutputStream os = null;
-      InputStream is = null;
+  private static volatile String SERIAL_NUMBER = null;
+  private static volatile String MOTHERBOARD_SN = null;
 
-      Runtime runtime = Runtime.getRuntime();
-      Process process = null;
-      try {
-        process = runtime.exec(new String[] { "/usr/sbin/system_profiler", "SPHardwareDataType" });
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+  private static final String SERIAL_NUMBER_KEY = "serialNumber";
+  private static final String MOTHERBOARD_SN_KEY = "motherboardSN";
+  private static final String TIMESTAMP_SUFFIX = ".timestamp";
 
-      os = process.getOutputStream();
-      is = process.getInputStream();
+  private static volatile long commandTimeoutMillis = 10 * 1000L;
+  private static volatile long cacheTtlMillis = 7 * 24 * 60 * 60 * 1000L;
+  private static volatile File cacheFile = new File( System.getProperty( "user.home" ), ".gwputils-hardware.properties" );
 
-      try {
-        os.close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+  // One lock per id, so a slow lookup of one does not hold up the other
+  private static final Object serialNumberLock = new Object();
+  private static final Object motherboardSNLock = new Object();
 
-      BufferedReader br = new BufferedReader( new InputStreamReader( is ) );
-      String line = null;
-      String marker = "Serial Number:";
-      try {
-        while ((line = br.readLine()) != null) {
-          if (line.indexOf(marker) != -1) {
-            SERIAL_NUMBER = line.split(marker)[1].trim();
-            break;
-          }
+  private static final AtomicReference<CompletableFuture<String>> serialNumberFuture = new AtomicReference<>();
+  private static final AtomicReference<CompletableFuture<String>> motherboardSNFuture = new AtomicReference<>();
+
+  // Runs prefetches on their own daemon threads, as they mostly wait on a process
+  private static final Executor prefetchExecutor = task -> {
+    Thread thread = new Thread( task, "GUIDGenerator-prefetch" );
+    thread.setDaemon( true );
+    thread.start();
+  };
+
+
+  public static final String getSerialNumber() {
+    String serialNumber = SERIAL_NUMBER;
+    if ( serialNumber != null ) return serialNumber;
+
+    synchronized ( serialNumberLock ) {
+      if ( SERIAL_NUMBER != null ) return SERIAL_NUMBER;
+
+      serialNumber = readCache( SERIAL_NUMBER_KEY );
+      if ( serialNumber == null ) {
+        serialNumber = findSerialNumber();
+        if ( serialNumber != null ) {
+          writeCache( SERIAL_NUMBER_KEY, serialNumber );
         }
-        
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      } finally {
-        
-        try {
-          br.close();
-        } catch (IOException e) {}
-        
-        try {
-          is.close();
-        } catch (IOException e) {}
-        
       }
 
-      if ( SERIAL_NUMBER == null ) {
-        System.err.println( "Cannot find computer SN" );
-      }
+      SERIAL_NUMBER = serialNumber;
+      return serialNumber;
+    }
+  }
 
-      
-    } else if ( OSChecker.isSolaris() ) {
-      SERIAL_NUMBER = UUID.randomUUID().toString();
-      
-      
-    } else if ( OSChecker.isUnix() ) {
-      OutputStream os = null;
-      InputStream is = null;
 
-      Runtime runtime = Runtime.getRuntime();
-      Process process = null;
-      try {
-        process = runtime.exec( new String[] { "dmidecode", "-t", "system" } );
-      } catch ( IOException e ) {
-        throw new RuntimeException(e);
-      }
+  /**
+   * Starts looking up the serial number in the background.  Repeated calls
+   * return the same future, unless the lookup found nothing, in which case
+   * the next call starts a new one.
+   */
+  public static CompletableFuture<String> getSerialNumberAsync() {
+    return prefetch( serialNumberFuture, GUIDGenerator::getSerialNumber );
+  }
 
-      os = process.getOutputStream();
-      is = process.getInputStream();
 
-      try {
-        os.close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+  private static String findSerialNumber() {
+    String serialNumber = null;
 
-      BufferedReader br = new BufferedReader(new InputStreamReader( is ) );
-      String line = null;
-      String marker = "Serial Number:";
-      try {
-        while ((line = br.readLine()) != null) {
-          if (line.indexOf(marker) != -1) {
-            SERIAL_NUMBER = line.split(marker)[1].trim();
-            break;
-          }
-        }
-        
-      } catch ( IOException e ) {
-        throw new RuntimeException( e );
-        
-      } finally {
-        try {
-          br.close();
-        } catch ( IOException e ) {}
-        
-        try {
-          is.close();
-        } catch ( IOException e ) {}
+    if ( OSChecker.isMac() ) {
+      serialNumber = findValue( runCommand( "/usr/sbin/system_profiler", "SPHardwareDataType" ), "Serial Number:" );
+
+      if ( serialNumber == null ) {
+        System.err.println( "Cannot find computer SN" );
       }
 
-      if ( SERIAL_NUMBER == null ) {
+
+    } else if ( OSChecker.isSolaris() ) {
+      serialNumber = UUID.randomUUID().toString();
+
+
+    } else if ( OSChecker.isUnix() ) {
+      serialNumber = findValue( runCommand( "dmidecode", "-t", "system" ), "Serial Number:" );
+
+      if ( serialNumber == null ) {
         System.err.println( "Cannot find computer SN" );
       }
 
-      
+
     } else if ( OSChecker.isWindows() ) {
       NTSystem ntSystem = new NTSystem();
-      SERIAL_NUMBER = ntSystem.getDomainSID();
+      serialNumber = ntSystem.getDomainSID();
 
     } else {
       // Default just generate a UUID
-      SERIAL_NUMBER = UUID.randomUUID().toString();
-      
+      serialNumber = UUID.randomUUID().toString();
+
     }
-    
-    return SERIAL_NUMBER;
+
+    return serialNumber;
   }
 
   public static String getMotherboardSN() {
+    String result = MOTHERBOARD_SN;
+    if ( result != null ) return result;
+
+    synchronized ( motherboardSNLock ) {
+      if ( MOTHERBOARD_SN != null ) return MOTHERBOARD_SN;
+
+      result = readCache( MOTHERBOARD_SN_KEY );
+      if ( result == null ) {
+        result = findMotherboardSN();
+        if ( result.isEmpty() ) {
+          // not cached so that a later call can retry
+          return result;
+        }
+        writeCache( MOTHERBOARD_SN_KEY, result );
+      }
+
+      MOTHERBOARD_SN = result;
+      return result;
+    }
+  }
+
+
+  /**
+   * Starts looking up the motherboard serial number in the background.
+   * Repeated calls return the same future, unless the lookup found nothing,
+   * in which case the next call starts a new one.
+   */
+  public static CompletableFuture<String> getMotherboardSNAsync() {
+    return prefetch( motherboardSNFuture, GUIDGenerator::getMotherboardSN );
+  }
+
+
+  /**
+   * Returns the future held by the holder, starting the lookup if there is
+   * none.  A failed or empty result is dropped from the holder so that a
+   * later call can retry.
+   */
+  private static CompletableFuture<String> prefetch( AtomicReference<CompletableFuture<String>> holder,
+                                                     Supplier<String> lookup ) {
+    while ( true ) {
+      CompletableFuture<String> future = holder.get();
+      if ( future != null ) return future;
+
+      CompletableFuture<String> started = new CompletableFuture<>();
+      if ( holder.compareAndSet( null, started ) ) {
+        prefetchExecutor.execute( () -> {
+          try {
+            String value = lookup.get();
+            if ( ( value == null ) || value.isEmpty() ) {
+              holder.compareAndSet( started, null );
+            }
+            started.complete( value );
+
+          } catch ( Throwable t ) {
+            holder.compareAndSet( started, null );
+            started.completeExceptionally( t );
+          }
+        } );
+        return started;
+      }
+    }
+  }
+
+
+  private static String findMotherboardSN() {
     String result = "";
       try {
         File file = File.createTempFile("realhowto",".vbs");
@@ -158,19 +206,141 @@ public class GUIDGenerator {
 
         fw.write(vbs);
         fw.close();
-        Process p = Runtime.getRuntime().exec("cscript //NoLogo " + file.getPath());
-        BufferedReader input =
-          new BufferedReader
-            (new InputStreamReader(p.getInputStream()));
-        String line;
-        while ((line = input.readLine()) != null) {
-           result += line;
+        List<String> lines = runCommand( "cscript", "//NoLogo", file.getPath() );
+        if ( lines != null ) {
+          for ( String line : lines ) {
+            result += line;
+          }
         }
-        input.close();
+        file.delete();
       }
       catch(Exception e){
           e.printStackTrace();
       }
       return result.trim();
     }
+
+
+  /**
+   * Sets how long a hardware command may run before it is abandoned
+   */
+  public static void setCommandTimeout( long millis ) {
+    commandTimeoutMillis = millis;
+  }
+
+
+  /**
+   * Sets how long values in the cache file are trusted
+   */
+  public static void setCacheTtl( long millis ) {
+    cacheTtlMillis = millis;
+  }
+
+
+  /**
+   * Sets the cache file, or null to disable the disk cache
+   */
+  public static void setCacheFile( File file ) {
+    cacheFile = file;
+  }
+
+
+  /**
+   * Runs a command and returns its output lines.  The output goes to a
+   * temporary file so that a command that hangs cannot block the caller
+   * past the command timeout; such a command is killed and null returned.
+   */
+  private static List<String> runCommand( String... command ) {
+    File output = null;
+    try {
+      output = File.createTempFile( "guidgen", ".out" );
+
+      Process process = new ProcessBuilder( command )
+          .redirectInput( ProcessBuilder.Redirect.from( nullFile() ) )
+          .redirectOutput( output )
+          .redirectError( ProcessBuilder.Redirect.DISCARD )
+          .start();
+
+      if ( !process.waitFor( commandTimeoutMillis, TimeUnit.MILLISECONDS ) ) {
+        process.destroyForcibly();
+        System.err.println( "Timed out running " + command[0] );
+        return null;
+      }
+
+      // decoded leniently, as a reader on the process stream would be
+      return Arrays.asList( new String( Files.readAllBytes( output.toPath() ) ).split( "\\R" ) );
+
+    } catch ( IOException e ) {
+      throw new RuntimeException( e );
+
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      return null;
+
+    } finally {
+      if ( output != null ) {
+        output.delete();
+      }
+    }
+  }
+
+
+  private static File nullFile() {
+    return new File( OSChecker.isWindows() ? "NUL" : "/dev/null" );
+  }
+
+
+  /**
+   * Returns the trimmed text after the marker on the first line holding it
+   */
+  private static String findValue( List<String> lines, String marker ) {
+    if ( lines == null ) return null;
+
+    for ( String line : lines ) {
+      if ( line.indexOf( marker ) != -1 ) {
+        return line.split( marker )[1].trim();
+      }
+    }
+
+    return null;
+  }
+
+
+  private static String readCache( String key ) {
+    File file = cacheFile;
+    if ( ( file == null ) || !file.isFile() ) return null;
+
+    try {
+      BasicProperties cache = new BasicProperties( file );
+      long age = System.currentTimeMillis() - cache.getLong( key + TIMESTAMP_SUFFIX, 0 );
+      if ( ( age < 0 ) || ( age > cacheTtlMillis ) ) return null;
+
+      String value = cache.getString( key );
+      return ( ( value == null ) || value.isEmpty() ) ? null : value;
+
+    } catch ( IOException | IllegalArgumentException e ) {
+      // unreadable or damaged, so look the id up again
+      return null;
+    }
+  }
+
+
+  private static void writeCache( String key, String value ) {
+    File file = cacheFile;
+    if ( file == null ) return;
+
+    BasicProperties cache = new BasicProperties();
+    if ( file.isFile() ) {
+      try {
+        cache.load( file );
+      } catch ( IOException | IllegalArgumentException e ) {
+        // rewrite a damaged cache from scratch
+      }
+    }
+
+    cache.setString( key, value );
+    // setLong would parse the old timestamp, which may be damaged
+    cache.setString( key + TIMESTAMP_SUFFIX, String.valueOf( System.currentTimeMillis() ) );
+    cache.storeAtomic( file.getPath(), "Hardware identity cache", false );
+  }
 }
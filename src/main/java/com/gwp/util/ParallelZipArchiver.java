@@ -0,0 +1,563 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Archives directory trees, compressing files in parallel.
+ * <p>
+ * Files are deflated on a pool of worker threads, each into its own memory
+ * buffer, or into a temporary spill file for files larger than the spill
+ * threshold.  The calling thread writes the finished entries in traversal
+ * order, so the archive is the same whatever the thread timing.  Only a
+ * bounded number of entries is in flight at a time, which limits memory use
+ * to about twice the thread count times the spill threshold.  Each worker
+ * reuses one pair of buffers and one Deflater for all of its files.
+ * <p>
+ * ZipOutputStream cannot accept data that is already compressed, so the
+ * archive is written directly here: local headers, entry data, the central
+ * directory and ZIP64 records when the archive needs them.  Entry names are
+ * the same as Utilities.addZipEntries gives.
+ */
+public class ParallelZipArchiver {
+
+    static private final int LOCAL_HEADER_SIG = 0x04034b50;
+    static private final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static private final int END_SIG = 0x06054b50;
+    static private final int ZIP64_END_SIG = 0x06064b50;
+    static private final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    static private final int ZIP64_EXTRA_ID = 0x0001;
+    static private final int UTF8_FLAG = 0x0800;
+    static private final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    static private final int ENTRY_LIMIT = 0xFFFF;
+
+    static private final int BUFFER_SIZE = ZipArchiveBuilder.BUFFER_SIZE;
+
+    private final int threads;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private long spillThreshold = 4 * 1024 * 1024;
+
+
+    /**
+     * Creates an archiver using one thread per processor
+     */
+    public ParallelZipArchiver() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+
+    public ParallelZipArchiver(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+
+    /**
+     * Sets the compression level
+     *
+     * @param level Deflater.DEFAULT_COMPRESSION or 0 - 9
+     */
+    public ParallelZipArchiver setLevel(int level) {
+        this.level = level;
+        return this;
+    }
+
+
+    /**
+     * Sets the file size above which compressed data is spilled to a
+     * temporary file instead of being held in memory
+     */
+    public ParallelZipArchiver setSpillThreshold(long bytes) {
+        this.spillThreshold = bytes;
+        return this;
+    }
+
+
+    /**
+     * Archives a file or directory tree into a new zip file
+     */
+    public void archive(File source, File zip) throws IOException {
+        try (OutputStream output = new FileOutputStream(zip)) {
+            archive(source, "", "", null, output);
+        }
+    }
+
+
+    /**
+     * Archives a file or directory tree to a stream, which is left open
+     *
+     * @param source       The file or directory to add
+     * @param parentPath   Path to prefix to the zip entries
+     * @param parentSuffix Optional suffix to be added to the parent path
+     * @param filter       File selection filter instance or null
+     * @param output       Where to write the archive
+     */
+    public void archive(File source, String parentPath, String parentSuffix, FileFilter filter,
+                        OutputStream output) throws IOException {
+        List<Item> items = new ArrayList<>();
+        collect(source, parentPath, parentSuffix, filter, items);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "ParallelZipArchiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Per worker buffers and Deflater, ended once the pool has stopped
+        int level = this.level;
+        List<Workspace> workspaces = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(() -> {
+            Workspace created = new Workspace(level);
+            workspaces.add(created);
+            return created;
+        });
+        Set<File> spills = ConcurrentHashMap.newKeySet();
+
+        ArrayDeque<Future<Compressed>> pending = new ArrayDeque<>();
+        ArchiveWriter writer = new ArchiveWriter(new BufferedOutputStream(output, BUFFER_SIZE));
+
+        try {
+            for (Item item : items) {
+                if (item.file == null) {
+                    pending.add(CompletableFuture.completedFuture(Compressed.directory(item.name)));
+                } else {
+                    pending.add(pool.submit(() -> compress(item, workspace.get(), spills)));
+                }
+
+                while (pending.size() >= threads * 2) {
+                    writeNext(pending, writer);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeNext(pending, writer);
+            }
+
+            writer.finish();
+
+        } finally {
+            shutdown(pool);
+
+            // only left over if archiving failed
+            for (File spill : spills) {
+                spill.delete();
+            }
+            for (Workspace used : workspaces) {
+                used.end();
+            }
+        }
+    }
+
+
+    /**
+     * Archives a tree into a new zip file using all processors
+     */
+    public static void archiveDirectory(File source, File zip) throws IOException {
+        new ParallelZipArchiver().archive(source, zip);
+    }
+
+
+    private static void writeNext(ArrayDeque<Future<Compressed>> pending, ArchiveWriter writer) throws IOException {
+        Compressed entry;
+        try {
+            entry = pending.peek().get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while archiving", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+
+        pending.poll();
+        try {
+            writer.write(entry);
+        } finally {
+            entry.discard();
+        }
+    }
+
+
+    /**
+     * Stops the pool, dropping queued entries and waiting for entries that
+     * are already being compressed
+     */
+    private static void shutdown(ExecutorService pool) {
+        pool.shutdownNow();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Lists the entries in the same order and with the same names as
+     * Utilities.addZipEntries
+     */
+    private static void collect(File file, String parentPath, String parentSuffix, FileFilter filter,
+                                List<Item> items) throws IOException {
+        String entryPath = ZipArchiveBuilder.entryPath(file, parentPath, parentSuffix);
+
+        if (file.isDirectory()) {
+            if (!entryPath.endsWith("/")) {
+                entryPath += "/";
+            }
+
+            File[] listing = file.listFiles();
+            if (listing == null) {
+                throw new IOException("Unable to list " + file);
+            }
+
+            if (listing.length == 0) {
+                items.add(new Item(entryPath, null));
+            }
+
+            for (File child : listing) {
+                collect(child, entryPath, "", filter, items);
+            }
+        } else if ((filter == null) || filter.accept(new File(entryPath))) {
+            items.add(new Item(entryPath, file));
+        }
+    }
+
+
+    /**
+     * Deflates one file; runs on a worker thread
+     */
+    private Compressed compress(Item item, Workspace workspace, Set<File> spills) throws IOException {
+        Compressed result = new Compressed(item.name, item.file.lastModified());
+        boolean spill = item.file.length() > spillThreshold;
+        OutputStream target;
+
+        if (spill) {
+            result.spillFile = File.createTempFile("pzip", ".tmp");
+            result.spills = spills;
+            spills.add(result.spillFile);
+            target = new BufferedOutputStream(new FileOutputStream(result.spillFile), BUFFER_SIZE);
+        } else {
+            result.memory = new ExposedByteArrayOutputStream((int) Math.max(64, item.file.length() / 2));
+            target = result.memory;
+        }
+
+        Deflater deflater = workspace.deflater;
+        deflater.reset();
+        CRC32 crc = new CRC32();
+        byte[] input = workspace.input;
+        byte[] output = workspace.output;
+
+        try (InputStream in = new FileInputStream(item.file); OutputStream out = target) {
+            int readLength;
+            while ((readLength = in.read(input)) != -1) {
+                crc.update(input, 0, readLength);
+                result.size += readLength;
+                deflater.setInput(input, 0, readLength);
+                while (!deflater.needsInput()) {
+                    int count = deflater.deflate(output);
+                    out.write(output, 0, count);
+                }
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(output);
+                out.write(output, 0, count);
+            }
+
+            result.compressedSize = deflater.getBytesWritten();
+            result.crc = crc.getValue();
+
+        } catch (IOException | RuntimeException e) {
+            result.discard();
+            throw e;
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Buffers and Deflater owned by one worker thread
+     */
+    private static class Workspace {
+        final byte[] input = new byte[BUFFER_SIZE];
+        final byte[] output = new byte[BUFFER_SIZE];
+        final Deflater deflater;
+
+        Workspace(int level) {
+            deflater = new Deflater(level, true);
+        }
+
+        void end() {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * A file or empty directory to archive
+     */
+    private static class Item {
+        final String name;
+        final File file;    // null for a directory
+
+        Item(String name, File file) {
+            this.name = name;
+            this.file = file;
+        }
+    }
+
+
+    /**
+     * A compressed entry waiting to be written
+     */
+    private static class Compressed {
+        final String name;
+        final long time;
+        boolean directory;
+        long crc;
+        long size;
+        long compressedSize;
+        ExposedByteArrayOutputStream memory;
+        File spillFile;
+        Set<File> spills;
+
+        Compressed(String name, long time) {
+            this.name = name;
+            this.time = time;
+        }
+
+        static Compressed directory(String name) {
+            Compressed entry = new Compressed(name, System.currentTimeMillis());
+            entry.directory = true;
+            return entry;
+        }
+
+        void writeData(OutputStream out) throws IOException {
+            if (memory != null) {
+                out.write(memory.buffer(), 0, memory.size());
+            } else if (spillFile != null) {
+                Files.copy(spillFile.toPath(), out);
+            }
+        }
+
+        void discard() {
+            memory = null;
+            if (spillFile != null) {
+                spillFile.delete();
+                spills.remove(spillFile);
+                spillFile = null;
+            }
+        }
+    }
+
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+
+    /**
+     * Writes entries and the central directory in zip format
+     */
+    private static class ArchiveWriter {
+        private final OutputStream out;
+        private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+        private final ByteBuffer header = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        private long offset;
+        private long count;
+
+        ArchiveWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(Compressed entry) throws IOException {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            int method = entry.directory ? 0 : 8;
+            int dosTime = dosTime(entry.time);
+            boolean zip64Sizes = (entry.size >= ZIP32_LIMIT) || (entry.compressedSize >= ZIP32_LIMIT);
+            boolean zip64Offset = offset >= ZIP32_LIMIT;
+            int version = (zip64Sizes || zip64Offset) ? 45 : 20;
+
+            // local header
+            header.clear();
+            header.putInt(LOCAL_HEADER_SIG);
+            header.putShort((short) version);
+            header.putShort((short) UTF8_FLAG);
+            header.putShort((short) method);
+            header.putInt(dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt(zip64Sizes ? -1 : (int) entry.compressedSize);
+            header.putInt(zip64Sizes ? -1 : (int) entry.size);
+            header.putShort((short) name.length);
+            header.putShort((short) (zip64Sizes ? 20 : 0));
+            writeHeader(out, name);
+            if (zip64Sizes) {
+                header.clear();
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) 16);
+                header.putLong(entry.size);
+                header.putLong(entry.compressedSize);
+                writeHeader(out, null);
+            }
+
+            entry.writeData(out);
+
+            // central directory record
+            int extraLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+            header.clear();
+            header.putInt(CENTRAL_HEADER_SIG);
+            header.putShort((short) version);
+            header.putShort((short) version);
+            header.putShort((short) UTF8_FLAG);
+            header.putShort((short) method);
+            header.putInt(dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt(zip64Sizes ? -1 : (int) entry.compressedSize);
+            header.putInt(zip64Sizes ? -1 : (int) entry.size);
+            header.putShort((short) name.length);
+            header.putShort((short) ((extraLength > 0) ? extraLength + 4 : 0));
+            header.putShort((short) 0);     // comment length
+            header.putShort((short) 0);     // disk number
+            header.putShort((short) 0);     // internal attributes
+            header.putInt(entry.directory ? 0x10 : 0);
+            header.putInt(zip64Offset ? -1 : (int) offset);
+            writeHeader(central, name);
+            if (extraLength > 0) {
+                header.clear();
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) extraLength);
+                if (zip64Sizes) {
+                    header.putLong(entry.size);
+                    header.putLong(entry.compressedSize);
+                }
+                if (zip64Offset) {
+                    header.putLong(offset);
+                }
+                writeHeader(central, null);
+            }
+
+            offset += 30 + name.length + (zip64Sizes ? 20 : 0) + entry.compressedSize;
+            count++;
+        }
+
+        void finish() throws IOException {
+            long centralOffset = offset;
+            long centralSize = central.size();
+            central.writeTo(out);
+
+            boolean zip64 = (count > ENTRY_LIMIT) || (centralOffset >= ZIP32_LIMIT) || (centralSize >= ZIP32_LIMIT);
+            if (zip64) {
+                long zip64EndOffset = centralOffset + centralSize;
+
+                header.clear();
+                header.putInt(ZIP64_END_SIG);
+                header.putLong(44);
+                header.putShort((short) 45);
+                header.putShort((short) 45);
+                header.putInt(0);
+                header.putInt(0);
+                header.putLong(count);
+                header.putLong(count);
+                header.putLong(centralSize);
+                header.putLong(centralOffset);
+                header.putInt(ZIP64_LOCATOR_SIG);
+                header.putInt(0);
+                header.putLong(zip64EndOffset);
+                header.putInt(1);
+                writeHeader(out, null);
+            }
+
+            header.clear();
+            header.putInt(END_SIG);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) (zip64 ? ENTRY_LIMIT : count));
+            header.putShort((short) (zip64 ? ENTRY_LIMIT : count));
+            header.putInt(zip64 ? -1 : (int) centralSize);
+            header.putInt(zip64 ? -1 : (int) centralOffset);
+            header.putShort((short) 0);
+            writeHeader(out, null);
+
+            out.flush();
+        }
+
+        private void writeHeader(OutputStream target, byte[] name) throws IOException {
+            target.write(header.array(), 0, header.position());
+            if (name != null) {
+                target.write(name);
+            }
+        }
+
+        /**
+         * Converts a Java time to the MS-DOS format used in zip headers
+         */
+        private static int dosTime(long time) {
+            LocalDateTime date = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(time), ZoneId.systemDefault());
+            if (date.getYear() < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+
+            return ((date.getYear() - 1980) << 25)
+                    | (date.getMonthValue() << 21)
+                    | (date.getDayOfMonth() << 16)
+                    | (date.getHour() << 11)
+                    | (date.getMinute() << 5)
+                    | (date.getSecond() >> 1);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+
+/**
+ * Extracts zip archives using a pool of threads.
+ * <p>
+ * The central directory is read once and the entries are shared out to a
+ * fixed number of workers.  All workers read the archive through a single
+ * FileChannel with positional reads.  STORED entries are copied with
+ * transferTo, so the data goes from the archive to the target file without
+ * passing through the Java heap.  DEFLATED entries are inflated through
+ * reused buffers and their CRC is checked.  Output is written through
+ * FileChannels, which truncate existing files.
+ * <p>
+ * Entry paths are handled like Utilities.extractZipFile, except that
+ * entries that would land outside the destination directory are refused.
+ */
+public class ParallelZipExtractor {
+
+    static private final int BUFFER_SIZE = 64 * 1024;
+
+    // Worker buffers: compressed input and inflated output
+    static private final ThreadLocal<byte[][]> buffers =
+            ThreadLocal.withInitial(() -> new byte[][]{new byte[BUFFER_SIZE], new byte[BUFFER_SIZE]});
+
+    private final int threads;
+
+
+    /**
+     * Creates an extractor using one thread per processor
+     */
+    public ParallelZipExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+
+    public ParallelZipExtractor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+
+    /**
+     * Extracts the files in a zip file into the specified directory
+     *
+     * @param zip            The zip file path
+     * @param destinationDir The directory into which to extract the files
+     * @param stripPrefix    Prefix to strip from the zip entry file path. null if not used
+     * @param filter         Filter callback or null
+     * @return false if the archive could not be read or any entry failed
+     */
+    public boolean extract(File zip, File destinationDir, String stripPrefix, FileFilter filter) {
+        Path destination = destinationDir.getAbsoluteFile().toPath().normalize();
+
+        try (FileChannel archive = FileChannel.open(zip.toPath(), StandardOpenOption.READ)) {
+            ZipCentralDirectory directory = ZipCentralDirectory.read(archive);
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "ParallelZipExtractor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            List<Future<Boolean>> results = new ArrayList<>(directory.size());
+            try {
+                for (ZipCentralDirectory.Entry entry : directory.getEntries()) {
+                    results.add(pool.submit(() -> extractEntry(archive, entry, destination, stripPrefix, filter)));
+                }
+
+                boolean success = true;
+                for (Future<Boolean> result : results) {
+                    try {
+                        success &= result.get();
+                    } catch (ExecutionException ee) {
+                        success = false;
+                    }
+                }
+                return success;
+
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+
+            } finally {
+                pool.shutdownNow();
+            }
+
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Extracts one entry; runs on a worker thread
+     *
+     * @return false if the entry could not be extracted
+     */
+    private static boolean extractEntry(FileChannel archive, ZipCentralDirectory.Entry entry, Path destination,
+                                        String stripPrefix, FileFilter filter) {
+        String itemPath = entry.getName();
+        if ((stripPrefix != null) && itemPath.startsWith(stripPrefix)) {
+            itemPath = itemPath.substring(stripPrefix.length());
+        }
+
+        Path entryPath = destination.resolve(itemPath).normalize();
+        if (!entryPath.startsWith(destination)) {
+            return false;
+        }
+
+        try {
+            if (entry.isDirectory()) {
+                Files.createDirectories(entryPath);
+                return true;
+            }
+
+            Files.createDirectories(entryPath.getParent());
+            if ((filter != null) && !filter.accept(entryPath.toFile())) {
+                return true;
+            }
+
+            if (entry.isEncrypted()) {
+                return false;
+            }
+
+            long dataOffset = ZipCentralDirectory.getDataOffset(archive, entry);
+
+            try (FileChannel output = FileChannel.open(entryPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    copyStored(archive, dataOffset, entry.getSize(), output);
+                } else if (entry.getMethod() == ZipEntry.DEFLATED) {
+                    inflate(archive, dataOffset, entry, output);
+                } else {
+                    return false;
+                }
+            }
+
+            if (entry.getTime() != -1) {
+                entryPath.toFile().setLastModified(entry.getTime());
+            }
+            return true;
+
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Copies stored data directly from the archive to the output
+     */
+    private static void copyStored(FileChannel archive, long position, long length, FileChannel output)
+            throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            long count = archive.transferTo(position + copied, length - copied, output);
+            if (count <= 0) {
+                throw new ZipException("Unexpected end of zip file");
+            }
+            copied += count;
+        }
+    }
+
+
+    /**
+     * Inflates deflated data from the archive into the output, checking the
+     * size and CRC
+     */
+    private static void inflate(FileChannel archive, long position, ZipCentralDirectory.Entry entry,
+                                FileChannel output) throws IOException {
+        byte[][] work = buffers.get();
+        byte[] input = work[0];
+        byte[] inflated = work[1];
+        ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        long remaining = entry.getCompressedSize();
+        long written = 0;
+        boolean padded = false;
+
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid deflated data in " + entry.getName());
+                }
+
+                if (inflater.needsInput()) {
+                    if (remaining > 0) {
+                        inputBuffer.clear().limit((int) Math.min(input.length, remaining));
+                        int count = archive.read(inputBuffer, position);
+                        if (count <= 0) {
+                            throw new ZipException("Unexpected end of zip file");
+                        }
+                        position += count;
+                        remaining -= count;
+                        inflater.setInput(input, 0, count);
+                    } else if (!padded) {
+                        // raw inflate may need one byte past the data to finish
+                        input[0] = 0;
+                        inflater.setInput(input, 0, 1);
+                        padded = true;
+                    } else {
+                        throw new ZipException("Truncated deflated data in " + entry.getName());
+                    }
+                }
+
+                int count = inflater.inflate(inflated);
+                if (count > 0) {
+                    crc.update(inflated, 0, count);
+                    ByteBuffer data = ByteBuffer.wrap(inflated, 0, count);
+                    while (data.hasRemaining()) {
+                        output.write(data);
+                    }
+                    written += count;
+                }
+            }
+        } catch (DataFormatException dfe) {
+            throw new ZipException("Invalid deflated data in " + entry.getName());
+        } finally {
+            inflater.end();
+        }
+
+        if ((written != entry.getSize()) || (crc.getValue() != entry.getCrc())) {
+            throw new ZipException("Size or CRC mismatch in " + entry.getName());
+        }
+    }
+
+
+    /**
+     * Extracts an archive using all processors
+     */
+    public static boolean extractZipFile(File zip, File destinationDir) {
+        return new ParallelZipExtractor().extract(zip, destinationDir, null, null);
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+
+/**
+ * The raw bytes of a properties file, indexed by key without creating the
+ * key and value strings.
+ * <p>
+ * The constructor scans the file once, following the same rules as
+ * <code>Properties.load(InputStream)</code>: ISO 8859-1 text, comment and
+ * blank lines, continuation lines, the key separators and escapes.  For
+ * each line it keeps only the offset of the logical line and the hash of
+ * its key.  Looking a key up re-reads the candidate lines and decodes the
+ * key into a shared buffer; the value string is only created for keys that
+ * are found, and is kept so later lookups return the same instance.
+ * <p>
+ * Instances are not thread safe.  BasicProperties uses them under its
+ * monitor until the entries are copied into the table.
+ */
+class PropertiesFileIndex {
+
+    private final byte[] data;
+
+    // Start offset and key hash of each line, in file order
+    private int[] lineStarts = new int[64];
+    private int[] hashes = new int[64];
+    private int count;
+
+    /**
+     * Open addressing table of entry + 1, holding the last line for each key
+     */
+    private int[] table = new int[128];
+    private int keys;
+
+    // Values created by get(), by key
+    private final Map<String, String> resolved = new HashMap<String, String>();
+
+    // The logical line most recently read, and where the key and value lie in it
+    private char[] lineBuf = new char[256];
+    private int lineStart;
+    private int lineLength;
+    private int keyLength;
+    private int valueStart;
+
+    private final StringBuilder outBuffer = new StringBuilder();
+
+
+    /**
+     * Indexes the file contents
+     *
+     * @param data The file contents; the array is kept, not copied
+     * @throws IllegalArgumentException if a value or key holds a malformed
+     *         unicode escape
+     */
+    PropertiesFileIndex(byte[] data) {
+        this.data = data;
+
+        int off = 0;
+        while ((off = readLine(off)) >= 0) {
+            split();
+            // only to reject malformed escapes up front, as load does
+            convert(valueStart, lineLength - valueStart);
+            add(lineStart, convert(0, keyLength));
+        }
+    }
+
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+
+    /**
+     * Returns the value the file gives the key, or null
+     */
+    String get(String key) {
+        String value = resolved.get(key);
+        if (value == null) {
+            if (find(key) < 0) {
+                return null;
+            }
+
+            // find() left the matching line in lineBuf
+            convert(valueStart, lineLength - valueStart);
+            value = outBuffer.toString();
+            resolved.put(key, value);
+        }
+        return value;
+    }
+
+
+    /**
+     * Passes every key and value to the action in file order, as load would
+     * put them.  Keys read through get() are passed again at the end with the
+     * value instances get() returned.
+     */
+    void forEach(BiConsumer<String, String> action) {
+        for (int entry = 0; entry < count; entry++) {
+            readLine(lineStarts[entry]);
+            split();
+            convert(0, keyLength);
+            String key = outBuffer.toString();
+            convert(valueStart, lineLength - valueStart);
+            action.accept(key, outBuffer.toString());
+        }
+
+        for (Map.Entry<String, String> entry : resolved.entrySet()) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    /**
+     * Returns the last line whose key is the given one, or -1
+     */
+    private int find(String key) {
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+
+        for (int i = spread(hash) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int entry = table[i] - 1;
+            if ((hashes[entry] == hash) && keyEquals(entry, key)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+
+    private boolean keyEquals(int entry, String key) {
+        readLine(lineStarts[entry]);
+        split();
+        convert(0, keyLength);
+        return key.contentEquals(outBuffer);
+    }
+
+
+    /**
+     * Records a line whose key was just decoded into outBuffer.  A later line
+     * with the same key replaces the earlier one in the table.
+     */
+    private void add(int start, int hash) {
+        if (count == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int entry = count++;
+        lineStarts[entry] = start;
+        hashes[entry] = hash;
+
+        String key = null;
+        int mask = table.length - 1;
+        int i = spread(hash) & mask;
+        for (; table[i] != 0; i = (i + 1) & mask) {
+            int other = table[i] - 1;
+            if (hashes[other] == hash) {
+                if (key == null) {
+                    key = outBuffer.toString();
+                }
+                if (keyEquals(other, key)) {
+                    table[i] = entry + 1;
+                    return;
+                }
+            }
+        }
+
+        table[i] = entry + 1;
+        if (++keys * 2 > table.length) {
+            rehash();
+        }
+    }
+
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+
+        for (int slot : table) {
+            if (slot != 0) {
+                int i = spread(hashes[slot - 1]) & mask;
+                while (newTable[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newTable[i] = slot;
+            }
+        }
+        table = newTable;
+    }
+
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+
+    /**
+     * Reads the logical line starting at or after off into lineBuf, skipping
+     * comment and blank lines and joining continuation lines, exactly as
+     * Properties.LineReader does.  Sets lineStart to the offset of the line's
+     * first character and lineLength to its length.
+     *
+     * @return The offset after the line, or -1 at the end of the file
+     */
+    private int readLine(int off) {
+        byte[] data = this.data;
+        int limit = data.length;
+        char[] lineBuf = this.lineBuf;
+        int len = 0;
+        boolean skipWhiteSpace = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        char c;
+
+        while (true) {
+            if (off >= limit) {
+                if (len == 0) {
+                    return -1;
+                }
+                lineLength = precedingBackslash ? len - 1 : len;
+                return off;
+            }
+
+            c = (char) (data[off++] & 0xff);
+
+            if (skipWhiteSpace) {
+                if (c == ' ' || c == '\t' || c == '\f') {
+                    continue;
+                }
+                if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                    continue;
+                }
+                skipWhiteSpace = false;
+                appendedLineBegin = false;
+            }
+
+            if ((len == 0) && (c == '#' || c == '!')) {
+                // a comment runs to the end of the line
+                while (true) {
+                    if (off >= limit) {
+                        return -1;
+                    }
+                    byte b = data[off++];
+                    if (b == '\r' || b == '\n') {
+                        break;
+                    }
+                }
+                skipWhiteSpace = true;
+                continue;
+            }
+
+            if (c != '\n' && c != '\r') {
+                if (len == 0) {
+                    lineStart = off - 1;
+                }
+                lineBuf[len++] = c;
+                if (len == lineBuf.length) {
+                    lineBuf = Arrays.copyOf(lineBuf, len * 2);
+                    this.lineBuf = lineBuf;
+                }
+                precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+            } else {
+                // end of a natural line
+                if (len == 0) {
+                    skipWhiteSpace = true;
+                    continue;
+                }
+                if (off >= limit) {
+                    lineLength = precedingBackslash ? len - 1 : len;
+                    return off;
+                }
+                if (precedingBackslash) {
+                    // the line continues; the backslash is not part of it
+                    len -= 1;
+                    skipWhiteSpace = true;
+                    appendedLineBegin = true;
+                    precedingBackslash = false;
+                    if ((c == '\r') && (data[off] == '\n')) {
+                        off++;
+                    }
+                } else {
+                    lineLength = len;
+                    return off;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Finds the end of the key and the start of the value in lineBuf, as
+     * Properties.load does
+     */
+    private void split() {
+        char[] lineBuf = this.lineBuf;
+        int limit = lineLength;
+        int keyLen = 0;
+        int start = limit;
+        boolean hasSep = false;
+        boolean precedingBackslash = false;
+
+        while (keyLen < limit) {
+            char c = lineBuf[keyLen];
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                start = keyLen + 1;
+                hasSep = true;
+                break;
+            } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                start = keyLen + 1;
+                break;
+            }
+            precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+            keyLen++;
+        }
+
+        while (start < limit) {
+            char c = lineBuf[start];
+            if (c != ' ' && c != '\t' && c != '\f') {
+                if (!hasSep && (c == '=' || c == ':')) {
+                    hasSep = true;
+                } else {
+                    break;
+                }
+            }
+            start++;
+        }
+
+        keyLength = keyLen;
+        valueStart = start;
+    }
+
+
+    /**
+     * Decodes the escapes in part of lineBuf into outBuffer
+     *
+     * @return The hash code of the decoded string
+     */
+    private int convert(int off, int len) {
+        char[] in = lineBuf;
+        StringBuilder out = outBuffer;
+        int end = off + len;
+        int hash = 0;
+
+        out.setLength(0);
+        while (off < end) {
+            char c = in[off++];
+            if (c == '\\') {
+                // readLine never leaves an unescaped backslash at the end of a line
+                c = in[off++];
+                if (c == 'u') {
+                    if (off > end - 4) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        value = (value << 4) + hexDigit(in[off++]);
+                    }
+                    c = (char) value;
+                } else if (c == 't') {
+                    c = '\t';
+                } else if (c == 'r') {
+                    c = '\r';
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'f') {
+                    c = '\f';
+                }
+            }
+            out.append(c);
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+    }
+}
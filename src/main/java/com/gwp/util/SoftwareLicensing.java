@@ -2,6 +2,18 @@ package com.gwp.util;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
 
 /**
  * 
@@ -10,19 +22,115 @@ import org.apache.commons.codec.digest.DigestUtils;
  */
 public class SoftwareLicensing {
   
+  // Number of input lines processed in parallel per chunk
+  static private final int CHUNK_SIZE = 4096;
+
+  static private final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial( DigestUtils::getMd5Digest );
+  static private final ThreadLocal<char[]> hexBuffer = ThreadLocal.withInitial( () -> new char[32] );
+
+
   public static String getLicenseKey( String uuid ) {
-    return DigestUtils.md5Hex( uuid );
+    MessageDigest digest = md5.get();
+    byte[] hash = digest.digest( uuid.getBytes( StandardCharsets.UTF_8 ) );
+    char[] hex = hexBuffer.get();
+
+    Utilities.encodeHex( hash, 0, hash.length, hex, 0 );
+    return new String( hex );
   }
   
 
   /**
+   * Generates the license keys for a batch of ids in parallel
+   *
+   * @return The keys, in the same order as the ids
+   */
+  public static String[] getLicenseKeys( String[] uuids ) {
+    String[] keys = new String[uuids.length];
+    IntStream.range( 0, uuids.length ).parallel().forEach( i -> keys[i] = getLicenseKey( uuids[i] ) );
+    return keys;
+  }
+
+
+  /**
+   * Generates license keys for a file of ids, one per line.  The input is
+   * read in chunks that are processed in parallel, and each output line is
+   * the id, a comma and its key, in input order.  Blank lines are skipped.
+   *
+   * @return The number of keys written
+   */
+  public static long generateLicenseKeys( Path input, Path output ) throws IOException {
+    long count = 0;
+
+    try ( BufferedReader reader = Files.newBufferedReader( input, StandardCharsets.UTF_8 );
+          BufferedWriter writer = Files.newBufferedWriter( output, StandardCharsets.UTF_8 ) ) {
+      List<String> chunk = new ArrayList<>( CHUNK_SIZE );
+      String line;
+
+      while ( ( line = reader.readLine() ) != null ) {
+        line = line.trim();
+        if ( !line.isEmpty() ) {
+          chunk.add( line );
+          if ( chunk.size() == CHUNK_SIZE ) {
+            count += writeChunk( chunk, writer );
+          }
+        }
+      }
+      count += writeChunk( chunk, writer );
+    }
+
+    return count;
+  }
+
+
+  private static int writeChunk( List<String> chunk, BufferedWriter writer ) throws IOException {
+    String[] uuids = chunk.toArray( new String[0] );
+    String[] keys = getLicenseKeys( uuids );
+
+    for ( int i = 0; i < uuids.length; i++ ) {
+      writer.write( uuids[i] );
+      writer.write( ',' );
+      writer.write( keys[i] );
+      writer.newLine();
+    }
+
+    chunk.clear();
+    return uuids.length;
+  }
+
+
+  /**
+   * Usage: SoftwareLicensing uuid
+   *    or: SoftwareLicensing -i inputFile -o outputFile
+   *
    * @param args
    */
   public static void main( String[] args ) {
-    if ( ( args == null ) || ( args.length == 0 ) || ( args[0] == null ) || args[0].isEmpty() ) {
+    CmdLineParser parser = new CmdLineParser();
+    CmdLineParser.Option inputOption = parser.addStringOption( 'i', "input" );
+    CmdLineParser.Option outputOption = parser.addStringOption( 'o', "output" );
+
+    try {
+      parser.parse( args );
+    } catch ( CmdLineParser.OptionException e ) {
+      System.out.println( "Invalid arguments!" );
+      return;
+    }
+
+    String input = (String) parser.getOptionValue( inputOption );
+    String output = (String) parser.getOptionValue( outputOption );
+    String[] remaining = parser.getRemainingArgs();
+
+    if ( ( input != null ) && ( output != null ) ) {
+      try {
+        long count = generateLicenseKeys( Paths.get( input ), Paths.get( output ) );
+        System.out.println( "Generated " + count + " license keys" );
+      } catch ( IOException e ) {
+        System.out.println( "Unable to generate license keys: " + e.getMessage() );
+      }
+    } else if ( ( input != null ) || ( output != null ) || ( remaining.length == 0 ) || remaining[0].isEmpty() ) {
       System.out.println( "Invalid arguments!" );
     } else {
-      System.out.println( SoftwareLicensing.getLicenseKey( args[0] ) );
+      System.out.println( SoftwareLicensing.getLicenseKey( remaining[0] ) );
     }
   }
 
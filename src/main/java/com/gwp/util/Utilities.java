@@ -12,6 +12,7 @@ import java.beans.PropertyChangeListener;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -24,7 +25,27 @@ import java.util.zip.*;
 public class Utilities {
 
     // Note: Map to lower-case a...f to provide consistent result strings
-    private static final String HEXCHARS[] = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    // Both digits of every byte value, so encoding needs one lookup per byte
+    private static final char[] HEX_PAIRS = new char[512];
+
+    // Digit values indexed by ASCII code, -1 for anything that is not hex
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX_PAIRS[i + i] = HEX_LOWER[i >>> 4];
+            HEX_PAIRS[i + i + 1] = HEX_LOWER[i & 0x0f];
+        }
+
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_LOWER[i]] = (byte) i;
+            HEX_VALUES[HEX_UPPER[i]] = (byte) i;
+        }
+    }
 
     /**
      * Converts a hex value to a byte
@@ -37,21 +58,23 @@ public class Utilities {
      * Converts a byte value to a hex value
      */
     public static String byteToHex(byte value) {
-        int iTemp = (int) value;
-        if (iTemp < 0) {
-            iTemp += 256;
-        }
-        return intToHex(iTemp);
+        return new String(new char[]{HEX_UPPER[(value >>> 4) & 0x0f], HEX_UPPER[value & 0x0f]});
     }
 
     /**
      * Converts a int value to a hex value
      */
     public static String intToHex(int value) {
-        String result = Integer.toHexString(value).toUpperCase();
-        if (result.length() == 1)
-            result = "0" + result;
-        return result;
+        // at least two digits, no other leading zeros
+        int digits = Math.max(2, (35 - Integer.numberOfLeadingZeros(value)) >>> 2);
+        char[] result = new char[digits];
+
+        for (int i = digits - 1; i >= 0; i--) {
+            result[i] = HEX_UPPER[value & 0x0f];
+            value >>>= 4;
+        }
+
+        return new String(result);
     }
 
     /**
@@ -96,6 +119,11 @@ public class Utilities {
      * <p>
      * Will need to rewrite this function if this flaw becomes a
      * problem.
+     * <p>
+     * Files are added with the stream's default method.  On a STORED
+     * stream each file is read once for its size and CRC before its data is
+     * written; a DEFLATED stream reads each file once.  Files that cannot be
+     * read are skipped.
      *
      * @param out          the ZipOutputStream to write the entries to.
      * @param file         the file to write
@@ -112,64 +140,10 @@ public class Utilities {
                                            boolean recurse,
                                            String parentSuffix,
                                            java.io.FileFilter filter) {
-        ZipEntry entry = null;
-        StringBuffer entryPath = new StringBuffer(parentPath.replace('\\', '/'));
-
-        if ((entryPath.length() > 0) && !entryPath.toString().endsWith("/")) {
-            entryPath.append("/");
-        }
-        entryPath.append(file.getName());
-        entryPath.append(parentSuffix);
-
-        if (file.isDirectory() && recurse) {
-            if (!entryPath.toString().endsWith("/")) {
-                entryPath.append("/");
-            }
-
-            File[] listing = file.listFiles();
-
-            if (listing.length == 0) {
-                // Add directory entry if it is a leaf with
-                // no further files or dirs
-                entry = new ZipEntry(entryPath.toString());
-                // Have to set all this stuff to mimick winzip
-                entry.setMethod(ZipEntry.STORED);
-                entry.setSize(0);
-                entry.setCompressedSize(0);
-                entry.setCrc(0);
-                try {
-                    out.putNextEntry(entry);
-                } catch (IOException ioe) {
-                    System.out.println("addZipEntries ioe " + ioe);
-                }
-            }
-
-            for (int j = 0; j < listing.length; j++) {
-                addZipEntries(out,
-                        listing[j],
-                        entryPath.toString(),
-                        recurse, "",
-                        filter);
-            }
-        } else {
-            if ((filter == null) ||
-                    filter.accept(new File(entryPath.toString()))) {
-                entry = new ZipEntry(entryPath.toString());
-                entry.setSize(file.length());
-                entry.setTime(file.lastModified());
-                entry.setCrc(getCRC32(file));
-
-                try {
-                    out.putNextEntry(entry);
-                    addZipFileData(out, file);
-                } catch (IOException ioe) {
-                } finally {
-                    try {
-                        out.closeEntry();
-                    } catch (IOException ioe2) {
-                    }
-                }
-            }
+        // one builder, and so one buffer, for the whole tree
+        try {
+            new ZipArchiveBuilder(out).addTree(file, parentPath, recurse, parentSuffix, filter, true);
+        } catch (IOException ioe) {
         }
     }
 
@@ -186,12 +160,12 @@ public class Utilities {
      * Adds the file data to a zip stream.
      */
     public static final void addZipFileData(ZipOutputStream out, File file) {
-        BufferedInputStream input = null;
-        byte[] data = new byte[1024];
+        InputStream input = null;
+        byte[] data = new byte[8 * 1024];
         int readLength = 0;
 
         try {
-            input = new BufferedInputStream(new FileInputStream(file));
+            input = new FileInputStream(file);
 
             readLength = input.read(data);
             while (readLength > -1) {
@@ -404,26 +378,18 @@ public class Utilities {
 
         output.reset();
 
-        // open the zip file
-        ZipFile zipFile = null;
-        try {
-            zipFile = new ZipFile(zip);
-        } catch (ZipException ze1) {
-            return false;
-        } catch (IOException ioe1) {
-            return false;
-        }
+        // open the zip file, or reuse it from the cache
+        try (ZipArchiveCache.Archive archive = ZipArchiveCache.getShared().open(zip)) {
 
-        // Find the entry
-        ZipEntry entry = findZipEntry(zipFile, entryName);
-        if (entry == null) {
-            return false;
-        }
+            // Find the entry
+            ZipEntry entry = archive.findEntry(entryName);
+            if (entry == null) {
+                return false;
+            }
 
 
-        // Copy the data into the provided array
-        try {
-            InputStream zipInput = zipFile.getInputStream(entry);
+            // Copy the data into the provided array
+            InputStream zipInput = archive.getZipFile().getInputStream(entry);
             byte[] fileData = new byte[4096];
 
             int readSize = 0;
@@ -439,6 +405,31 @@ public class Utilities {
     }
 
 
+    /**
+     * Returns the contents of the named file in a zip file as a read only
+     * buffer.  STORED entries are mapped directly from the archive file, so
+     * nothing is copied; other entries are inflated into a buffer of the
+     * entry's size.  A mapped buffer keeps the archive file mapped until the
+     * buffer is garbage collected.
+     *
+     * @param zip       The zip file to extract from
+     * @param entryName The file name
+     * @return null if the zip file cannot be read or the entry is not found
+     */
+    public static final ByteBuffer mapEntryFromZip(File zip, String entryName) {
+        try (ZipArchiveCache.Archive archive = ZipArchiveCache.getShared().open(zip)) {
+            ZipEntry entry = archive.findEntry(entryName);
+            if (entry == null) {
+                return null;
+            }
+
+            return archive.map(entry);
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+
     /**
      * Extracts the named file from a zip file to the specified directory
      */
@@ -453,22 +444,18 @@ public class Utilities {
      * Extracts the named file from a zip file to the specified directory
      */
     public static final boolean extractEntryFromZip(File zip, String entryName, File destination, String stripPath) {
-        // open the zip file
-        ZipFile zipFile = null;
-        try {
-            zipFile = new ZipFile(zip);
-        } catch (ZipException ze1) {
-            return false;
+        // open the zip file, or reuse it from the cache
+        try (ZipArchiveCache.Archive archive = ZipArchiveCache.getShared().open(zip)) {
+
+            // Find the entry
+            ZipEntry entry = archive.findEntry(entryName);
+            if (entry != null) {
+                return extractZipEntry(archive.getZipFile(), entry, destination, stripPath, null);
+            }
         } catch (IOException ioe1) {
             return false;
         }
 
-        // Find the entry
-        ZipEntry entry = findZipEntry(zipFile, entryName);
-        if (entry != null) {
-            return extractZipEntry(zipFile, entry, destination, stripPath, null);
-        }
-
         return false;
 
     }
@@ -636,35 +623,19 @@ public class Utilities {
         return extractZipFile(zip, destinationDir, null, null);
     }
 
-
     /**
-     * Convenience method for locating an entry in a zip file.
+     * Extracts the files in a zip file into the specified directory using
+     * a pool of threads.  See ParallelZipExtractor.
      *
-     * @return
+     * @param threads Number of extraction threads
+     * @return false on error, including a failure of any entry
      */
-    private static ZipEntry findZipEntry(ZipFile zipFile, String entryName) {
-
-        // Find the entry
-        Enumeration<?> entries = zipFile.entries();
-        ZipEntry entry = null;
-        int nLen = entryName.length();
-
-        while (entries.hasMoreElements()) {
-            ZipEntry entry2 = (ZipEntry) entries.nextElement();
-            String name = entry2.getName();
-            if (name.length() < nLen) {
-                continue;
-            }
-
-            String ending = name.substring(name.length() - nLen);
-            if (ending.equalsIgnoreCase(entryName)) {
-                entry = entry2;
-                break;
-            }
-        }
-
-        return entry;
-
+    public static final boolean extractZipFile(File zip,
+                                               File destinationDir,
+                                               String stripPrefix,
+                                               java.io.FileFilter filter,
+                                               int threads) {
+        return new ParallelZipExtractor(threads).extract(zip, destinationDir, stripPrefix, filter);
     }
 
 
@@ -802,18 +773,17 @@ public class Utilities {
 
     /**
      * Convenience method to convert a hex character string to a
-     * byte array
+     * byte array.  A trailing odd digit is ignored.  Each pair is read as
+     * by Integer.parseInt(pair, 16), so a sign ("+f", "-1") and non-ASCII
+     * Unicode digits are accepted as they always were; decodeHex is strict.
      *
      * @param value The hex string
      * @return The byte array
+     * @throws NumberFormatException if a pair is not a number
      */
     static public byte[] hexStringToBytes(String value) {
         byte[] result = new byte[value.length() / 2];
-        for (int i = 0; i < result.length; i++) {
-            String group = value.substring(i + i, i + i + 2);
-            result[i] = (byte) (Integer.parseInt(group, 16) & 0xff);
-        }
-
+        decodeHexLenient(value, 0, result.length * 2, result, 0);
         return result;
     }
 
@@ -825,18 +795,152 @@ public class Utilities {
      * @return The printable string
      */
     static public String hexBytesToString(byte[] value) {
-        StringBuffer sb = new StringBuffer(value.length * 2);
-        int ch;
+        char[] result = new char[value.length * 2];
+        encodeHex(value, 0, value.length, result, 0);
+        return new String(result);
+    }
 
-        for (int i = 0; i < value.length; i++) {
-            ch = (int) (value[i] & 0xF0);
-            ch = (ch >>> 4);
-            sb.append(HEXCHARS[ch]);
-            ch = (int) (value[i] & 0x0F);
-            sb.append(HEXCHARS[ch]);
+    /**
+     * Writes the lower case hex digits of a range of bytes into a char array
+     *
+     * @return The number of chars written, always twice the length
+     */
+    static public int encodeHex(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            int pair = (src[offset + i] & 0xff) << 1;
+            dst[dstOffset++] = HEX_PAIRS[pair];
+            dst[dstOffset++] = HEX_PAIRS[pair + 1];
         }
 
-        return sb.toString();
+        return length * 2;
+    }
+
+    /**
+     * Writes the lower case hex digits of a range of bytes into a byte array
+     * as ASCII
+     *
+     * @return The number of bytes written, always twice the length
+     */
+    static public int encodeHex(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            int pair = (src[offset + i] & 0xff) << 1;
+            dst[dstOffset++] = (byte) HEX_PAIRS[pair];
+            dst[dstOffset++] = (byte) HEX_PAIRS[pair + 1];
+        }
+
+        return length * 2;
+    }
+
+    /**
+     * Writes the lower case hex digits of the remaining source bytes into the
+     * destination as ASCII.  Both buffers are advanced.
+     *
+     * @throws java.nio.BufferOverflowException if the destination has less
+     *                                          than twice the source remaining
+     */
+    static public void encodeHex(ByteBuffer src, ByteBuffer dst) {
+        if (dst.remaining() < src.remaining() * 2) {
+            throw new java.nio.BufferOverflowException();
+        }
+
+        while (src.hasRemaining()) {
+            int pair = (src.get() & 0xff) << 1;
+            dst.put((byte) HEX_PAIRS[pair]);
+            dst.put((byte) HEX_PAIRS[pair + 1]);
+        }
+    }
+
+    /**
+     * Decodes a range of hex digits, in either case, into a byte array
+     *
+     * @param src    The hex digits
+     * @param offset Index of the first digit
+     * @param length Number of digits, which must be even
+     * @return The number of bytes written, always half the length
+     * @throws NumberFormatException if the length is odd or a character is
+     *                               not a hex digit
+     */
+    static public int decodeHex(CharSequence src, int offset, int length, byte[] dst, int dstOffset) {
+        if ((length & 1) != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + length);
+        }
+
+        for (int i = offset, end = offset + length; i < end; i += 2) {
+            dst[dstOffset++] = (byte) ((hexValue(src.charAt(i)) << 4) | hexValue(src.charAt(i + 1)));
+        }
+
+        return length / 2;
+    }
+
+    /**
+     * Decodes a range of ASCII hex digits, in either case, into a byte array
+     *
+     * @return The number of bytes written, always half the length
+     * @throws NumberFormatException if the length is odd or a byte is not a
+     *                               hex digit
+     */
+    static public int decodeHex(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if ((length & 1) != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + length);
+        }
+
+        for (int i = offset, end = offset + length; i < end; i += 2) {
+            dst[dstOffset++] = (byte) ((hexValue((char) (src[i] & 0xff)) << 4) | hexValue((char) (src[i + 1] & 0xff)));
+        }
+
+        return length / 2;
+    }
+
+    /**
+     * Decodes the remaining ASCII hex digits of the source into the
+     * destination.  Both buffers are advanced.
+     *
+     * @throws NumberFormatException if the number of digits is odd or a byte
+     *                               is not a hex digit
+     */
+    static public void decodeHex(ByteBuffer src, ByteBuffer dst) {
+        if ((src.remaining() & 1) != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + src.remaining());
+        }
+        if (dst.remaining() < src.remaining() / 2) {
+            throw new java.nio.BufferOverflowException();
+        }
+
+        while (src.hasRemaining()) {
+            int high = hexValue((char) (src.get() & 0xff));
+            dst.put((byte) ((high << 4) | hexValue((char) (src.get() & 0xff))));
+        }
+    }
+
+    /**
+     * As decodeHex, but falls back to Integer.parseInt for a pair that is not
+     * two ASCII hex digits, which is how hexStringToBytes has always read its
+     * input.  Only the low 8 bits of the parsed value are kept.
+     */
+    static int decodeHexLenient(CharSequence src, int offset, int length, byte[] dst, int dstOffset) {
+        if ((length & 1) != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + length);
+        }
+
+        for (int i = offset, end = offset + length; i < end; i += 2) {
+            char high = src.charAt(i);
+            char low = src.charAt(i + 1);
+            int value = ((high < 128) && (low < 128)) ? (HEX_VALUES[high] << 4) | HEX_VALUES[low] : -1;
+            if (value < 0) {
+                value = Integer.parseInt(src.subSequence(i, i + 2).toString(), 16);
+            }
+            dst[dstOffset++] = (byte) value;
+        }
+
+        return length / 2;
+    }
+
+    private static int hexValue(char ch) {
+        int value = (ch < 128) ? HEX_VALUES[ch] : -1;
+        if (value < 0) {
+            throw new NumberFormatException("Invalid hex digit: '" + ch + "'");
+        }
+        return value;
     }
 
 
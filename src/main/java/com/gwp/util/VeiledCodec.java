@@ -0,0 +1,214 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+
+/**
+ * Greg's obfuscation codec, as used for the veiled values of
+ * <code>BasicProperties</code>.
+ * <p>
+ * This is compatible with the Agents' version.  Every input unit becomes two
+ * chars offset from 'A' by a running residue, so the encoding is chained and
+ * must be decoded from the start.  An instance carries the residue between
+ * calls, which lets large blobs be processed in pieces; the static methods
+ * handle whole values.  The instance methods write into caller supplied
+ * arrays and do not allocate.
+ * <p>
+ * This is obfuscation, not encryption.
+ */
+public class VeiledCodec {
+
+    static private final int SEED = 0x7e71;
+    static private final int STREAM_BUFFER_SIZE = 8192;
+
+    private int residue = SEED;
+
+
+    /**
+     * Starts a new value
+     */
+    public void reset() {
+        residue = SEED;
+    }
+
+
+    /**
+     * Encodes a range of chars, writing two chars per input char
+     *
+     * @return The number of chars written
+     */
+    public int encode(CharSequence src, int offset, int length, char[] dst, int dstOffset) {
+        int r = residue;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c1 = src.charAt(i);
+            dst[dstOffset++] = (char) ((c1 >> 4) + 'A' + r % 10);
+            dst[dstOffset++] = (char) ((c1 & 0x0f) + 'A' + (r >> 1) % 10);
+            r = (r + (r >> 4) + c1) & 0xffff;
+        }
+
+        residue = r;
+        return length * 2;
+    }
+
+
+    /**
+     * Encodes a range of bytes, writing two chars per input byte
+     *
+     * @return The number of chars written
+     */
+    public int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        int r = residue;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int c1 = src[i] & 0xff;
+            dst[dstOffset++] = (char) ((c1 >> 4) + 'A' + r % 10);
+            dst[dstOffset++] = (char) ((c1 & 0x0f) + 'A' + (r >> 1) % 10);
+            r = (r + (r >> 4) + c1) & 0xffff;
+        }
+
+        residue = r;
+        return length * 2;
+    }
+
+
+    /**
+     * Decodes a range of encoded chars into chars.  A trailing odd char is
+     * ignored.
+     *
+     * @return The number of chars written
+     */
+    public int decode(CharSequence src, int offset, int length, char[] dst, int dstOffset) {
+        int r = residue;
+        int count = length / 2;
+
+        for (int i = offset, end = offset + count * 2; i < end; i += 2) {
+            char v = (char) (((src.charAt(i) - 'A' - r % 10) << 4)
+                    + (src.charAt(i + 1) - 'A' - (r >> 1) % 10));
+            dst[dstOffset++] = v;
+            r = (r + (r >> 4) + v) & 0xffff;
+        }
+
+        residue = r;
+        return count;
+    }
+
+
+    /**
+     * Decodes a range of encoded chars into bytes.  A trailing odd char is
+     * ignored.
+     *
+     * @return The number of bytes written
+     */
+    public int decode(CharSequence src, int offset, int length, byte[] dst, int dstOffset) {
+        int r = residue;
+        int count = length / 2;
+
+        for (int i = offset, end = offset + count * 2; i < end; i += 2) {
+            char v = (char) (((src.charAt(i) - 'A' - r % 10) << 4)
+                    + (src.charAt(i + 1) - 'A' - (r >> 1) % 10));
+            dst[dstOffset++] = (byte) v;
+            // the Agents' version chains on the full char, not the byte
+            r = (r + (r >> 4) + v) & 0xffff;
+        }
+
+        residue = r;
+        return count;
+    }
+
+
+    /**
+     * Encodes a whole string.  Chars above 0xff are preserved, but the
+     * result should not be used to carry binary data; use encodeBytes.
+     */
+    public static String encodeString(String data) {
+        char[] result = new char[data.length() * 2];
+        new VeiledCodec().encode(data, 0, data.length(), result, 0);
+        return new String(result);
+    }
+
+
+    /**
+     * Decodes a whole string
+     */
+    public static String decodeString(String data) {
+        char[] result = new char[data.length() / 2];
+        new VeiledCodec().decode(data, 0, data.length(), result, 0);
+        return new String(result);
+    }
+
+
+    /**
+     * Encodes a whole byte array
+     */
+    public static String encodeBytes(byte[] data) {
+        char[] result = new char[data.length * 2];
+        new VeiledCodec().encode(data, 0, data.length, result, 0);
+        return new String(result);
+    }
+
+
+    /**
+     * Decodes a whole byte array
+     */
+    public static byte[] decodeBytes(String data) {
+        byte[] result = new byte[data.length() / 2];
+        new VeiledCodec().decode(data, 0, data.length(), result, 0);
+        return result;
+    }
+
+
+    /**
+     * Encodes everything read from the input stream to the writer, using
+     * fixed size buffers.  Neither stream is closed.
+     */
+    public static void encode(InputStream in, Writer out) throws IOException {
+        VeiledCodec codec = new VeiledCodec();
+        byte[] input = new byte[STREAM_BUFFER_SIZE];
+        char[] output = new char[STREAM_BUFFER_SIZE * 2];
+        int count;
+
+        while ((count = in.read(input)) >= 0) {
+            out.write(output, 0, codec.encode(input, 0, count, output, 0));
+        }
+        out.flush();
+    }
+
+
+    /**
+     * Decodes everything read from the reader to the output stream, using
+     * fixed size buffers.  A trailing odd char is ignored.  Neither stream
+     * is closed.
+     */
+    public static void decode(Reader in, OutputStream out) throws IOException {
+        VeiledCodec codec = new VeiledCodec();
+        char[] input = new char[STREAM_BUFFER_SIZE];
+        CharBuffer view = CharBuffer.wrap(input);
+        byte[] output = new byte[STREAM_BUFFER_SIZE / 2];
+        int pending = 0;
+        int count;
+
+        while ((count = in.read(input, pending, input.length - pending)) >= 0) {
+            int available = pending + count;
+            int used = available & ~1;
+
+            out.write(output, 0, codec.decode(view, 0, used, output, 0));
+
+            // carry half a pair over to the next read
+            pending = available - used;
+            if (pending > 0) {
+                input[0] = input[used];
+            }
+        }
+        out.flush();
+    }
+}
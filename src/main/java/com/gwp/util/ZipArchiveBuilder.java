@@ -0,0 +1,317 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+
+/**
+ * Writes zip archives in a single pass over the source data.
+ * <p>
+ * File entries use the stream's default method.  When it is DEFLATED, the
+ * zip stream works out the CRC and sizes as the data goes through and writes
+ * them after the entry, so nothing has to be read twice.  A STORED stream
+ * needs the size and CRC up front, so each file is read once for its CRC and
+ * again for its data.  One large buffer is reused for every entry.
+ * <p>
+ * This is also the implementation of Utilities.addZipEntries.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class ZipArchiveBuilder implements Closeable {
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ZipOutputStream out;
+    private final boolean ownsStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+
+    /**
+     * Creates a builder writing a new archive file
+     */
+    public ZipArchiveBuilder(File file) throws IOException {
+        this(new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)), true);
+    }
+
+
+    /**
+     * Creates a builder writing an archive to a stream.  The stream is closed
+     * when the builder is closed.
+     */
+    public ZipArchiveBuilder(OutputStream output) {
+        this(new ZipOutputStream(new BufferedOutputStream(output, BUFFER_SIZE)), true);
+    }
+
+
+    /**
+     * Creates a builder adding entries to an existing zip stream.  The stream
+     * is left open when the builder is closed.
+     */
+    public ZipArchiveBuilder(ZipOutputStream out) {
+        this(out, false);
+    }
+
+
+    private ZipArchiveBuilder(ZipOutputStream out, boolean ownsStream) {
+        this.out = out;
+        this.ownsStream = ownsStream;
+    }
+
+
+    /**
+     * Sets the compression level for following entries
+     *
+     * @param level Deflater.DEFAULT_COMPRESSION or 0 - 9
+     */
+    public ZipArchiveBuilder setLevel(int level) {
+        out.setLevel(level);
+        return this;
+    }
+
+
+    public ZipOutputStream getOutputStream() {
+        return out;
+    }
+
+
+    /**
+     * Adds a file using the stream's default method
+     */
+    public ZipArchiveBuilder addFile(File file, String entryName) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setTime(file.lastModified());
+
+        try (InputStream input = new FileInputStream(file)) {
+            try {
+                out.putNextEntry(entry);
+            } catch (ZipException ze) {
+                // putNextEntry resolves the default method before rejecting a
+                // STORED entry without a CRC, and writes nothing in that case
+                if ((entry.getMethod() != ZipEntry.STORED) || (entry.getCrc() != -1)) {
+                    throw ze;
+                }
+                setSizeAndCrc(entry, file);
+                out.putNextEntry(entry);
+            }
+
+            try {
+                copy(input);
+            } finally {
+                out.closeEntry();
+            }
+        }
+
+        return this;
+    }
+
+
+    /**
+     * Adds the rest of a stream as a DEFLATED entry.  The stream is not
+     * closed.
+     *
+     * @param time Entry modification time, or -1 for none
+     */
+    public ZipArchiveBuilder addEntry(String entryName, InputStream input, long time) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setMethod(ZipEntry.DEFLATED);
+        if (time != -1) {
+            entry.setTime(time);
+        }
+
+        out.putNextEntry(entry);
+        try {
+            copy(input);
+        } finally {
+            out.closeEntry();
+        }
+
+        return this;
+    }
+
+
+    private void copy(InputStream input) throws IOException {
+        int readLength;
+        while ((readLength = input.read(buffer)) != -1) {
+            out.write(buffer, 0, readLength);
+        }
+    }
+
+
+    /**
+     * Reads a file once to fill in the size and CRC a STORED entry needs
+     */
+    private void setSizeAndCrc(ZipEntry entry, File file) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+
+        try (InputStream input = new FileInputStream(file)) {
+            int readLength;
+            while ((readLength = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, readLength);
+                size += readLength;
+            }
+        }
+
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+    }
+
+
+    /**
+     * Adds an empty directory entry, stored the way WinZip does it
+     */
+    public ZipArchiveBuilder addDirectory(String entryName) throws IOException {
+        if (!entryName.endsWith("/")) {
+            entryName += "/";
+        }
+
+        ZipEntry entry = new ZipEntry(entryName);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(0);
+        entry.setCompressedSize(0);
+        entry.setCrc(0);
+        out.putNextEntry(entry);
+        out.closeEntry();
+
+        return this;
+    }
+
+
+    /**
+     * Adds a file or directory tree, naming entries the same way as
+     * Utilities.addZipEntries.  Directory entries are only added for empty
+     * directories.
+     *
+     * @param file         The file or directory to add
+     * @param parentPath   Path to prefix to the zip entries
+     * @param recurse      true to recurse directories, false otherwise
+     * @param parentSuffix Optional suffix to be added to the parent path
+     * @param filter       File selection filter instance or null
+     */
+    public ZipArchiveBuilder addTree(File file, String parentPath, boolean recurse, String parentSuffix,
+                                     FileFilter filter) throws IOException {
+        addTree(file, parentPath, recurse, parentSuffix, filter, false);
+        return this;
+    }
+
+
+    /**
+     * Walks the tree for addTree.  With skipErrors set, a file or directory
+     * that cannot be read is left out and the walk carries on, which is how
+     * Utilities.addZipEntries has always behaved.
+     */
+    void addTree(File file, String parentPath, boolean recurse, String parentSuffix,
+                 FileFilter filter, boolean skipErrors) throws IOException {
+        String entryPath = entryPath(file, parentPath, parentSuffix);
+
+        if (file.isDirectory() && recurse) {
+            if (!entryPath.endsWith("/")) {
+                entryPath += "/";
+            }
+
+            File[] listing = file.listFiles();
+            if (listing == null) {
+                if (skipErrors) {
+                    return;
+                }
+                throw new IOException("Unable to list " + file);
+            }
+
+            if (listing.length == 0) {
+                try {
+                    addDirectory(entryPath);
+                } catch (IOException ioe) {
+                    if (!skipErrors) {
+                        throw ioe;
+                    }
+                }
+            }
+
+            for (File child : listing) {
+                addTree(child, entryPath, recurse, "", filter, skipErrors);
+            }
+        } else if ((filter == null) || filter.accept(new File(entryPath))) {
+            try {
+                addFile(file, entryPath);
+            } catch (IOException ioe) {
+                if (!skipErrors) {
+                    throw ioe;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Completes the archive without closing the underlying stream
+     */
+    public void finish() throws IOException {
+        out.finish();
+    }
+
+
+    /**
+     * Completes the archive, closing the stream if the builder opened it
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsStream) {
+            out.close();
+        } else {
+            out.finish();
+        }
+    }
+
+
+    /**
+     * Builds an entry name from the parent path, file name and suffix
+     */
+    static String entryPath(File file, String parentPath, String parentSuffix) {
+        StringBuilder entryPath = new StringBuilder(parentPath.replace('\\', '/'));
+
+        if ((entryPath.length() > 0) && (entryPath.charAt(entryPath.length() - 1) != '/')) {
+            entryPath.append('/');
+        }
+        entryPath.append(file.getName());
+        entryPath.append(parentSuffix);
+
+        return entryPath.toString();
+    }
+
+
+    /**
+     * Compresses a whole directory tree into a new archive file
+     */
+    public static void archive(File source, File zip, int level) throws IOException {
+        try (ZipArchiveBuilder builder = new ZipArchiveBuilder(zip)) {
+            builder.setLevel(level);
+            builder.addTree(source, "", true, "", null);
+        }
+    }
+
+
+    /**
+     * Compresses a whole directory tree into a new archive file at the
+     * default compression level
+     */
+    public static void archive(File source, File zip) throws IOException {
+        archive(source, zip, Deflater.DEFAULT_COMPRESSION);
+    }
+}
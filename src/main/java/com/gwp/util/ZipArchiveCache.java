@@ -0,0 +1,446 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+
+/**
+ * A bounded cache of open zip archives and their entry indexes.
+ * <p>
+ * Opening a ZipFile parses the whole central directory, and finding an
+ * entry by the end of its name means walking every entry.  Archives are kept
+ * open here under their absolute path, with an index of entry names and a
+ * bounded memo of successful name lookups, so repeated lookups in the same
+ * archive are hash hits.  An archive whose modification time or length has changed is
+ * reopened.  The least recently used archive is evicted when the cache is
+ * full.
+ * <p>
+ * <code>open</code> returns a new handle for each caller, and every caller
+ * must close its own handle.  Closing a handle more than once has no further
+ * effect, so it cannot release another caller's reference.  An evicted
+ * archive stays open until its last handle is closed.
+ */
+public class ZipArchiveCache {
+
+    public static final int DEFAULT_MAX_ARCHIVES = 16;
+
+    // Most name lookups remembered per archive
+    static private final int MAX_LOOKUPS = 1024;
+
+    static private final ZipArchiveCache shared = new ZipArchiveCache();
+
+    private final int maxArchives;
+    private final LinkedHashMap<String, OpenArchive> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * One caller's handle on a cached archive.  Once the handle is closed
+     * its methods throw IllegalStateException.
+     */
+    public static class Archive implements Closeable {
+        private final OpenArchive archive;
+        private boolean closed = false;
+
+        Archive(OpenArchive archive) {
+            this.archive = archive;
+        }
+
+        private synchronized OpenArchive archive() {
+            if (closed) {
+                throw new IllegalStateException("Archive handle is closed: " + archive.file);
+            }
+            return archive;
+        }
+
+        public File getFile() {
+            return archive().file;
+        }
+
+        public ZipFile getZipFile() {
+            return archive().zipFile;
+        }
+
+        /**
+         * Returns the entries in archive order
+         */
+        public List<ZipEntry> getEntries() {
+            return archive().entries;
+        }
+
+        /**
+         * Returns the entry with exactly this name, or null
+         */
+        public ZipEntry getEntry(String name) {
+            return archive().byName.get(name);
+        }
+
+        /**
+         * Returns the first entry whose name ends with the given name,
+         * ignoring case, or null.  This is the lookup used by
+         * Utilities.extractEntryFromZip.  Found entries are remembered, up
+         * to MAX_LOOKUPS names; misses are not, so the memo cannot be grown
+         * by asking for names that do not exist.
+         */
+        public ZipEntry findEntry(String entryName) {
+            return archive().findEntry(entryName);
+        }
+
+        /**
+         * Returns the contents of an entry as a read only buffer.  STORED
+         * entries are mapped straight from the archive file; others are
+         * inflated into a buffer allocated at the entry's size.  The buffer
+         * stays valid after the handle is closed.
+         *
+         * @throws ZipException if the entry is encrypted or too large
+         */
+        public ByteBuffer map(ZipEntry entry) throws IOException {
+            return archive().map(entry);
+        }
+
+        /**
+         * Releases this handle.  Only the first call has any effect.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            archive.release();
+        }
+    }
+
+
+    /**
+     * An open archive and its entry indexes, shared by all handles on it
+     */
+    static private class OpenArchive {
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private final ZipFile zipFile;
+        private final List<ZipEntry> entries;
+        private final Map<String, ZipEntry> byName;
+        private final ConcurrentHashMap<String, ZipEntry> lookups = new ConcurrentHashMap<>();
+        private int references = 0;
+        private boolean evicted = false;
+        private boolean closed = false;
+
+        // Opened the first time a STORED entry is mapped
+        private FileChannel channel = null;
+        private ZipCentralDirectory directory = null;
+
+        OpenArchive(File file, long lastModified, long length) throws IOException {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.zipFile = new ZipFile(file);
+
+            List<ZipEntry> entries = new ArrayList<>(zipFile.size());
+            Map<String, ZipEntry> byName = new HashMap<>(zipFile.size() * 2);
+            Enumeration<? extends ZipEntry> enumValue = zipFile.entries();
+            while (enumValue.hasMoreElements()) {
+                ZipEntry entry = enumValue.nextElement();
+                entries.add(entry);
+                byName.putIfAbsent(entry.getName(), entry);
+            }
+            this.entries = Collections.unmodifiableList(entries);
+            this.byName = byName;
+        }
+
+        ZipEntry findEntry(String entryName) {
+            ZipEntry entry = lookups.get(entryName);
+            if (entry == null) {
+                entry = scan(entryName);
+                if ((entry != null) && (lookups.size() < MAX_LOOKUPS)) {
+                    lookups.putIfAbsent(entryName, entry);
+                }
+            }
+            return entry;
+        }
+
+        private ZipEntry scan(String entryName) {
+            int nLen = entryName.length();
+            for (ZipEntry entry : entries) {
+                String name = entry.getName();
+                if ((name.length() >= nLen) && name.regionMatches(true, name.length() - nLen, entryName, 0, nLen)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        ByteBuffer map(ZipEntry entry) throws IOException {
+            if (entry.getMethod() == ZipEntry.STORED) {
+                ZipCentralDirectory.Entry located;
+                FileChannel channel;
+                synchronized (this) {
+                    if (this.channel == null) {
+                        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                        this.directory = ZipCentralDirectory.read(this.channel);
+                    }
+                    channel = this.channel;
+                    located = directory.getEntry(entry.getName());
+                }
+
+                if (located == null) {
+                    throw new ZipException("Entry not in central directory: " + entry.getName());
+                }
+                if (located.isEncrypted()) {
+                    throw new ZipException("Encrypted entry: " + entry.getName());
+                }
+
+                if (located.getSize() > Integer.MAX_VALUE) {
+                    throw new ZipException("Entry too large to map: " + entry.getName());
+                }
+
+                long dataOffset = ZipCentralDirectory.getDataOffset(channel, located);
+                return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, located.getSize());
+            }
+
+            long size = entry.getSize();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("Entry too large to buffer: " + entry.getName());
+            }
+
+            try (InputStream input = zipFile.getInputStream(entry)) {
+                byte[] data;
+                if (size < 0) {
+                    data = input.readAllBytes();
+                } else {
+                    data = new byte[(int) size];
+                    if ((input.readNBytes(data, 0, data.length) != data.length) || (input.read() != -1)) {
+                        throw new ZipException("Size mismatch in " + entry.getName());
+                    }
+                }
+                return ByteBuffer.wrap(data).asReadOnlyBuffer();
+            }
+        }
+
+        boolean isCurrent(long lastModified, long length) {
+            return (this.lastModified == lastModified) && (this.length == length);
+        }
+
+        /**
+         * Takes a reference, unless the archive has already been evicted
+         */
+        synchronized boolean acquire() {
+            if (evicted) {
+                return false;
+            }
+            references++;
+            return true;
+        }
+
+        /**
+         * Marks the archive evicted, closing it if no handles are open
+         */
+        synchronized void evict() {
+            evicted = true;
+            if (references == 0) {
+                closeQuietly();
+            }
+        }
+
+        /**
+         * Releases one handle's reference
+         */
+        synchronized void release() {
+            if (references > 0) {
+                references--;
+                if (evicted && (references == 0)) {
+                    closeQuietly();
+                }
+            }
+        }
+
+        private void closeQuietly() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                zipFile.close();
+            } catch (IOException ioe) {
+            }
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Constructs a cache holding up to DEFAULT_MAX_ARCHIVES open archives
+     */
+    public ZipArchiveCache() {
+        this(DEFAULT_MAX_ARCHIVES);
+    }
+
+
+    /**
+     * Constructs a cache
+     *
+     * @param maxArchives The maximum number of archives to keep open
+     */
+    public ZipArchiveCache(int maxArchives) {
+        if (maxArchives < 1) {
+            throw new IllegalArgumentException("maxArchives must be at least 1");
+        }
+
+        this.maxArchives = maxArchives;
+        this.cache = new LinkedHashMap<String, OpenArchive>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OpenArchive> eldest) {
+                if (size() > ZipArchiveCache.this.maxArchives) {
+                    evictions.incrementAndGet();
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cache used by Utilities
+     */
+    public static ZipArchiveCache getShared() {
+        return shared;
+    }
+
+
+    /**
+     * Returns a new handle on an open archive, opening the archive only if it
+     * is not already cached or has changed on disk.  The handle must be
+     * closed.
+     *
+     * @throws IOException if the archive cannot be opened
+     */
+    public Archive open(File zip) throws IOException {
+        String key = zip.getAbsolutePath();
+        long lastModified = zip.lastModified();
+        long length = zip.length();
+
+        synchronized (cache) {
+            OpenArchive archive = cache.get(key);
+            if (archive != null) {
+                if (archive.isCurrent(lastModified, length) && archive.acquire()) {
+                    hits.incrementAndGet();
+                    return new Archive(archive);
+                }
+                cache.remove(key);
+                archive.evict();
+            }
+        }
+
+        misses.incrementAndGet();
+
+        // parse the central directory outside the lock so other archives are not held up
+        OpenArchive archive = new OpenArchive(zip, lastModified, length);
+
+        synchronized (cache) {
+            OpenArchive existing = cache.get(key);
+            if ((existing != null) && existing.isCurrent(lastModified, length) && existing.acquire()) {
+                archive.evict();
+                return new Archive(existing);
+            }
+            if (existing != null) {
+                existing.evict();
+            }
+
+            archive.acquire();
+            cache.put(key, archive);
+            return new Archive(archive);
+        }
+    }
+
+
+    /**
+     * Closes and forgets one archive, if it is cached
+     */
+    public void invalidate(File zip) {
+        synchronized (cache) {
+            OpenArchive archive = cache.remove(zip.getAbsolutePath());
+            if (archive != null) {
+                archive.evict();
+            }
+        }
+    }
+
+
+    public int getMaxArchives() {
+        return maxArchives;
+    }
+
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+
+    /**
+     * Forgets all archives, closing each once its handles are closed, and
+     * resets the counters
+     */
+    public void clear() {
+        synchronized (cache) {
+            for (OpenArchive archive : cache.values()) {
+                archive.evict();
+            }
+            cache.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+}
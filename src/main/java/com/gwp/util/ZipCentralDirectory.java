@@ -0,0 +1,314 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+
+/**
+ * The parsed central directory of a zip archive.
+ * <p>
+ * Unlike ZipFile this gives the position of each entry's data in the
+ * archive, so entries can be copied or mapped straight from the file with
+ * positional channel operations, which are safe to use from many threads.
+ * ZIP64 archives are supported; multi-disk archives are not.
+ */
+public class ZipCentralDirectory {
+
+    static private final int LOCAL_HEADER_SIG = 0x04034b50;
+    static private final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static private final int END_SIG = 0x06054b50;
+    static private final int ZIP64_END_SIG = 0x06064b50;
+    static private final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    static private final int ZIP64_EXTRA_ID = 0x0001;
+    static private final int END_SIZE = 22;
+    static private final int ZIP64_LOCATOR_SIZE = 20;
+    static private final int LOCAL_HEADER_SIZE = 30;
+    static private final int CENTRAL_HEADER_SIZE = 46;
+    static private final int MAX_COMMENT = 0xFFFF;
+    static private final long ZIP32_LIMIT = 0xFFFFFFFFL;
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+
+
+    /**
+     * A central directory entry
+     */
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int flags;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final long time;
+        private volatile long dataOffset = -1;
+
+        Entry(String name, int method, int flags, long crc, long compressedSize, long size,
+              long localHeaderOffset, long time) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.time = time;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the compression method, ZipEntry.STORED or ZipEntry.DEFLATED
+         * for supported entries
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public boolean isEncrypted() {
+            return (flags & 1) != 0;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * Returns the modification time in milliseconds, or -1 if not set
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+
+    private ZipCentralDirectory(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.byName = new HashMap<>(entries.size() * 2);
+        for (Entry entry : entries) {
+            byName.putIfAbsent(entry.getName(), entry);
+        }
+    }
+
+
+    /**
+     * Returns the entries in central directory order
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+
+    /**
+     * Returns the entry with exactly this name, or null
+     */
+    public Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Returns the archive position of an entry's data, reading its local
+     * header the first time
+     */
+    public static long getDataOffset(FileChannel channel, Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset < 0) {
+            ByteBuffer header = read(channel, entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_HEADER_SIG) {
+                throw new ZipException("Bad local header for " + entry.getName());
+            }
+
+            offset = entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE
+                    + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            entry.dataOffset = offset;
+        }
+
+        return offset;
+    }
+
+
+    /**
+     * Reads the central directory of an archive
+     *
+     * @throws ZipException if the channel does not hold a zip archive
+     */
+    public static ZipCentralDirectory read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_SIZE) {
+            throw new ZipException("Not a zip file");
+        }
+
+        // The end record is followed only by the archive comment
+        int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT + ZIP64_LOCATOR_SIZE);
+        long tailStart = fileSize - tailSize;
+        ByteBuffer tail = read(channel, tailStart, tailSize);
+
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if ((tail.getInt(i) == END_SIG) && (i + END_SIZE + (tail.getShort(i + 20) & 0xFFFF) <= tailSize)) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long centralSize = tail.getInt(end + 12) & ZIP32_LIMIT;
+        long centralOffset = tail.getInt(end + 16) & ZIP32_LIMIT;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if ((locator >= 0) && (tail.getInt(locator) == ZIP64_LOCATOR_SIG)) {
+            ByteBuffer zip64End = read(channel, tail.getLong(locator + 8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                throw new ZipException("Bad ZIP64 end of central directory");
+            }
+            count = zip64End.getLong(32);
+            centralSize = zip64End.getLong(40);
+            centralOffset = zip64End.getLong(48);
+        }
+
+        if ((centralOffset + centralSize > fileSize) || (centralSize > Integer.MAX_VALUE)) {
+            throw new ZipException("Bad central directory location");
+        }
+
+        ByteBuffer central = read(channel, centralOffset, (int) centralSize);
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        int position = 0;
+
+        while (position + CENTRAL_HEADER_SIZE <= central.limit()) {
+            if (central.getInt(position) != CENTRAL_HEADER_SIG) {
+                break;
+            }
+
+            int flags = central.getShort(position + 8) & 0xFFFF;
+            int method = central.getShort(position + 10) & 0xFFFF;
+            int dosTime = central.getInt(position + 12);
+            long crc = central.getInt(position + 16) & ZIP32_LIMIT;
+            long compressedSize = central.getInt(position + 20) & ZIP32_LIMIT;
+            long size = central.getInt(position + 24) & ZIP32_LIMIT;
+            int nameLength = central.getShort(position + 28) & 0xFFFF;
+            int extraLength = central.getShort(position + 30) & 0xFFFF;
+            int commentLength = central.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = central.getInt(position + 42) & ZIP32_LIMIT;
+
+            int nameStart = position + CENTRAL_HEADER_SIZE;
+            if (nameStart + nameLength + extraLength > central.limit()) {
+                throw new ZipException("Truncated central directory");
+            }
+            String name = new String(central.array(), nameStart, nameLength, StandardCharsets.UTF_8);
+
+            // ZIP64 values follow in this order, for the fields that overflowed
+            int extra = nameStart + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = central.getShort(extra) & 0xFFFF;
+                int length = central.getShort(extra + 2) & 0xFFFF;
+                int value = extra + 4;
+                if (id == ZIP64_EXTRA_ID) {
+                    if ((size == ZIP32_LIMIT) && (value + 8 <= extraEnd)) {
+                        size = central.getLong(value);
+                        value += 8;
+                    }
+                    if ((compressedSize == ZIP32_LIMIT) && (value + 8 <= extraEnd)) {
+                        compressedSize = central.getLong(value);
+                        value += 8;
+                    }
+                    if ((localHeaderOffset == ZIP32_LIMIT) && (value + 8 <= extraEnd)) {
+                        localHeaderOffset = central.getLong(value);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+
+            entries.add(new Entry(name, method, flags, crc, compressedSize, size, localHeaderOffset,
+                    dosToJavaTime(dosTime)));
+            position = extraEnd + commentLength;
+        }
+
+        return new ZipCentralDirectory(entries);
+    }
+
+
+    /**
+     * Reads a region of the channel into a little-endian heap buffer
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+
+    /**
+     * Converts an MS-DOS date and time, as stored in zip headers, to Java time
+     */
+    private static long dosToJavaTime(int dosTime) {
+        try {
+            LocalDateTime date = LocalDateTime.of(((dosTime >> 25) & 0x7f) + 1980,
+                    (dosTime >> 21) & 0x0f,
+                    (dosTime >> 16) & 0x1f,
+                    (dosTime >> 11) & 0x1f,
+                    (dosTime >> 5) & 0x3f,
+                    (dosTime << 1) & 0x3e);
+            return date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException dte) {
+            return -1;
+        }
+    }
+}
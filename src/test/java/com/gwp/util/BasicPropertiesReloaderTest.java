@@ -0,0 +1,168 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class BasicPropertiesReloaderTest {
+
+    private static final long TIMEOUT = 20000L;
+
+    @TempDir
+    File tempDir;
+
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+
+    private static BasicProperties loaded(File file) throws IOException {
+        BasicProperties props = new BasicProperties();
+        props.load(file);
+        return props;
+    }
+
+
+    /**
+     * Waits until at least count notifications have arrived
+     */
+    private static void awaitCount(CopyOnWriteArrayList<?> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((received.size() < count) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(20);
+        }
+        assertTrue(received.size() >= count, "timed out waiting for a reload");
+    }
+
+
+    @Test
+    void reloadReportsChangedKeys() throws IOException {
+        File file = new File(tempDir, "app.properties");
+        write(file, "same=1\nchanged=2\nremoved=3\n");
+        BasicProperties target = loaded(file);
+        target.setString("local", "kept");
+
+        BasicPropertiesReloader reloader = new BasicPropertiesReloader(target, file, 10000L);
+        try {
+            reloader.start();
+            write(file, "same=1\nchanged=two\nadded=4\n");
+
+            BasicPropertiesReloader.Diff diff = reloader.reload();
+            assertEquals(1, diff.getAdded().size());
+            assertEquals("4", diff.getAdded().get("added"));
+            assertEquals(1, diff.getChanged().size());
+            assertEquals("two", diff.getChanged().get("changed"));
+            assertEquals(1, diff.getRemoved().size());
+            assertTrue(diff.getRemoved().contains("removed"));
+
+            assertEquals("1", target.getProperty("same"));
+            assertEquals("two", target.getProperty("changed"));
+            assertEquals("4", target.getProperty("added"));
+            assertFalse(target.containsKey("removed"));
+            assertEquals("kept", target.getProperty("local"));
+
+            // nothing changed since the last reload
+            assertTrue(reloader.reload().isEmpty());
+        } finally {
+            reloader.close();
+        }
+    }
+
+
+    @Test
+    void watcherCoalescesQuickWrites() throws Exception {
+        File file = new File(tempDir, "watched.properties");
+        write(file, "count=0\n");
+        BasicProperties target = loaded(file);
+        CopyOnWriteArrayList<BasicPropertiesReloader.Diff> received = new CopyOnWriteArrayList<>();
+
+        long debounce = 500L;
+        BasicPropertiesReloader reloader = new BasicPropertiesReloader(target, file, debounce);
+        reloader.addReloadListener((source, diff) -> received.add(diff));
+        try {
+            reloader.start();
+            for (int i = 1; i <= 5; i++) {
+                write(file, "count=" + i + "\n");
+                Thread.sleep(20);
+            }
+
+            awaitCount(received, 1);
+            Thread.sleep(3 * debounce);
+
+            assertEquals(1, received.size());
+            assertEquals("5", received.get(0).getChanged().get("count"));
+            assertEquals(5, target.getInt("count"));
+        } finally {
+            reloader.close();
+        }
+    }
+
+
+    @Test
+    void closeStopsReloads() throws Exception {
+        File file = new File(tempDir, "closed.properties");
+        write(file, "value=before\n");
+        BasicProperties target = loaded(file);
+        CopyOnWriteArrayList<BasicPropertiesReloader.Diff> received = new CopyOnWriteArrayList<>();
+
+        long debounce = 100L;
+        BasicPropertiesReloader reloader = new BasicPropertiesReloader(target, file, debounce);
+        reloader.addReloadListener((source, diff) -> received.add(diff));
+        reloader.start();
+
+        write(file, "value=watched\n");
+        awaitCount(received, 1);
+        assertEquals("watched", target.getProperty("value"));
+
+        reloader.close();
+        write(file, "value=after\n");
+        Thread.sleep(10 * debounce);
+
+        assertEquals(1, received.size());
+        assertEquals("watched", target.getProperty("value"));
+        assertNull(reloader.reload());
+
+        // a closed reloader stays closed
+        reloader.start();
+        write(file, "value=restarted\n");
+        Thread.sleep(10 * debounce);
+        assertEquals("watched", target.getProperty("value"));
+    }
+
+
+    @Test
+    void closeFromListenerDoesNotBlock() throws Exception {
+        File file = new File(tempDir, "self.properties");
+        write(file, "value=1\n");
+        BasicProperties target = loaded(file);
+        CopyOnWriteArrayList<BasicPropertiesReloader.Diff> received = new CopyOnWriteArrayList<>();
+
+        BasicPropertiesReloader reloader = new BasicPropertiesReloader(target, file, 50L);
+        reloader.addReloadListener((source, diff) -> {
+            source.close();
+            received.add(diff);
+        });
+        reloader.start();
+
+        write(file, "value=2\n");
+        awaitCount(received, 1);
+        assertNull(reloader.reload());
+        assertEquals("2", target.getProperty("value"));
+    }
+}
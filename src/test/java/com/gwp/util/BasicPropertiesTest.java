@@ -0,0 +1,1096 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class BasicPropertiesTest {
+
+    @TempDir
+    File tempDir;
+
+
+    private static BasicProperties sample() {
+        BasicProperties props = new BasicProperties();
+        props.setString("name", "value");
+        props.setString("empty", "");
+        props.setString("unicode", "caf\u00e9 \u65e5\u672c \ud83d\ude00");
+        props.setString("spaces and = signs", " leading, trailing ");
+        props.setString("multi\nline", "a\nb\\c#d!e");
+        props.setInt("number", -42);
+        for (int i = 0; i < 200; i++) {
+            props.setString("key." + i, "value " + i);
+        }
+        return props;
+    }
+
+
+    @Test
+    void textEncodingRoundTrip() {
+        BasicProperties source = sample();
+        byte[] data = source.toByteArray();
+
+        BasicProperties copy = new BasicProperties();
+        assertEquals(data.length - 1, copy.fromByteArray(data, 0));
+        assertEquals(source, copy);
+    }
+
+
+    @Test
+    void compactEncodingRoundTrip() {
+        BasicProperties source = sample();
+        byte[] data = source.toCompactByteArray();
+
+        BasicProperties copy = new BasicProperties();
+        assertEquals(data.length, copy.fromByteArray(data, 0));
+        assertEquals(source, copy);
+
+        copy = new BasicProperties();
+        assertEquals(data.length, copy.fromByteArray(data, 0, data.length));
+        assertEquals(source, copy);
+    }
+
+
+    @Test
+    void compactEncodingAtOffset() {
+        BasicProperties source = sample();
+        byte[] encoded = source.toCompactByteArray();
+        byte[] data = new byte[encoded.length + 20];
+        System.arraycopy(encoded, 0, data, 7, encoded.length);
+
+        BasicProperties copy = new BasicProperties();
+        assertEquals(encoded.length, copy.fromByteArray(data, 7, encoded.length));
+        assertEquals(source, copy);
+    }
+
+
+    @Test
+    void emptyCompactEncoding() {
+        byte[] data = new BasicProperties().toCompactByteArray();
+
+        BasicProperties copy = new BasicProperties();
+        assertEquals(data.length, copy.fromByteArray(data, 0));
+        assertTrue(copy.isEmpty());
+    }
+
+
+    @Test
+    void truncatedCompactEncodingIsRejected() {
+        byte[] data = sample().toCompactByteArray();
+
+        for (int length : new int[]{2, 3, 10, data.length / 2, data.length - 1}) {
+            BasicProperties copy = new BasicProperties();
+            assertEquals(0, copy.fromByteArray(data, 0, length), "length " + length);
+            assertTrue(copy.isEmpty(), "length " + length);
+        }
+    }
+
+
+    @Test
+    void unknownCompactVersionIsRejected() {
+        byte[] data = sample().toCompactByteArray();
+        data[2] = 2;
+
+        BasicProperties copy = new BasicProperties();
+        assertEquals(0, copy.fromByteArray(data, 0));
+        assertTrue(copy.isEmpty());
+
+        assertEquals(0, copy.fromByteArray(data, 0, data.length));
+        assertTrue(copy.isEmpty());
+    }
+
+
+    @Test
+    void typedValuesFollowChanges() {
+        BasicProperties props = new BasicProperties();
+        props.setString("n", "5");
+        assertEquals(5, props.getInt("n", 0));
+
+        props.setString("n", "7");
+        assertEquals(7, props.getInt("n", 0));
+
+        props.put("n", "9");
+        assertEquals(9L, props.getLong("n", 0L));
+
+        props.setString("n", "not a number");
+        assertEquals(-1, props.getInt("n", -1));
+
+        props.remove("n");
+        assertEquals(3, props.getInt("n", 3));
+    }
+
+
+    @Test
+    void encryptedStringRoundTrip() {
+        BasicProperties props = new BasicProperties();
+        for (String value : new String[]{"", "a", "password", "exactly8", "a longer value with caf\u00e9"}) {
+            props.setEncryptedString("secret", value);
+            assertEquals(value, props.getEncryptedString("secret"));
+        }
+    }
+
+
+    @Test
+    void veiledValuesRoundTrip() {
+        BasicProperties props = new BasicProperties();
+        props.setVeiledString("veiled", "hidden text \u00e9");
+        assertEquals("hidden text \u00e9", props.getVeiledString("veiled"));
+
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        props.setVeiledBytes("bytes", bytes);
+        assertArrayEquals(bytes, props.getVeiledBytes("bytes"));
+    }
+
+
+    @Test
+    void storeAtomicThenLoad() throws Exception {
+        File file = new File(tempDir, "test.properties");
+        BasicProperties source = sample();
+        assertTrue(source.storeAtomic(file.getPath(), "header", true));
+
+        BasicProperties copy = new BasicProperties(file);
+        assertEquals(source, copy);
+
+        String[] left = tempDir.list();
+        assertEquals(1, left.length);
+    }
+
+
+    @Test
+    void concurrentStoresDoNotCollide() throws Exception {
+        File file = new File(tempDir, "shared.properties");
+        BasicProperties first = sample();
+        BasicProperties second = sample();
+        boolean[] failed = new boolean[1];
+
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            BasicProperties props = (t == 0) ? first : second;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    if (!props.storeAtomic(file.getPath(), null, false)) {
+                        failed[0] = true;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed[0], "a store failed");
+        assertEquals(first, new BasicProperties(file));
+    }
+
+
+    @Test
+    void flushWritesDeferredStore() throws Exception {
+        File file = new File(tempDir, "deferred.properties");
+        BasicProperties props = new BasicProperties();
+        props.setDeferredStore(file.getPath(), null, 60 * 60 * 1000L, false);
+
+        props.setString("a", "1");
+        props.setString("b", "2");
+        assertFalse(file.exists());
+
+        assertTrue(props.flushDeferredStore());
+        assertEquals(props, new BasicProperties(file));
+    }
+
+
+    private static BasicProperties prefixSample() {
+        BasicProperties props = new BasicProperties();
+        for (int i = 0; i < 10; i++) {
+            props.setString("a." + i, "a" + i);
+            props.setString("b." + i, String.valueOf(i));
+        }
+        props.setString("c", "c");
+        return props;
+    }
+
+
+    /**
+     * Checks prefix queries against a scan of the table, and that the key
+     * index holds exactly the current keys
+     */
+    private static void assertPrefixQueries(BasicProperties props, String step) throws Exception {
+        // before any query, so nothing can have tidied the index
+        Field field = BasicProperties.class.getDeclaredField("keyIndex");
+        field.setAccessible(true);
+        assertEquals(new TreeSet<Object>(props.keySet()), new TreeSet<Object>((Set<?>) field.get(props)), step + ", index");
+
+        for (String prefix : new String[]{"", "a.", "b.", "b.1", "c", "z"}) {
+            TreeSet<String> expected = new TreeSet<>();
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    expected.add(key);
+                }
+            }
+            assertEquals(expected, props.prefixKeys(prefix), step + ", prefix " + prefix);
+            assertEquals(expected, props.subset(prefix).stringPropertyNames(), step + ", subset " + prefix);
+        }
+    }
+
+
+    @Test
+    void prefixQueriesFollowMapMutators() throws Exception {
+        BasicProperties props = prefixSample();
+        assertPrefixQueries(props, "initial");
+
+        props.put("a.new", "x");
+        props.remove("a.0");
+        assertPrefixQueries(props, "put and remove");
+
+        assertEquals("a1", props.replace("a.1", "replaced"));
+        assertNull(props.replace("a.missing", "x"));
+        assertTrue(props.replace("a.2", "a2", "replaced"));
+        assertFalse(props.replace("a.3", "wrong", "x"));
+        assertEquals("replaced", props.getProperty("a.1"));
+        assertPrefixQueries(props, "replace");
+
+        props.replaceAll((key, value) -> value + "!");
+        assertEquals("1!", props.getProperty("b.1"));
+        assertPrefixQueries(props, "replaceAll");
+
+        props.putIfAbsent("b.new", "1");
+        props.remove("b.2", "2!");
+        props.computeIfAbsent("b.computed", key -> "1");
+        props.computeIfPresent("b.3", (key, value) -> null);
+        props.compute("b.4", (key, value) -> null);
+        props.merge("b.merged", "1", (a, b) -> a);
+        assertPrefixQueries(props, "compute and merge");
+
+        Map<String, String> more = new HashMap<>();
+        more.put("a.all", "1");
+        more.put("d", "2");
+        props.putAll(more);
+        assertPrefixQueries(props, "putAll");
+
+        props.removePrefix("b.");
+        assertTrue(props.prefixKeys("b.").isEmpty());
+        assertPrefixQueries(props, "removePrefix");
+
+        props.clear();
+        assertPrefixQueries(props, "clear");
+    }
+
+
+    @Test
+    void prefixQueriesFollowKeySetRemovals() throws Exception {
+        BasicProperties props = prefixSample();
+
+        assertTrue(props.keySet().remove("a.0"));
+        assertFalse(props.keySet().remove("a.0"));
+        assertPrefixQueries(props, "keySet remove");
+
+        Iterator<Object> keys = props.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().equals("a.1")) {
+                keys.remove();
+            }
+        }
+        assertPrefixQueries(props, "keySet iterator");
+
+        assertTrue(props.keySet().removeIf(key -> ((String) key).startsWith("a.2")));
+        assertTrue(props.keySet().removeAll(Arrays.asList("a.3", "a.4")));
+        assertTrue(props.keySet().retainAll(props.prefixKeys("b.")));
+        assertFalse(props.containsKey("c"));
+        assertPrefixQueries(props, "keySet bulk");
+
+        props.keySet().clear();
+        assertTrue(props.isEmpty());
+        assertPrefixQueries(props, "keySet clear");
+    }
+
+
+    @Test
+    void prefixQueriesFollowEntrySetAndValuesRemovals() throws Exception {
+        BasicProperties props = prefixSample();
+
+        assertTrue(props.entrySet().remove(new AbstractMap.SimpleEntry<Object, Object>("a.0", "a0")));
+        assertFalse(props.entrySet().remove(new AbstractMap.SimpleEntry<Object, Object>("a.1", "wrong")));
+        assertTrue(props.entrySet().contains(new AbstractMap.SimpleEntry<Object, Object>("a.1", "a1")));
+        assertPrefixQueries(props, "entrySet remove");
+
+        Iterator<Map.Entry<Object, Object>> entries = props.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Object, Object> entry = entries.next();
+            if (entry.getKey().equals("a.1")) {
+                entries.remove();
+            } else if (entry.getKey().equals("b.5")) {
+                entry.setValue("55");
+            }
+        }
+        assertEquals(55, props.getInt("b.5"));
+        assertPrefixQueries(props, "entrySet iterator");
+
+        assertTrue(props.entrySet().removeIf(entry -> entry.getKey().equals("a.2")));
+        assertPrefixQueries(props, "entrySet removeIf");
+
+        assertTrue(props.values().remove("a3"));
+        assertTrue(props.values().removeIf(value -> ((String) value).startsWith("a")));
+        assertTrue(props.values().contains("55"));
+        assertPrefixQueries(props, "values");
+
+        props.values().clear();
+        assertTrue(props.isEmpty());
+        assertPrefixQueries(props, "values clear");
+    }
+
+
+    @Test
+    void typedValuesFollowViewChanges() {
+        BasicProperties props = new BasicProperties();
+        props.setString("n", "5");
+        assertEquals(5, props.getInt("n", 0));
+
+        props.replace("n", "6");
+        assertEquals(6, props.getInt("n", 0));
+
+        props.entrySet().iterator().next().setValue("7");
+        assertEquals(7, props.getInt("n", 0));
+
+        props.replaceAll((key, value) -> "8");
+        assertEquals(8, props.getInt("n", 0));
+
+        props.keySet().remove("n");
+        assertEquals(3, props.getInt("n", 3));
+    }
+
+
+    @Test
+    void viewRemovalsScheduleDeferredStore() throws Exception {
+        File file = new File(tempDir, "views.properties");
+        BasicProperties props = prefixSample();
+        props.setDeferredStore(file.getPath(), null, 60 * 60 * 1000L, false);
+
+        props.keySet().remove("c");
+        props.replace("a.0", "changed");
+        assertTrue(props.flushDeferredStore());
+
+        BasicProperties copy = new BasicProperties(file);
+        assertFalse(copy.containsKey("c"));
+        assertEquals("changed", copy.getProperty("a.0"));
+        assertEquals(props, copy);
+    }
+
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        File file = new File(tempDir, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+
+    private static boolean isPending(BasicProperties props) throws Exception {
+        Field field = BasicProperties.class.getDeclaredField("pendingFile");
+        field.setAccessible(true);
+        return field.get(props) != null;
+    }
+
+
+    /**
+     * Loads the data with Properties.load and with BasicProperties.load(File),
+     * and checks that both give the same table and fail the same way
+     */
+    private void assertLoadsLikeProperties(byte[] data, String step) throws Exception {
+        Properties expected = new Properties();
+        IllegalArgumentException expectedFailure = null;
+        try {
+            expected.load(new ByteArrayInputStream(data));
+        } catch (IllegalArgumentException iae) {
+            expectedFailure = iae;
+        }
+
+        File file = writeFile("load.properties", data);
+        BasicProperties lazy = new BasicProperties();
+        BasicProperties whole = new BasicProperties();
+        if (expectedFailure != null) {
+            assertThrows(IllegalArgumentException.class, () -> lazy.load(file), step);
+            assertThrows(IllegalArgumentException.class, () -> whole.load(file), step);
+        } else {
+            lazy.load(file);
+            whole.load(file);
+        }
+
+        // lookups answered before the table is loaded
+        for (String key : expected.stringPropertyNames()) {
+            assertTrue(lazy.containsKey(key), step + ", " + key);
+            assertEquals(expected.getProperty(key), lazy.getProperty(key), step + ", " + key);
+            assertEquals(expected.get(key), lazy.get(key), step + ", " + key);
+        }
+        assertFalse(lazy.containsKey("not a key in the file"), step);
+        assertEquals(expected.isEmpty(), lazy.isEmpty(), step);
+
+        assertEquals(expected, lazy, step);
+        assertEquals(expected, whole, step);
+        assertEquals(expected.size(), whole.size(), step);
+        assertEquals(new TreeSet<Object>(expected.keySet()), new TreeSet<Object>(whole.keySet()), step);
+    }
+
+
+    @Test
+    void loadFileMatchesPropertiesLoad() throws Exception {
+        String[] samples = {
+                "",
+                "\n",
+                "\\",
+                "\\\n",
+                "#only a comment",
+                "!only a comment\n",
+                "a=1\nb = 2\nc:3\nd 4\ne\tfive\n f\f = :six",
+                "key\\\n   continued=value\\\r\n  more\\\r  and more\\\n\n",
+                "ends with continuation=\\",
+                "ends with escaped backslash=\\\\",
+                "\\\n#not a comment after an empty continuation\nx=y",
+                "  # indented comment\r\n\t! another\r\rk=v\r",
+                "esc\\=aped\\:key\\ name=v\\t\\n\\r\\f\\q\\\\",
+                "unicode=\\u0041\\u00e9\\u65E5\\uD83D\\ude00",
+                "\\u0041key=value",
+                "dup=first\ndup=second\nother=x\ndup=third",
+                "empty=\nnosep\n=novalue\n:colon\n",
+                "latin1=\u00e9\u00ff\u0080",
+                "bad=\\u12",
+                "good=1\nbad=\\u12zz\nafter=2",
+                "bad\\u00g0key=1",
+        };
+        for (String sample : samples) {
+            assertLoadsLikeProperties(sample.getBytes(StandardCharsets.ISO_8859_1), sample);
+        }
+
+        // random text made mostly of the characters the format treats specially
+        String alphabet = " \t\f\r\n\\=:#!uAa0\u00e9";
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(80);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(20) == 0) {
+                    text.append("\\u00").append(Integer.toHexString(0x10 + random.nextInt(0xf0)));
+                } else {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            byte[] data = text.toString().getBytes(StandardCharsets.ISO_8859_1);
+            assertLoadsLikeProperties(data, "random " + i);
+        }
+    }
+
+
+    @Test
+    void loadFileDecodesOnlyKeysAskedFor() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("key.").append(i).append('=').append(i).append('\n');
+        }
+        File file = writeFile("large.properties", text.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        BasicProperties props = new BasicProperties();
+        props.load(file);
+        assertTrue(isPending(props));
+
+        // the same value instance each time, so the typed cache stays valid
+        String value = props.getProperty("key.17");
+        assertTrue(value == props.getProperty("key.17"));
+        assertEquals(17, props.getInt("key.17"));
+        assertEquals(5, props.getInt("missing", 5));
+        assertEquals("x", props.getProperty("missing", "x"));
+        assertTrue(isPending(props));
+
+        // anything that needs the whole table loads it, keeping the instances handed out
+        assertEquals(1000, props.size());
+        assertFalse(isPending(props));
+        assertTrue(value == props.getProperty("key.17"));
+        assertEquals(17, props.getInt("key.17"));
+
+        props.load(file);
+        props.setString("key.5", "changed");
+        assertEquals("changed", props.getProperty("key.5"));
+        assertEquals(6, props.getInt("key.6"));
+        assertEquals(1000, props.prefixKeys("key.").size());
+    }
+
+
+    @Test
+    void loadFileOverridesAndFeedsOverlays() throws Exception {
+        File first = writeFile("first.properties", "a=1\nb=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        File second = writeFile("second.properties", "b=2\nc=2\n".getBytes(StandardCharsets.ISO_8859_1));
+
+        BasicProperties props = new BasicProperties();
+        props.setString("a", "0");
+        props.setString("z", "0");
+        props.load(first);
+        props.load(second);
+
+        BasicProperties overlay = props.createOverlay();
+        overlay.setString("c", "3");
+        assertEquals(1, overlay.getInt("a"));
+        assertEquals(2, overlay.getInt("b"));
+        assertEquals(3, overlay.getInt("c"));
+        assertEquals(2, props.getInt("c"));
+        assertTrue(isPending(props));
+
+        assertEquals(new TreeSet<String>(Arrays.asList("a", "b", "c", "z")), overlay.stringPropertyNames());
+        assertEquals("0", props.getProperty("z"));
+        assertEquals(4, props.size());
+
+        BasicProperties copy = new BasicProperties();
+        copy.load(second);
+        assertNotNull(copy.clone());
+        assertEquals(copy, copy.clone());
+    }
+
+
+    @Test
+    void loadFileIgnoresPendingAfterClear() throws Exception {
+        File file = writeFile("cleared.properties", "a=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        BasicProperties props = new BasicProperties();
+        props.load(file);
+
+        props.clear();
+        assertTrue(props.isEmpty());
+        assertNull(props.getProperty("a"));
+        assertEquals(0, props.size());
+    }
+
+
+    // The typed getters as they were before the parsed value cache, given the raw value
+
+    private static Color originalGetColor(String value) {
+        int[] rgb = new int[3];
+        int index = 0;
+
+        if ((value == null) || (value.length() < 1)) {
+            return null;
+        } else {
+            StringTokenizer tokens = new StringTokenizer(value, ",");
+            while (tokens.hasMoreElements()) {
+                try {
+                    rgb[index] = Integer.parseInt(tokens.nextToken());
+                } catch (NumberFormatException nfe) {
+                }
+                index++;
+            }
+
+            return (new Color(rgb[0], rgb[1], rgb[2]));
+        }
+    }
+
+
+    private static Font originalGetFont(String value) {
+        if (value == null) return null;
+
+        StringTokenizer tokens = new StringTokenizer(value, ",");
+        if (tokens.countTokens() < 3) return null;
+
+        String name = tokens.nextToken().trim();
+        String style = tokens.nextToken().trim();
+        String size = tokens.nextToken().trim();
+
+        int iStyle = 0;
+        try {
+            iStyle = Integer.parseInt(style);
+        } catch (Exception e) {
+            return null;
+        }
+
+        int iSize = 0;
+        try {
+            iSize = Integer.parseInt(size);
+        } catch (Exception e) {
+            return null;
+        }
+
+        return new Font(name, iStyle, iSize);
+    }
+
+
+    private static int[] originalGetIntArray(String val) {
+        int[] result = null;
+        if (val != null) {
+            StringTokenizer tokens = new StringTokenizer(val, ",");
+            result = new int[tokens.countTokens()];
+
+            for (int index = 0; tokens.hasMoreTokens(); index++) {
+                result[index] = 0;
+                try {
+                    result[index] = Integer.parseInt(tokens.nextToken());
+                } catch (NumberFormatException pe) {
+                }
+            }
+        }
+        return result;
+    }
+
+
+    private static String[] originalGetStringArray(String val) {
+        String[] result = null;
+        if (val != null) {
+            StringTokenizer tokens = new StringTokenizer(val, ",");
+            result = new String[tokens.countTokens()];
+
+            for (int index = 0; tokens.hasMoreTokens(); index++) {
+                result[index] = tokens.nextToken();
+            }
+        }
+        return result;
+    }
+
+
+    private static InetAddress originalGetInetAddress(String result) throws Exception {
+        try {
+            return InetAddress.getByName(result);
+        } catch (java.net.UnknownHostException uhe) {
+            return null;
+        }
+    }
+
+
+    private static IpAddress originalGetIpAddress(String result) {
+        try {
+            return (new IpAddress(result));
+        } catch (java.text.ParseException pe) {
+        }
+        return null;
+    }
+
+
+    /**
+     * Describes a getter's result, or the exception it threw
+     */
+    private static String outcome(Callable<Object> getter) {
+        Object result;
+        try {
+            result = getter.call();
+        } catch (Exception e) {
+            return "threw " + e.getClass().getName();
+        }
+
+        if (result instanceof int[]) {
+            return Arrays.toString((int[]) result);
+        } else if (result instanceof Object[]) {
+            return Arrays.toString((Object[]) result);
+        } else if (result instanceof IpAddress) {
+            return "IpAddress " + Arrays.toString(((IpAddress) result).getBytes());
+        }
+        return String.valueOf(result);
+    }
+
+
+    private static void assertTypedValuesMatchOriginal(BasicProperties props, String value, String step) {
+        for (int read = 0; read < 2; read++) {
+            String message = step + ", read " + read;
+            assertEquals(outcome(() -> originalGetColor(value)), outcome(() -> props.getColor("typed")), message);
+            assertEquals(outcome(() -> originalGetFont(value)), outcome(() -> props.getFont("typed")), message);
+            assertEquals(outcome(() -> originalGetIntArray(value)), outcome(() -> props.getIntArray("typed")), message);
+            assertEquals(outcome(() -> originalGetStringArray(value)), outcome(() -> props.getStringArray("typed")), message);
+            assertEquals(outcome(() -> originalGetIpAddress(value)), outcome(() -> props.getIpAddress("typed")), message);
+            if ((value == null) || value.isEmpty() || Character.isDigit(value.charAt(0)) || value.startsWith("::")) {
+                // literal addresses only, so no name lookups
+                assertEquals(outcome(() -> originalGetInetAddress(value)), outcome(() -> props.getInetAddress("typed")), message);
+            }
+        }
+    }
+
+
+    @Test
+    void typedValuesMatchOriginalGetters() throws Exception {
+        String[] values = {
+                null, "", "1,2,3", "255,0,128", " 1, 2,3", "1,2", "1,,2", ",,,", "1,2,3,4", "300,0,0", "a,b,c",
+                "Dialog,1,12", " Serif , 2 , 14 ", "Dialog,x,12", "Dialog,1", "Dialog,1,12,extra",
+                "10.1.2.3", "192.168.0.255", "::1", "10.1.2", "256.1.1.1", "1.2.3.4.5", "-1,-2,-3", "2147483648,1,1",
+        };
+
+        BasicProperties props = new BasicProperties();
+        for (int i = 0; i < values.length * 3; i++) {
+            String value = values[i % values.length];
+            String step = "value " + value + ", change " + (i / values.length);
+
+            // change the raw value a different way on each pass, with typed reads cached in between
+            if (value == null) {
+                props.remove("typed");
+            } else if (i < values.length) {
+                props.setString("typed", value);
+            } else if (i < values.length * 2) {
+                props.put("typed", value);
+            } else {
+                Properties source = new Properties();
+                source.setProperty("typed", value);
+                props.putAll(source);
+            }
+            assertTypedValuesMatchOriginal(props, value, step);
+        }
+    }
+
+
+    @Test
+    void cachedTypedValuesAreNotShared() {
+        BasicProperties props = new BasicProperties();
+        props.setString("ints", "1,2,3");
+        props.setString("strings", "a,b");
+        props.setString("ip", "10.1.2.3");
+
+        props.getIntArray("ints")[0] = 99;
+        props.getStringArray("strings")[0] = "changed";
+        props.getIpAddress("ip").getBytes()[0] = 99;
+
+        assertArrayEquals(new int[]{1, 2, 3}, props.getIntArray("ints"));
+        assertEquals("[a, b]", Arrays.toString(props.getStringArray("strings")));
+        assertEquals("IpAddress [10, 1, 2, 3]", outcome(() -> props.getIpAddress("ip")));
+
+        int[] stored = {4, 5};
+        props.setIntArray("ints", stored);
+        stored[0] = 99;
+        assertArrayEquals(new int[]{4, 5}, props.getIntArray("ints"));
+    }
+
+
+    @Test
+    void typedValuesFollowBulkChanges() throws Exception {
+        BasicProperties props = new BasicProperties();
+        props.setString("ui.color", "1,2,3");
+        props.setString("ui.font", "Dialog,1,12");
+        props.setString("other", "4,5");
+        assertEquals(new Color(1, 2, 3), props.getColor("ui.color"));
+        assertEquals(new Font("Dialog", 1, 12), props.getFont("ui.font"));
+        assertArrayEquals(new int[]{4, 5}, props.getIntArray("other"));
+
+        File file = writeFile("typed.properties", "ui.color=7,8,9\nother=6\n".getBytes(StandardCharsets.ISO_8859_1));
+        props.load(file);
+        assertEquals(new Color(7, 8, 9), props.getColor("ui.color"));
+        assertArrayEquals(new int[]{6}, props.getIntArray("other"));
+
+        props.load(new ByteArrayInputStream("ui.color=10,11,12\n".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(new Color(10, 11, 12), props.getColor("ui.color"));
+
+        props.removePrefix("ui.");
+        assertNull(props.getColor("ui.color"));
+        assertNull(props.getFont("ui.font"));
+
+        BasicProperties target = new BasicProperties();
+        target.setString("other", "1");
+        assertArrayEquals(new int[]{1}, target.getIntArray("other"));
+        props.mergeInto(target);
+        assertArrayEquals(new int[]{6}, target.getIntArray("other"));
+    }
+
+
+    /**
+     * Describes every getter's result for a key, for comparing two instances
+     */
+    private static String describe(BasicProperties props, String key) {
+        return outcome(() -> props.getProperty(key))
+                + " | " + outcome(() -> props.getString(key, "none"))
+                + " | " + outcome(() -> props.getInt(key))
+                + " | " + outcome(() -> props.getLong(key))
+                + " | " + outcome(() -> props.getFloat(key))
+                + " | " + outcome(() -> props.getBoolean(key))
+                + " | " + outcome(() -> props.getIntArray(key))
+                + " | " + outcome(() -> props.getStringArray(key))
+                + " | " + outcome(() -> props.getColor(key));
+    }
+
+
+    private static void assertSameLookups(BasicProperties expected, BasicProperties actual, String step) {
+        assertEquals(expected.stringPropertyNames(), actual.stringPropertyNames(), step);
+        for (String key : expected.stringPropertyNames()) {
+            for (int read = 0; read < 2; read++) {
+                assertEquals(describe(expected, key), describe(actual, key), step + ", " + key + ", read " + read);
+            }
+        }
+        assertEquals(describe(expected, "missing"), describe(actual, "missing"), step);
+    }
+
+
+    @Test
+    void overlaysMatchCopiedTables() throws Exception {
+        BasicProperties defaults = new BasicProperties();
+        defaults.setInt("window.width", 640);
+        defaults.setString("window.color", "255,255,255");
+        defaults.setBoolean("window.visible", true);
+        defaults.setString("title", "Untitled");
+        defaults.setString("ratios", "1,2,3");
+        defaults.setLong("limit", 10000000000L);
+
+        BasicProperties site = defaults.createOverlay();
+        site.setInt("window.width", 800);
+        site.setString("ratios", "4,5");
+        site.setString("site.name", "north");
+
+        BasicProperties user = site.createOverlay();
+        user.setString("window.color", "10,20,30");
+        user.setFloat("scale", 1.5f);
+        user.setString("ratios", "not numbers");
+
+        // the same stack built by copying, as it had to be before overlays
+        BasicProperties copiedSite = defaults.makeClone();
+        copiedSite.setInt("window.width", 800);
+        copiedSite.setString("ratios", "4,5");
+        copiedSite.setString("site.name", "north");
+        BasicProperties copiedUser = copiedSite.makeClone();
+        copiedUser.setString("window.color", "10,20,30");
+        copiedUser.setFloat("scale", 1.5f);
+        copiedUser.setString("ratios", "not numbers");
+
+        assertSameLookups(copiedSite, site, "site");
+        assertSameLookups(copiedUser, user, "user");
+        assertEquals(copiedUser, user.flatten());
+        assertNull(user.flatten().getDefaults());
+
+        assertTrue(user.getDefaults() == site);
+        assertTrue(site.getDefaults() == defaults);
+        assertNull(defaults.getDefaults());
+
+        assertTrue(user.isOverridden("window.color"));
+        assertTrue(user.isOverridden("ratios"));
+        assertFalse(user.isOverridden("window.width"));
+        assertFalse(user.isOverridden("missing"));
+        assertTrue(site.isOverridden("window.width"));
+        assertFalse(site.isOverridden("scale"));
+
+        // changes beneath an overlay show through unless the overlay overrides them
+        defaults.setInt("window.height", 480);
+        defaults.setString("title", "Renamed");
+        site.setInt("window.width", 1024);
+        site.setString("window.color", "1,1,1");
+        copiedUser.setInt("window.height", 480);
+        copiedUser.setString("title", "Renamed");
+        copiedUser.setInt("window.width", 1024);
+        assertSameLookups(copiedUser, user, "after base changes");
+
+        user.remove("window.color");
+        copiedUser.setString("window.color", "1,1,1");
+        assertSameLookups(copiedUser, user, "after removing an override");
+    }
+
+
+    @Test
+    void overlayStoresOnlyItsOwnValues() throws Exception {
+        BasicProperties defaults = sample();
+        BasicProperties overlay = defaults.createOverlay();
+        overlay.setString("name", "changed");
+        overlay.setInt("added", 7);
+
+        File file = new File(tempDir, "overlay.properties");
+        assertTrue(overlay.store(file.getPath(), "overlay"));
+
+        BasicProperties stored = new BasicProperties(file);
+        assertEquals(new TreeSet<String>(Arrays.asList("added", "name")), stored.stringPropertyNames());
+        assertEquals("changed", stored.getProperty("name"));
+        assertEquals(7, stored.getInt("added"));
+
+        // loading the deltas over the defaults gives the overlay back
+        BasicProperties restored = defaults.createOverlay();
+        restored.load(file);
+        assertSameLookups(overlay.flatten(), restored, "restored");
+        assertEquals(overlay.flatten(), restored.flatten());
+    }
+
+
+    // The numeric getters as they were before the parsed value slots, given the raw value
+
+    private static int originalGetInt(String result, int defaultValue) {
+        if (result == null || result.equals("")) {
+            return defaultValue;
+        } else {
+            try {
+                return Integer.valueOf(result).intValue();
+            } catch (NumberFormatException e) {
+                if (result.equals("true")) {
+                    return 1;
+                }
+                if (result.equals("false")) {
+                    return 0;
+                }
+                return defaultValue;
+            }
+        }
+    }
+
+
+    private static long originalGetLong(String result, long defaultValue) {
+        if (result == null || result.equals("")) {
+            return defaultValue;
+        } else {
+            try {
+                return Long.valueOf(result).longValue();
+            } catch (NumberFormatException e) {
+                if (result.equals("true")) {
+                    return 1;
+                }
+                if (result.equals("false")) {
+                    return 0;
+                }
+                return defaultValue;
+            }
+        }
+    }
+
+
+    private static float originalGetFloat(String result, float defaultValue) {
+        if (result == null || result.equals("")) {
+            return defaultValue;
+        } else {
+            try {
+                return Float.valueOf(result).floatValue();
+            } catch (NumberFormatException e) {
+            }
+        }
+        return defaultValue;
+    }
+
+
+    private static short originalGetShort(String result, short defaultValue) {
+        if (result == null) {
+            return defaultValue;
+        } else {
+            return Short.valueOf(result).shortValue();
+        }
+    }
+
+
+    private static byte originalGetByte(String result, byte defaultValue) {
+        if (result == null) {
+            return defaultValue;
+        } else {
+            return Byte.valueOf(result).byteValue();
+        }
+    }
+
+
+    private static void assertNumbersMatchOriginal(BasicProperties props, String key, String step) {
+        String value = props.getProperty(key);
+        for (int read = 0; read < 2; read++) {
+            String message = step + " [" + value + "], read " + read;
+            assertEquals(outcome(() -> originalGetInt(value, 0)), outcome(() -> props.getInt(key)), message);
+            assertEquals(outcome(() -> originalGetInt(value, -5)), outcome(() -> props.getInt(key, -5)), message);
+            assertEquals(outcome(() -> originalGetLong(value, 0)), outcome(() -> props.getLong(key)), message);
+            assertEquals(outcome(() -> originalGetLong(value, -5)), outcome(() -> props.getLong(key, -5)), message);
+            assertEquals(outcome(() -> originalGetFloat(value, 0.0f)), outcome(() -> props.getFloat(key)), message);
+            assertEquals(outcome(() -> originalGetFloat(value, -5.5f)), outcome(() -> props.getFloat(key, -5.5f)), message);
+            assertEquals(outcome(() -> originalGetShort(value, (short) 0)), outcome(() -> props.getShort(key)), message);
+            assertEquals(outcome(() -> originalGetShort(value, (short) -5)), outcome(() -> props.getShort(key, (short) -5)), message);
+            assertEquals(outcome(() -> originalGetByte(value, (byte) 0)), outcome(() -> props.getByte(key)), message);
+            assertEquals(outcome(() -> originalGetByte(value, (byte) -5)), outcome(() -> props.getByte(key, (byte) -5)), message);
+        }
+    }
+
+
+    @Test
+    void numbersMatchOriginalGetters() {
+        String[] values = {
+                "", "0", "-0", "1", "-1", "+7", "007", " 5", "5 ", "0x10", "1_000", "abc",
+                "true", "false", "TRUE", "yes",
+                "127", "128", "-128", "-129", "32767", "32768", "-32769",
+                "2147483647", "2147483648", "-2147483648", "-2147483649",
+                "9223372036854775807", "9223372036854775808", "-9223372036854775808",
+                "1.5", "-0.0", ".5", "5.", "1e3", "1E-3", "1.0f", "0.1d", "0x1p3",
+                "3.4028235E38", "1e39", "1e-50", "NaN", "Infinity", "-Infinity", "infinity",
+                "\u0661\u0662", "\uff13"
+        };
+
+        BasicProperties props = new BasicProperties();
+        assertNumbersMatchOriginal(props, "number", "missing");
+        for (String value : values) {
+            props.setString("number", value);
+            assertNumbersMatchOriginal(props, "number", "setString");
+            props.put("number", value);
+            assertNumbersMatchOriginal(props, "number", "put");
+        }
+
+        // the setters store first and then parse the old value, which may throw
+        Random random = new Random(10);
+        for (int i = 0; i < 2000; i++) {
+            String old = props.getProperty("number");
+            String expected;
+            String actual;
+            switch (i % 5) {
+                case 0:
+                    int intValue = random.nextInt();
+                    expected = outcome(() -> (old == null) ? intValue : Integer.valueOf(old));
+                    actual = outcome(() -> props.setInt("number", intValue));
+                    break;
+                case 1:
+                    int smallValue = random.nextInt(200) - 100;
+                    expected = outcome(() -> (old == null) ? smallValue : Integer.valueOf(old));
+                    actual = outcome(() -> props.setInt("number", smallValue));
+                    break;
+                case 2:
+                    long longValue = random.nextLong();
+                    expected = outcome(() -> (old == null) ? longValue : Long.valueOf(old));
+                    actual = outcome(() -> props.setLong("number", longValue));
+                    break;
+                case 3:
+                    float floatValue = Float.intBitsToFloat(random.nextInt());
+                    expected = outcome(() -> (old == null) ? floatValue : Float.valueOf(old));
+                    actual = outcome(() -> props.setFloat("number", floatValue));
+                    break;
+                default:
+                    float eighths = random.nextInt(2000) / 8.0f;
+                    expected = outcome(() -> (old == null) ? eighths : Float.valueOf(old));
+                    actual = outcome(() -> props.setFloat("number", eighths));
+                    break;
+            }
+            assertEquals(expected, actual, "typed set " + i + " over [" + old + "]");
+            assertNumbersMatchOriginal(props, "number", "typed set " + i);
+        }
+
+        // a typed set followed by a plain one must not leave the typed value behind
+        props.remove("number");
+        props.setInt("number", 12);
+        assertEquals(12, props.getInt("number"));
+        props.setString("number", "13");
+        assertNumbersMatchOriginal(props, "number", "setString after setInt");
+        props.setLong("number", 1L << 40);
+        assertEquals(1L << 40, props.getLong("number"));
+        props.put("number", "true");
+        assertNumbersMatchOriginal(props, "number", "put after setLong");
+        assertThrows(NumberFormatException.class, () -> props.setFloat("number", 2.5f));
+        assertEquals(2.5f, props.getFloat("number"));
+        props.remove("number");
+        assertNumbersMatchOriginal(props, "number", "removed after setFloat");
+
+        BasicProperties overlay = props.createOverlay();
+        props.setInt("number", 99);
+        assertNumbersMatchOriginal(overlay, "number", "through an overlay");
+        props.setString("number", "1.25");
+        assertNumbersMatchOriginal(overlay, "number", "base changed under an overlay");
+    }
+}
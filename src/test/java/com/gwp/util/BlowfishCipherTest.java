@@ -0,0 +1,264 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.BadPaddingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+public class BlowfishCipherTest {
+
+    private static final byte[] KEY = "a test key for the cipher".getBytes();
+    private static final byte[] IV = {1, 2, 3, 4, 5, 6, 7, (byte) 0xfe};
+    private static final int[] LENGTHS = {0, 1, 7, 8, 9, 15, 16, 17, 63, 64, 65, 1000, 8191, 8192, 8193, 50000};
+
+
+    private static Blowfish engine() {
+        Blowfish engine = new Blowfish();
+        engine.initialize(KEY, KEY.length);
+        return engine;
+    }
+
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+
+    /**
+     * Runs the whole input through a cipher in pieces of random size
+     */
+    private static byte[] run(BlowfishCipher cipher, byte[] input, Random chunks) throws BadPaddingException {
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int written = 0;
+        int offset = 0;
+
+        while (offset < input.length) {
+            int count = Math.min(input.length - offset, chunks.nextInt(20));
+            written += cipher.update(input, offset, count, output, written);
+            offset += count;
+        }
+        written += cipher.doFinal(output, written);
+
+        return Arrays.copyOf(output, written);
+    }
+
+
+    /**
+     * PKCS#5 pads the input
+     */
+    private static byte[] pad(byte[] input) {
+        int pad = 8 - (input.length % 8);
+        byte[] padded = Arrays.copyOf(input, input.length + pad);
+        Arrays.fill(padded, input.length, padded.length, (byte) pad);
+        return padded;
+    }
+
+
+    @Test
+    void ecbMatchesBlockEncryption() throws Exception {
+        Blowfish engine = engine();
+
+        for (int length : LENGTHS) {
+            byte[] input = data(length);
+            byte[] expected = pad(input);
+            for (int i = 0; i < expected.length; i += 8) {
+                engine.encryptBlock(expected, i);
+            }
+
+            byte[] encrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.ECB, null, true), input, new Random(1));
+            assertArrayEquals(expected, encrypted, "length " + length);
+
+            byte[] decrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.ECB, null, false), encrypted, new Random(2));
+            assertArrayEquals(input, decrypted, "length " + length);
+        }
+    }
+
+
+    @Test
+    void cbcMatchesChainedBlocks() throws Exception {
+        Blowfish engine = engine();
+
+        for (int length : LENGTHS) {
+            byte[] input = data(length);
+            byte[] expected = pad(input);
+            byte[] chain = IV.clone();
+            for (int i = 0; i < expected.length; i += 8) {
+                for (int j = 0; j < 8; j++) {
+                    expected[i + j] ^= chain[j];
+                }
+                engine.encryptBlock(expected, i);
+                chain = Arrays.copyOfRange(expected, i, i + 8);
+            }
+
+            byte[] encrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, true), input, new Random(3));
+            assertArrayEquals(expected, encrypted, "length " + length);
+
+            byte[] decrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, false), encrypted, new Random(4));
+            assertArrayEquals(input, decrypted, "length " + length);
+        }
+    }
+
+
+    @Test
+    void ctrMatchesCryptCTR() throws Exception {
+        Blowfish engine = engine();
+
+        for (int length : LENGTHS) {
+            byte[] input = data(length);
+            byte[] expected = new byte[length];
+            engine.cryptCTR(IV, input, 0, expected, 0, length);
+
+            byte[] encrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CTR, IV, true), input, new Random(5));
+            assertArrayEquals(expected, encrypted, "length " + length);
+
+            byte[] decrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CTR, IV, false), encrypted, new Random(6));
+            assertArrayEquals(input, decrypted, "length " + length);
+        }
+    }
+
+
+    @Test
+    void counterCarriesAcrossBytes() {
+        byte[] counter = {0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff};
+        BlowfishCipher.incrementCounter(counter);
+        assertArrayEquals(new byte[]{0, 0, 0, 0, 0, 1, 0, 0}, counter);
+
+        counter = new byte[]{-1, -1, -1, -1, -1, -1, -1, -1};
+        BlowfishCipher.incrementCounter(counter);
+        assertArrayEquals(new byte[8], counter);
+    }
+
+
+    @Test
+    void cipherIsReusableAfterDoFinal() throws Exception {
+        BlowfishCipher cipher = new BlowfishCipher(engine(), BlowfishCipher.Mode.CBC, IV, true);
+        byte[] input = data(100);
+
+        assertArrayEquals(run(cipher, input, new Random(7)), run(cipher, input, new Random(8)));
+    }
+
+
+    @Test
+    void invalidPaddingIsRejected() {
+        Blowfish engine = engine();
+
+        // a block of zeros decrypts to a pad byte of 0
+        byte[] block = new byte[8];
+        engine.encryptBlock(block, 0);
+        BlowfishCipher ecb = new BlowfishCipher(engine, BlowfishCipher.Mode.ECB, null, false);
+        assertThrows(BadPaddingException.class, () -> run(ecb, block, new Random(9)));
+
+        // a pad byte of 3 over bytes that are not all 3
+        byte[] bad = {0, 0, 0, 0, 0, 9, 3, 3};
+        engine.encryptBlock(bad, 0);
+        assertThrows(BadPaddingException.class, () -> run(ecb, bad, new Random(10)));
+
+        // a pad byte larger than the block
+        byte[] large = {9, 9, 9, 9, 9, 9, 9, 9};
+        engine.encryptBlock(large, 0);
+        assertThrows(BadPaddingException.class, () -> run(ecb, large, new Random(11)));
+    }
+
+
+    @Test
+    void partialBlockIsRejected() throws Exception {
+        Blowfish engine = engine();
+        byte[] encrypted = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, true), data(30), new Random(12));
+        byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - 3);
+
+        BlowfishCipher cipher = new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, false);
+        assertThrows(BadPaddingException.class, () -> run(cipher, truncated, new Random(13)));
+    }
+
+
+    @Test
+    void wrongIvLengthIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BlowfishCipher(engine(), BlowfishCipher.Mode.CBC, new byte[7], true));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BlowfishCipher(engine(), BlowfishCipher.Mode.CTR, null, true));
+    }
+
+
+    @Test
+    void streamsRoundTrip() throws Exception {
+        Blowfish engine = engine();
+
+        for (BlowfishCipher.Mode mode : BlowfishCipher.Mode.values()) {
+            for (int length : LENGTHS) {
+                byte[] input = data(length);
+
+                ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+                try (OutputStream out = new BlowfishOutputStream(encrypted, new BlowfishCipher(engine, mode, IV, true))) {
+                    out.write(input, 0, length / 2);
+                    if (length > 0) {
+                        out.write(input[length / 2]);
+                    }
+                    out.write(input, length / 2 + 1, Math.max(0, length - length / 2 - 1));
+                }
+
+                byte[] expected = run(new BlowfishCipher(engine, mode, IV, true), input, new Random(14));
+                assertArrayEquals(expected, encrypted.toByteArray(), mode + " length " + length);
+
+                try (InputStream in = new BlowfishInputStream(new ByteArrayInputStream(encrypted.toByteArray()),
+                        new BlowfishCipher(engine, mode, IV, false))) {
+                    assertArrayEquals(input, in.readAllBytes(), mode + " length " + length);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void streamReportsBadPadding() throws Exception {
+        Blowfish engine = engine();
+        byte[] block = new byte[8];
+        engine.encryptBlock(block, 0);
+
+        InputStream in = new BlowfishInputStream(new ByteArrayInputStream(block),
+                new BlowfishCipher(engine, BlowfishCipher.Mode.ECB, null, false));
+        assertThrows(IOException.class, in::readAllBytes);
+    }
+
+
+    @Test
+    void channelMatchesStream() throws Exception {
+        Blowfish engine = engine();
+        byte[] input = data(20000);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try (BlowfishWritableByteChannel channel = new BlowfishWritableByteChannel(
+                Channels.newChannel(written),
+                new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, true))) {
+            ByteBuffer source = ByteBuffer.wrap(input);
+            while (source.hasRemaining()) {
+                ByteBuffer piece = source.duplicate();
+                piece.limit(Math.min(source.limit(), source.position() + 777));
+                assertEquals(piece.remaining(), channel.write(piece));
+                source.position(piece.position());
+            }
+        }
+
+        byte[] expected = run(new BlowfishCipher(engine, BlowfishCipher.Mode.CBC, IV, true), input, new Random(15));
+        assertArrayEquals(expected, written.toByteArray());
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class BlowfishKeyCacheTest {
+
+    private static byte[] key(int seed, int length) {
+        byte[] key = new byte[length];
+        new Random(seed).nextBytes(key);
+        return key;
+    }
+
+
+    private static byte[] encrypt(Blowfish agent, byte[] data) {
+        byte[] output = new byte[agent.getOutputLength(data.length)];
+        agent.encrypt(data, 0, output, 0, data.length);
+        return output;
+    }
+
+
+    private static Blowfish uncached(byte[] key, int length) {
+        Blowfish agent = new Blowfish();
+        agent.initialize(key, length);
+        return agent;
+    }
+
+
+    @Test
+    void countsHitsAndMisses() {
+        BlowfishKeyCache cache = new BlowfishKeyCache();
+        byte[] key = key(1, 16);
+
+        Blowfish first = cache.get(key);
+        // the cache is keyed by contents, not by array identity
+        Blowfish second = cache.get(key.clone());
+
+        assertTrue(first == second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertFalse(first == cache.get(key));
+    }
+
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        BlowfishKeyCache cache = new BlowfishKeyCache(2);
+        byte[] a = key(1, 8);
+        byte[] b = key(2, 8);
+        byte[] c = key(3, 8);
+
+        Blowfish cachedA = cache.get(a);
+        cache.get(b);
+        cache.get(a);
+        cache.get(c);
+
+        // b was used least recently, so it made room for c
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cachedA == cache.get(a));
+        assertEquals(3, cache.getMissCount());
+
+        cache.get(b);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+
+    @Test
+    void unlimitedCacheKeepsEverything() {
+        BlowfishKeyCache cache = new BlowfishKeyCache(0);
+        for (int i = 0; i < 300; i++) {
+            cache.get(key(i, 8));
+        }
+        assertEquals(300, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        assertThrows(IllegalArgumentException.class, () -> new BlowfishKeyCache(-1));
+    }
+
+
+    @Test
+    void keysAreIsolated() {
+        BlowfishKeyCache cache = new BlowfishKeyCache(4);
+        Random random = new Random(14);
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+
+        for (int i = 0; i < 50; i++) {
+            byte[] key = key(i % 7, 4 + (i % 53));
+            int length = 1 + (i % key.length);
+
+            // matches a freshly keyed engine, whatever else is cached
+            assertArrayEquals(encrypt(uncached(key, length), data), encrypt(cache.get(key, length), data));
+        }
+
+        // a key and its prefix are different keys
+        byte[] key = key(99, 32);
+        assertFalse(Arrays.equals(encrypt(cache.get(key, 32), data), encrypt(cache.get(key, 16), data)));
+    }
+
+
+    @Test
+    void cachedInstancesCannotBeRekeyed() {
+        BlowfishKeyCache cache = new BlowfishKeyCache();
+        byte[] key = key(5, 32);
+        byte[] data = "sixteen byte msg".getBytes();
+        Blowfish agent = cache.get(key);
+        byte[] expected = encrypt(agent, data);
+
+        assertThrows(UnsupportedOperationException.class, () -> agent.initialize(key(6, 32), 32));
+        assertArrayEquals(expected, encrypt(cache.get(key), data));
+    }
+
+
+    @Test
+    void newCipherUsesCachedSchedule() throws Exception {
+        BlowfishKeyCache cache = new BlowfishKeyCache();
+        byte[] key = key(7, 24);
+        byte[] iv = key(8, 8);
+        byte[] data = new byte[777];
+        new Random(14).nextBytes(data);
+
+        BlowfishCipher encrypt = cache.newCipher(key, BlowfishCipher.Mode.CBC, iv, true);
+        byte[] encrypted = new byte[encrypt.getOutputSize(data.length)];
+        int length = encrypt.update(data, 0, data.length, encrypted, 0);
+        length += encrypt.doFinal(encrypted, length);
+
+        BlowfishCipher reference = new BlowfishCipher(uncached(key, key.length), BlowfishCipher.Mode.CBC, iv, false);
+        byte[] decrypted = new byte[reference.getOutputSize(length)];
+        int count = reference.update(encrypted, 0, length, decrypted, 0);
+        count += reference.doFinal(decrypted, count);
+
+        assertArrayEquals(data, Arrays.copyOf(decrypted, count));
+        assertEquals(1, cache.getMissCount());
+    }
+
+
+    @Test
+    void concurrentCallersShareOneSchedule() throws InterruptedException {
+        BlowfishKeyCache cache = new BlowfishKeyCache();
+        byte[] key = key(9, 32);
+        byte[] data = new byte[64];
+        byte[] expected = encrypt(uncached(key, key.length), data);
+        Blowfish[] results = new Blowfish[8];
+
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> results[index] = cache.get(key));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Blowfish result : results) {
+            assertTrue(result == cache.get(key));
+            assertArrayEquals(expected, encrypt(result, data));
+        }
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+public class BlowfishTest {
+
+    private static final byte[] KEY = "another test key".getBytes();
+
+    // SHA-256 of the output of the original engine for the cases in matchesOriginalEngine
+    private static final String ORIGINAL_ENCRYPT_DIGEST =
+            "0d16fd24119ba613e94400c1cdccef02a93d4e8cc9cb23a1be6b0f0eb428910a";
+    private static final String ORIGINAL_DECRYPT_DIGEST =
+            "cf53f2e1af542ba5125ba33ba89f9bbbf8faf5fac810588aa0f3ba9030520873";
+
+    // Below, at and well above the parallel threshold, whole and partial blocks
+    private static final int[] BULK_LENGTHS = {0, 5, 8, 4096, 65535, 65536, 65541, 1 << 20, (1 << 20) + 3};
+
+
+    private static Blowfish engine() {
+        Blowfish engine = new Blowfish();
+        engine.initialize(KEY, KEY.length);
+        return engine;
+    }
+
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+
+    @Test
+    void encryptParallelMatchesEncrypt() {
+        Blowfish engine = engine();
+
+        for (int length : BULK_LENGTHS) {
+            byte[] input = data(length);
+            byte[] expected = new byte[engine.getOutputLength(length)];
+            int expectedLength = engine.encrypt(input, 0, expected, 0, length);
+
+            byte[] output = new byte[expected.length];
+            assertEquals(expectedLength, engine.encryptParallel(input, 0, output, 0, length), "length " + length);
+            assertArrayEquals(expected, output, "length " + length);
+        }
+    }
+
+
+    @Test
+    void decryptParallelMatchesDecrypt() {
+        Blowfish engine = engine();
+
+        for (int length : BULK_LENGTHS) {
+            byte[] input = data(length & ~7);
+            byte[] expected = new byte[input.length];
+            engine.decrypt(input, 0, expected, 0, input.length);
+
+            byte[] output = new byte[input.length];
+            engine.decryptParallel(input, 0, output, 0, input.length);
+            assertArrayEquals(expected, output, "length " + length);
+        }
+    }
+
+
+    @Test
+    void parallelRoundTripInPlace() {
+        Blowfish engine = engine();
+        byte[] input = data(300000);
+        byte[] buffer = Arrays.copyOf(input, engine.getOutputLength(input.length));
+
+        int length = engine.encryptParallel(buffer, 0, buffer, 0, input.length);
+        engine.decryptParallel(buffer, 0, buffer, 0, length);
+        assertArrayEquals(input, Arrays.copyOf(buffer, input.length));
+    }
+
+
+    @Test
+    void decryptParallelRejectsPartialBlocks() {
+        Blowfish engine = engine();
+        byte[] buffer = new byte[200000];
+
+        assertThrows(IllegalArgumentException.class, () -> engine.decryptParallel(buffer, 0, buffer, 0, 13));
+        assertThrows(IllegalArgumentException.class, () -> engine.decryptParallel(buffer, 0, buffer, 0, 100001));
+    }
+
+
+    @Test
+    void cryptCTRMatchesSequentialKeyStream() {
+        Blowfish engine = engine();
+        byte[] iv = {0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xf0};
+
+        for (int length : BULK_LENGTHS) {
+            byte[] input = data(length);
+
+            // one block of key stream per counter value, big-endian counter
+            byte[] expected = new byte[length];
+            byte[] counter = iv.clone();
+            for (int i = 0; i < length; i += 8) {
+                byte[] keyStream = counter.clone();
+                engine.encryptBlock(keyStream, 0);
+                for (int j = i; j < Math.min(length, i + 8); j++) {
+                    expected[j] = (byte) (input[j] ^ keyStream[j - i]);
+                }
+                BlowfishCipher.incrementCounter(counter);
+            }
+
+            byte[] output = new byte[length];
+            engine.cryptCTR(iv, input, 0, output, 0, length);
+            assertArrayEquals(expected, output, "length " + length);
+
+            engine.cryptCTR(iv, output, 0, output, 0, length);
+            assertArrayEquals(input, output, "length " + length);
+        }
+    }
+
+
+    @Test
+    void cryptCTRRejectsBadIv() {
+        Blowfish engine = engine();
+        byte[] buffer = new byte[16];
+
+        assertThrows(IllegalArgumentException.class, () -> engine.cryptCTR(new byte[4], buffer, 0, buffer, 0, 16));
+        assertThrows(IllegalArgumentException.class, () -> engine.cryptCTR(null, buffer, 0, buffer, 0, 16));
+    }
+
+
+    @Test
+    void matchesOriginalEngineBlocks() {
+        Blowfish engine = new Blowfish();
+        byte[] key = "gwputils".getBytes();
+        engine.initialize(key, key.length);
+        byte[] block = HexFormat.of().parseHex("0001020304050607");
+        engine.encryptBlock(block, 0);
+        assertEquals("169f5ae127f8dc95", HexFormat.of().formatHex(block));
+
+        key = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRST".getBytes();
+        engine.initialize(key, key.length);
+        block = "ABCDEFGH".getBytes();
+        engine.encryptBlock(block, 0);
+        assertEquals("5047bf54aeff128d", HexFormat.of().formatHex(block));
+
+        engine.decryptBlock(block, 0);
+        assertArrayEquals("ABCDEFGH".getBytes(), block);
+    }
+
+
+    /**
+     * Encrypts and decrypts random data under 200 random keys of every
+     * length, and compares digests of the results with those the original
+     * engine produced, so the output stays byte-for-byte compatible
+     */
+    @Test
+    void matchesOriginalEngine() throws Exception {
+        MessageDigest encrypted = MessageDigest.getInstance("SHA-256");
+        MessageDigest decrypted = MessageDigest.getInstance("SHA-256");
+
+        for (int i = 0; i < 200; i++) {
+            Random random = new Random(i);
+            byte[] key = new byte[1 + random.nextInt(56)];
+            random.nextBytes(key);
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+
+            Blowfish engine = new Blowfish();
+            engine.initialize(key, key.length);
+
+            byte[] output = new byte[engine.getOutputLength(data.length)];
+            engine.encrypt(data, 0, output, 0, data.length);
+            encrypted.update(output);
+
+            byte[] plain = new byte[output.length];
+            engine.decrypt(output, 0, plain, 0, output.length);
+            assertArrayEquals(data, Arrays.copyOf(plain, data.length), "case " + i);
+
+            byte[] cipher = new byte[data.length & ~7];
+            random.nextBytes(cipher);
+            plain = new byte[cipher.length];
+            engine.decrypt(cipher, 0, plain, 0, cipher.length);
+            decrypted.update(plain);
+        }
+
+        assertEquals(ORIGINAL_ENCRYPT_DIGEST, HexFormat.of().formatHex(encrypted.digest()));
+        assertEquals(ORIGINAL_DECRYPT_DIGEST, HexFormat.of().formatHex(decrypted.digest()));
+    }
+
+
+    /**
+     * Runs the cases of matchesOriginalEngine through the ByteBuffer
+     * overloads, alternating heap and direct buffers, and checks the same
+     * digests
+     */
+    @Test
+    void byteBuffersMatchOriginalEngine() throws Exception {
+        MessageDigest encrypted = MessageDigest.getInstance("SHA-256");
+        MessageDigest decrypted = MessageDigest.getInstance("SHA-256");
+
+        for (int i = 0; i < 200; i++) {
+            Random random = new Random(i);
+            byte[] key = new byte[1 + random.nextInt(56)];
+            random.nextBytes(key);
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+
+            Blowfish engine = new Blowfish();
+            engine.initialize(key, key.length);
+            boolean direct = (i & 1) != 0;
+
+            ByteBuffer input = buffer(data, direct);
+            ByteBuffer output = direct ? ByteBuffer.allocateDirect(engine.getOutputLength(data.length))
+                    : ByteBuffer.allocate(engine.getOutputLength(data.length));
+            assertEquals(output.capacity(), engine.encrypt(input, output), "case " + i);
+            assertFalse(input.hasRemaining(), "case " + i);
+            assertFalse(output.hasRemaining(), "case " + i);
+            output.flip();
+            encrypted.update(output.duplicate());
+
+            ByteBuffer plain = ByteBuffer.allocate(output.remaining());
+            engine.decrypt(output, plain);
+            assertArrayEquals(data, Arrays.copyOf(plain.array(), data.length), "case " + i);
+
+            byte[] cipher = new byte[data.length & ~7];
+            random.nextBytes(cipher);
+            input = buffer(cipher, direct);
+            engine.decrypt(input, input);
+            input.flip();
+            decrypted.update(input);
+        }
+
+        assertEquals(ORIGINAL_ENCRYPT_DIGEST, HexFormat.of().formatHex(encrypted.digest()));
+        assertEquals(ORIGINAL_DECRYPT_DIGEST, HexFormat.of().formatHex(decrypted.digest()));
+    }
+
+
+    private static ByteBuffer buffer(byte[] data, boolean direct) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+
+
+    @Test
+    void byteBuffersMatchArrays() {
+        Blowfish engine = engine();
+
+        for (int length : new int[]{0, 1, 7, 8, 9, 63, 64, 4099}) {
+            byte[] input = data(length);
+            byte[] expected = new byte[engine.getOutputLength(length)];
+            engine.encrypt(input, 0, expected, 0, length);
+
+            for (boolean direct : new boolean[]{false, true}) {
+                String message = "length " + length + (direct ? ", direct" : ", heap");
+
+                // unaligned positions, big-endian order, bytes either side left alone
+                ByteBuffer in = direct ? ByteBuffer.allocateDirect(length + 5) : ByteBuffer.allocate(length + 5);
+                in.position(3);
+                in.put(input).flip().position(3);
+                in.order(ByteOrder.BIG_ENDIAN);
+                ByteBuffer out = direct ? ByteBuffer.allocateDirect(expected.length + 6) : ByteBuffer.allocate(expected.length + 6);
+                out.put(0, (byte) 0x55).put(expected.length + 1, (byte) 0x66).position(1).limit(expected.length + 1);
+
+                assertEquals(expected.length, engine.encrypt(in, out), message);
+                assertEquals(length + 3, in.position(), message);
+                assertEquals(expected.length + 1, out.position(), message);
+                assertEquals(ByteOrder.BIG_ENDIAN, in.order(), message);
+                out.clear();
+                byte[] actual = new byte[expected.length];
+                out.get(1, actual);
+                assertArrayEquals(expected, actual, message);
+                assertEquals(0x55, out.get(0), message);
+                assertEquals(0x66, out.get(expected.length + 1), message);
+
+                out.position(1).limit(expected.length + 1);
+                ByteBuffer plain = ByteBuffer.allocate(expected.length);
+                assertEquals(expected.length, engine.decrypt(out, plain), message);
+                assertArrayEquals(input, Arrays.copyOf(plain.array(), length), message);
+
+                // in place, padding written past the input's limit
+                ByteBuffer same = direct ? ByteBuffer.allocateDirect(expected.length) : ByteBuffer.allocate(expected.length);
+                same.put(input).flip();
+                ByteBuffer target = same.duplicate().clear();
+                engine.encrypt(same, target);
+                same.clear();
+                actual = new byte[expected.length];
+                same.get(0, actual);
+                assertArrayEquals(expected, actual, message);
+
+                engine.decrypt(same, same.duplicate());
+                same.get(0, actual);
+                assertArrayEquals(input, Arrays.copyOf(actual, length), message);
+            }
+        }
+
+        // a read-only input is fine, the result matches the array version
+        byte[] input = data(40);
+        byte[] expected = new byte[40];
+        engine.encrypt(input, 0, expected, 0, 40);
+        ByteBuffer out = ByteBuffer.allocate(40);
+        engine.encrypt(ByteBuffer.wrap(input).asReadOnlyBuffer(), out);
+        assertArrayEquals(expected, out.array());
+    }
+
+
+    @Test
+    void byteBuffersRejectBadSizes() {
+        Blowfish engine = engine();
+        ByteBuffer in = ByteBuffer.allocate(17);
+        ByteBuffer out = ByteBuffer.allocate(23);
+
+        assertThrows(BufferOverflowException.class, () -> engine.encrypt(in, out));
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+        assertThrows(IllegalArgumentException.class, () -> engine.decrypt(in, ByteBuffer.allocate(24)));
+        assertThrows(BufferOverflowException.class, () -> engine.decrypt(in.limit(16), ByteBuffer.allocate(15)));
+    }
+
+
+    @Test
+    void batchesMatchPerMessageCalls() {
+        Blowfish engine = engine();
+        Random random = new Random(16);
+
+        for (int round = 0; round < 50; round++) {
+            int count = random.nextInt(40);
+            int[] segments = new int[2 * count + 2];
+            int[] lengths = new int[count];
+            byte[] input = data(8 + round * 997 % 6000);
+
+            // messages anywhere in the buffer, overlapping and out of order
+            int total = 0;
+            for (int k = 0; k < count; k++) {
+                lengths[k] = (k % 7 == 0) ? 8 * random.nextInt(3) : random.nextInt(Math.min(200, input.length));
+                segments[2 * k] = random.nextInt(input.length - lengths[k] + 1);
+                segments[2 * k + 1] = lengths[k];
+                total += engine.getOutputLength(lengths[k]);
+            }
+
+            byte[] expected = new byte[total + 3];
+            int offset = 3;
+            for (int k = 0; k < count; k++) {
+                offset += engine.encrypt(input, segments[2 * k], expected, offset, lengths[k]);
+            }
+
+            byte[] output = new byte[total + 3];
+            assertEquals(total, engine.encryptBatch(input, segments, count, output, 3), "round " + round);
+            assertArrayEquals(expected, output, "round " + round);
+
+            // decrypting the batch in one call restores each message
+            int[] encrypted = new int[2 * count];
+            offset = 3;
+            for (int k = 0; k < count; k++) {
+                encrypted[2 * k] = offset;
+                encrypted[2 * k + 1] = engine.getOutputLength(lengths[k]);
+                offset += encrypted[2 * k + 1];
+            }
+            byte[] plain = new byte[total];
+            assertEquals(total, engine.decryptBatch(output, encrypted, count, plain, 0), "round " + round);
+            offset = 0;
+            for (int k = 0; k < count; k++) {
+                byte[] message = Arrays.copyOfRange(input, segments[2 * k], segments[2 * k] + lengths[k]);
+                assertArrayEquals(message, Arrays.copyOfRange(plain, offset, offset + lengths[k]), "round " + round + ", message " + k);
+                offset += encrypted[2 * k + 1];
+            }
+
+            byte[] single = new byte[total];
+            offset = 0;
+            for (int k = 0; k < count; k++) {
+                engine.decrypt(output, encrypted[2 * k], single, offset, encrypted[2 * k + 1]);
+                offset += encrypted[2 * k + 1];
+            }
+            assertArrayEquals(single, plain, "round " + round);
+        }
+    }
+
+
+    @Test
+    void batchesUseOnlyCountSegments() {
+        Blowfish engine = engine();
+        byte[] input = data(64);
+        int[] segments = {0, 16, 16, 5, 32, 32};
+
+        byte[] output = new byte[64];
+        assertEquals(24, engine.encryptBatch(input, segments, 2, output, 0));
+        byte[] expected = new byte[64];
+        engine.encrypt(input, 0, expected, 0, 16);
+        engine.encrypt(input, 16, expected, 16, 5);
+        assertArrayEquals(expected, output);
+
+        assertEquals(0, engine.encryptBatch(input, segments, 0, output, 0));
+        assertArrayEquals(expected, output);
+
+        assertThrows(IllegalArgumentException.class, () -> engine.decryptBatch(input, segments, 2, output, 0));
+        assertEquals(16, engine.decryptBatch(input, segments, 1, output, 0));
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class GUIDGeneratorTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @TempDir
+    File tempDir;
+
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+
+    private static Field field(String name) throws Exception {
+        Field field = GUIDGenerator.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+
+    private static Object call(String name, String... args) throws Exception {
+        Class<?>[] types = new Class<?>[args.length];
+        Arrays.fill(types, String.class);
+        Method method = GUIDGenerator.class.getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        return method.invoke(null, (Object[]) args);
+    }
+
+
+    /**
+     * Forgets the ids found so far, so the next lookup goes to the cache file
+     */
+    private static void forget() throws Exception {
+        field("SERIAL_NUMBER").set(null, null);
+        field("MOTHERBOARD_SN").set(null, null);
+        ((AtomicReference<?>) field("serialNumberFuture").get(null)).set(null);
+        ((AtomicReference<?>) field("motherboardSNFuture").get(null)).set(null);
+    }
+
+
+    /**
+     * Runs the body against the given cache file and TTL, then puts back the
+     * settings and forgets what the body found
+     */
+    private static void withCache(File file, long ttl, Body body) throws Exception {
+        Object savedFile = field("cacheFile").get(null);
+        Object savedTtl = field("cacheTtlMillis").get(null);
+        forget();
+        GUIDGenerator.setCacheFile(file);
+        GUIDGenerator.setCacheTtl(ttl);
+        try {
+            body.run();
+        } finally {
+            field("cacheFile").set(null, savedFile);
+            field("cacheTtlMillis").set(null, savedTtl);
+            forget();
+        }
+    }
+
+
+    private static void writeCache(File file, String key, String value, long timestamp) throws Exception {
+        BasicProperties cache = new BasicProperties();
+        if (file.isFile()) {
+            cache.load(file);
+        }
+        cache.setString(key, value);
+        cache.setLong(key + ".timestamp", timestamp);
+        assertTrue(cache.store(file.getPath(), null));
+    }
+
+
+    /**
+     * Returns the serial number, or null when the lookup fails on this machine
+     */
+    private static String serialNumberOrNull() {
+        try {
+            return GUIDGenerator.getSerialNumber();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+
+    @Test
+    void cachedIdsSkipTheLookup() throws Exception {
+        File file = new File(tempDir, "hardware.properties");
+        long now = System.currentTimeMillis();
+        writeCache(file, "serialNumber", "cached-serial", now - HOUR);
+        writeCache(file, "motherboardSN", "cached-board", now);
+
+        withCache(file, 2 * HOUR, () -> {
+            assertEquals("cached-serial", GUIDGenerator.getSerialNumber());
+            assertEquals("cached-board", GUIDGenerator.getMotherboardSN());
+
+            // held in memory once found
+            writeCache(file, "serialNumber", "changed", now);
+            assertEquals("cached-serial", GUIDGenerator.getSerialNumber());
+
+            CompletableFuture<String> future = GUIDGenerator.getSerialNumberAsync();
+            assertEquals("cached-serial", future.get());
+            assertTrue(future == GUIDGenerator.getSerialNumberAsync());
+            assertEquals("cached-board", GUIDGenerator.getMotherboardSNAsync().get());
+        });
+    }
+
+
+    @Test
+    void staleAndFutureEntriesAreIgnored() throws Exception {
+        File file = new File(tempDir, "hardware.properties");
+        long now = System.currentTimeMillis();
+
+        writeCache(file, "serialNumber", "stale-serial", now - 3 * HOUR);
+        withCache(file, 2 * HOUR, () -> assertFalse("stale-serial".equals(serialNumberOrNull())));
+
+        writeCache(file, "serialNumber", "early-serial", now + HOUR);
+        withCache(file, 2 * HOUR, () -> assertFalse("early-serial".equals(serialNumberOrNull())));
+
+        writeCache(file, "serialNumber", "", now);
+        withCache(file, 2 * HOUR, () -> assertFalse("".equals(serialNumberOrNull())));
+
+        writeCache(file, "serialNumber", "fresh-serial", now - 3 * HOUR);
+        withCache(file, 4 * HOUR, () -> assertEquals("fresh-serial", serialNumberOrNull()));
+    }
+
+
+    @Test
+    void emptyMotherboardIsRetried() throws Exception {
+        if (OSChecker.isWindows()) {
+            // the lookup only comes back empty where there is no cscript
+            return;
+        }
+
+        File file = new File(tempDir, "hardware.properties");
+        withCache(file, HOUR, () -> {
+            CompletableFuture<String> first = GUIDGenerator.getMotherboardSNAsync();
+            assertEquals("", first.get());
+            assertFalse(file.exists());
+            assertNull(field("MOTHERBOARD_SN").get(null));
+
+            CompletableFuture<String> second = GUIDGenerator.getMotherboardSNAsync();
+            assertFalse(first == second);
+            assertEquals("", second.get());
+
+            writeCache(file, "motherboardSN", "board", System.currentTimeMillis());
+            assertEquals("board", GUIDGenerator.getMotherboardSN());
+        });
+    }
+
+
+    @Test
+    void cacheFileKeepsOtherEntries() throws Exception {
+        File file = new File(tempDir, "hardware.properties");
+        writeCache(file, "motherboardSN", "board", System.currentTimeMillis());
+        BasicProperties other = new BasicProperties(file);
+        other.setString("unrelated", "kept");
+        assertTrue(other.store(file.getPath(), null));
+
+        withCache(file, HOUR, () -> {
+            long before = System.currentTimeMillis();
+            call("writeCache", "serialNumber", "written");
+            long after = System.currentTimeMillis();
+
+            BasicProperties cache = new BasicProperties(file);
+            assertEquals("written", cache.getString("serialNumber"));
+            long timestamp = cache.getLong("serialNumber.timestamp");
+            assertTrue((timestamp >= before) && (timestamp <= after));
+            assertEquals("board", cache.getString("motherboardSN"));
+            assertEquals("kept", cache.getString("unrelated"));
+
+            assertEquals("written", call("readCache", "serialNumber"));
+            assertEquals("board", call("readCache", "motherboardSN"));
+            assertNull(call("readCache", "missing"));
+        });
+    }
+
+
+    @Test
+    void damagedCacheFileIsReplaced() throws Exception {
+        File file = new File(tempDir, "hardware.properties");
+
+        for (String damaged : new String[]{"serialNumber=\\u00zz\n", "serialNumber.timestamp=soon\nserialNumber=x\n"}) {
+            Files.write(file.toPath(), damaged.getBytes(StandardCharsets.ISO_8859_1));
+            withCache(file, HOUR, () -> {
+                assertNull(call("readCache", "serialNumber"));
+                call("writeCache", "serialNumber", "rewritten");
+                assertEquals("rewritten", call("readCache", "serialNumber"));
+            });
+        }
+    }
+
+
+    @Test
+    void disabledCacheWritesNothing() throws Exception {
+        withCache(null, HOUR, () -> {
+            call("writeCache", "serialNumber", "nowhere");
+            assertNull(call("readCache", "serialNumber"));
+        });
+        String[] left = tempDir.list();
+        assertEquals(0, left.length);
+    }
+}
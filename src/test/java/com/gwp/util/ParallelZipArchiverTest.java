@@ -0,0 +1,219 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ParallelZipArchiverTest {
+
+    @TempDir
+    File tempDir;
+
+
+    private File sampleTree() throws IOException {
+        File root = new File(tempDir, "tree");
+        File nested = new File(root, "a/b/c");
+        assertTrue(nested.mkdirs());
+        assertTrue(new File(root, "empty").mkdirs());
+
+        Random random = new Random(22);
+        write(new File(root, "top.txt"), "top level".getBytes("UTF-8"));
+        write(new File(root, "zero.bin"), new byte[0]);
+        write(new File(root, "a/caf\u00e9 \u65e5\u672c.txt"), "unicode name".getBytes("UTF-8"));
+        write(new File(nested, "empty.txt"), new byte[0]);
+        for (int i = 0; i < 20; i++) {
+            byte[] data = new byte[random.nextInt(5000)];
+            random.nextBytes(data);
+            write(new File(root, "a/b/file" + i + ".bin"), data);
+        }
+
+        // compressible and incompressible files above the spill threshold
+        byte[] text = new byte[300000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + (i % 7));
+        }
+        write(new File(nested, "large.txt"), text);
+        byte[] noise = new byte[200000];
+        random.nextBytes(noise);
+        write(new File(root, "large.bin"), noise);
+        return root;
+    }
+
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+    }
+
+
+    /**
+     * Lists each entry as name, size, CRC, time and a digest of the data,
+     * in archive order, as read through ZipFile
+     */
+    private static List<String> describe(File zip) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    result.add(describe(entry, input.readAllBytes()));
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * As describe, but reading the local headers through ZipInputStream
+     */
+    private static List<String> describeStream(File zip) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                byte[] data = input.readAllBytes();
+                result.add(describe(entry, data));
+            }
+        }
+        return result;
+    }
+
+
+    private static String describe(ZipEntry entry, byte[] data) {
+        // DOS times have two second resolution
+        String time = entry.isDirectory() ? "" : String.valueOf(entry.getTime() / 2000);
+        return entry.getName() + "|" + data.length + "|" + entry.getCrc() + "|" + time + "|"
+                + Arrays.hashCode(data);
+    }
+
+
+    private static int spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("pzip"));
+        return (names == null) ? 0 : names.length;
+    }
+
+
+    @Test
+    void matchesAddZipEntries() throws IOException {
+        File tree = sampleTree();
+        File expected = new File(tempDir, "expected.zip");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(expected))) {
+            Utilities.addZipEntries(output, tree, "", true, "");
+        }
+        List<String> reference = describe(expected);
+
+        for (int threads : new int[]{1, 2, 4}) {
+            File actual = new File(tempDir, "parallel" + threads + ".zip");
+            new ParallelZipArchiver(threads).setSpillThreshold(100000).archive(tree, actual);
+
+            assertEquals(reference, describe(actual), "ZipFile view, threads " + threads);
+            assertEquals(reference, describeStream(actual), "ZipInputStream view, threads " + threads);
+        }
+    }
+
+
+    @Test
+    void matchesAddZipEntriesWithPrefixAndFilter() throws IOException {
+        File tree = sampleTree();
+        java.io.FileFilter filter = file -> !file.getName().endsWith(".bin");
+
+        File expected = new File(tempDir, "expected.zip");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(expected))) {
+            Utilities.addZipEntries(output, tree, "base\\dir", true, ".d", filter);
+        }
+
+        File actual = new File(tempDir, "parallel.zip");
+        try (OutputStream output = new FileOutputStream(actual)) {
+            new ParallelZipArchiver(3).archive(tree, "base\\dir", ".d", filter, output);
+        }
+
+        assertEquals(describe(expected), describe(actual));
+    }
+
+
+    @Test
+    void storedLevelMatchesContents() throws IOException {
+        File tree = sampleTree();
+        File expected = new File(tempDir, "expected.zip");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(expected))) {
+            Utilities.addZipEntries(output, tree, "", true, "");
+        }
+
+        File actual = new File(tempDir, "level0.zip");
+        new ParallelZipArchiver(2).setLevel(0).setSpillThreshold(1000).archive(tree, actual);
+        assertEquals(describe(expected), describe(actual));
+    }
+
+
+    @Test
+    void failedArchiveLeavesNoSpillFiles() throws IOException {
+        File tree = sampleTree();
+        int before = spillFiles();
+
+        OutputStream failing = new OutputStream() {
+            private long written = 0;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written += len;
+                if (written > 50000) {
+                    throw new IOException("device full");
+                }
+            }
+        };
+
+        assertThrows(IOException.class,
+                () -> new ParallelZipArchiver(4).setSpillThreshold(10).archive(tree, "", "", null, failing));
+        assertTrue(spillFiles() <= before, "spill files left behind");
+    }
+
+
+    @Test
+    void emptyDirectoryArchive() throws IOException {
+        File empty = new File(tempDir, "nothing");
+        assertTrue(empty.mkdirs());
+
+        File expected = new File(tempDir, "expected.zip");
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(expected))) {
+            Utilities.addZipEntries(output, empty, "", true, "");
+        }
+        File actual = new File(tempDir, "actual.zip");
+        new ParallelZipArchiver(2).archive(empty, actual);
+
+        assertEquals(describe(expected), describe(actual));
+        assertTrue(Files.size(actual.toPath()) > 0);
+    }
+}
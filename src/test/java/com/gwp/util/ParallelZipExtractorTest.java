@@ -0,0 +1,311 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ParallelZipExtractorTest {
+
+    @TempDir
+    File tempDir;
+
+
+    /**
+     * Writes an archive with a mix of names and sizes, using STORED or
+     * DEFLATED entries
+     */
+    private File sampleZip(String name, int method) throws IOException {
+        Random random = new Random(23);
+        List<String> names = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+
+        names.add("top.txt");
+        contents.add("top level".getBytes("UTF-8"));
+        names.add("empty.bin");
+        contents.add(new byte[0]);
+        for (int i = 0; i < 30; i++) {
+            byte[] data = new byte[random.nextInt(10000)];
+            random.nextBytes(data);
+            names.add("dir/sub" + (i % 3) + "/file" + i + ".bin");
+            contents.add(data);
+        }
+        byte[] text = new byte[500000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + (i % 11));
+        }
+        names.add("dir/large.txt");
+        contents.add(text);
+
+        File zip = new File(tempDir, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            output.putNextEntry(directoryEntry("dir/"));
+            output.closeEntry();
+            output.putNextEntry(directoryEntry("leaf/"));
+            output.closeEntry();
+
+            for (int i = 0; i < names.size(); i++) {
+                byte[] data = contents.get(i);
+                ZipEntry entry = new ZipEntry(names.get(i));
+                entry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                output.putNextEntry(entry);
+                output.write(data);
+                output.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+
+    private static ZipEntry directoryEntry(String name) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(0);
+        entry.setCompressedSize(0);
+        entry.setCrc(0);
+        return entry;
+    }
+
+
+    /**
+     * Writes an archive holding the given names, each with its own name
+     * as the data
+     */
+    private File namedZip(String name, String... entryNames) throws IOException {
+        File zip = new File(tempDir, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (String entryName : entryNames) {
+                output.putNextEntry(new ZipEntry(entryName));
+                output.write(entryName.getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+
+    /**
+     * Lists every file and directory under a root with a digest of its
+     * contents, sorted by relative path
+     */
+    private static List<String> snapshot(File root) throws IOException {
+        Path base = root.toPath();
+        try (Stream<Path> paths = Files.walk(base)) {
+            List<Path> all = paths.filter(path -> !path.equals(base)).collect(Collectors.toList());
+            List<String> result = new ArrayList<>();
+            for (Path path : all) {
+                String relative = base.relativize(path).toString().replace(File.separatorChar, '/');
+                if (Files.isDirectory(path)) {
+                    result.add(relative + "/");
+                } else {
+                    byte[] data = Files.readAllBytes(path);
+                    result.add(relative + "|" + data.length + "|" + Arrays.hashCode(data));
+                }
+            }
+            result.sort(null);
+            return result;
+        }
+    }
+
+
+    private static void assertMatchesZipFile(File zip, File destination, String stripPrefix) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if ((stripPrefix != null) && name.startsWith(stripPrefix)) {
+                    name = name.substring(stripPrefix.length());
+                }
+                File file = new File(destination, name);
+
+                if (entry.isDirectory()) {
+                    assertTrue(file.isDirectory(), name);
+                } else {
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        assertArrayEquals(input.readAllBytes(), Files.readAllBytes(file.toPath()), name);
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void extractsDeflatedEntries() throws IOException {
+        File zip = sampleZip("deflated.zip", ZipEntry.DEFLATED);
+
+        for (int threads : new int[]{1, 4}) {
+            File destination = new File(tempDir, "out" + threads);
+            assertTrue(new ParallelZipExtractor(threads).extract(zip, destination, null, null));
+            assertMatchesZipFile(zip, destination, null);
+        }
+    }
+
+
+    @Test
+    void extractsStoredEntries() throws IOException {
+        File zip = sampleZip("stored.zip", ZipEntry.STORED);
+        File destination = new File(tempDir, "out");
+
+        assertTrue(new ParallelZipExtractor(3).extract(zip, destination, null, null));
+        assertMatchesZipFile(zip, destination, null);
+    }
+
+
+    @Test
+    void matchesSequentialExtraction() throws IOException {
+        File zip = sampleZip("deflated.zip", ZipEntry.DEFLATED);
+        File sequential = new File(tempDir, "sequential");
+        File parallel = new File(tempDir, "parallel");
+
+        assertTrue(Utilities.extractZipFile(zip, sequential, "dir/", null));
+        assertTrue(new ParallelZipExtractor(4).extract(zip, parallel, "dir/", null));
+
+        assertEquals(snapshot(sequential), snapshot(parallel));
+        assertMatchesZipFile(zip, parallel, "dir/");
+        assertTrue(new File(parallel, "large.txt").isFile());
+    }
+
+
+    @Test
+    void overwritesExistingFiles() throws IOException {
+        File zip = sampleZip("deflated.zip", ZipEntry.DEFLATED);
+        File destination = new File(tempDir, "out");
+        File existing = new File(destination, "top.txt");
+        assertTrue(destination.mkdirs());
+        Files.write(existing.toPath(), new byte[100000]);
+
+        assertTrue(new ParallelZipExtractor(2).extract(zip, destination, null, null));
+        assertEquals("top level", new String(Files.readAllBytes(existing.toPath()), "UTF-8"));
+    }
+
+
+    @Test
+    void refusesEntriesOutsideDestination() throws IOException {
+        File zip = namedZip("slip.zip", "good.txt", "../evil.txt", "dir/../../evil2.txt", "dir/ok.txt");
+        File destination = new File(tempDir, "out");
+
+        assertFalse(new ParallelZipExtractor(2).extract(zip, destination, null, null));
+        assertFalse(new File(tempDir, "evil.txt").exists());
+        assertFalse(new File(tempDir, "evil2.txt").exists());
+
+        // the safe entries are still extracted
+        assertTrue(new File(destination, "good.txt").isFile());
+        assertTrue(new File(destination, "dir/ok.txt").isFile());
+    }
+
+
+    @Test
+    void rejectsCorruptArchives() throws IOException {
+        File notZip = new File(tempDir, "plain.zip");
+        Files.write(notZip.toPath(), "this is not a zip file".getBytes("UTF-8"));
+        assertFalse(new ParallelZipExtractor(2).extract(notZip, new File(tempDir, "out1"), null, null));
+
+        File missing = new File(tempDir, "missing.zip");
+        assertFalse(new ParallelZipExtractor(2).extract(missing, new File(tempDir, "out2"), null, null));
+
+        // cut off the central directory
+        File zip = sampleZip("deflated.zip", ZipEntry.DEFLATED);
+        File truncated = new File(tempDir, "truncated.zip");
+        byte[] data = Files.readAllBytes(zip.toPath());
+        Files.write(truncated.toPath(), Arrays.copyOf(data, data.length / 2));
+        assertFalse(new ParallelZipExtractor(2).extract(truncated, new File(tempDir, "out3"), null, null));
+    }
+
+
+    @Test
+    void rejectsDamagedEntryData() throws IOException {
+        File zip = sampleZip("deflated.zip", ZipEntry.DEFLATED);
+
+        long offset;
+        long length;
+        try (FileChannel channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ)) {
+            ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(channel).getEntry("dir/large.txt");
+            offset = ZipCentralDirectory.getDataOffset(channel, entry);
+            length = entry.getCompressedSize();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(zip, "rw")) {
+            file.seek(offset + (length / 2));
+            int value = file.read();
+            file.seek(offset + (length / 2));
+            file.write(value ^ 0xFF);
+        }
+
+        assertFalse(new ParallelZipExtractor(2).extract(zip, new File(tempDir, "out"), null, null));
+    }
+
+
+    @Test
+    void centralDirectoryMatchesZipFile() throws IOException {
+        List<File> zips = new ArrayList<>();
+        zips.add(sampleZip("stored.zip", ZipEntry.STORED));
+        zips.add(sampleZip("deflated.zip", ZipEntry.DEFLATED));
+        zips.add(namedZip("names.zip", "caf\u00e9 \u65e5\u672c.txt", "dir/\ud83d\ude00", "plain.txt"));
+
+        for (File zip : zips) {
+
+            List<ZipEntry> expected = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(zip)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    expected.add(entries.nextElement());
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(zip.toPath(), StandardOpenOption.READ)) {
+                ZipCentralDirectory directory = ZipCentralDirectory.read(channel);
+                assertEquals(expected.size(), directory.size());
+
+                for (int i = 0; i < expected.size(); i++) {
+                    ZipEntry reference = expected.get(i);
+                    ZipCentralDirectory.Entry entry = directory.getEntries().get(i);
+                    assertEquals(reference.getName(), entry.getName());
+                    assertEquals(reference.getMethod(), entry.getMethod());
+                    assertEquals(reference.getCrc(), entry.getCrc());
+                    assertEquals(reference.getSize(), entry.getSize());
+                    assertEquals(reference.getCompressedSize(), entry.getCompressedSize());
+                    assertEquals(reference.isDirectory(), entry.isDirectory());
+                    assertNotNull(directory.getEntry(reference.getName()));
+                }
+            }
+        }
+    }
+}
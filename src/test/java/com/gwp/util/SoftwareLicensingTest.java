@@ -0,0 +1,112 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class SoftwareLicensingTest {
+
+    @TempDir
+    File tempDir;
+
+
+    // The key as it was generated before the reused digests
+    private static String originalGetLicenseKey(String uuid) {
+        return DigestUtils.md5Hex(uuid);
+    }
+
+
+    private static String[] ids(int count, long seed) {
+        Random random = new Random(seed);
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+        }
+        return ids;
+    }
+
+
+    @Test
+    void licenseKeyMatchesOriginal() {
+        String[] ids = {
+                "", "a", "0e8f5c2a-1d3b-4c6e-9f70-8a1b2c3d4e5f", "caf\u00e9", "\u65e5\u672c\ud83d\ude00",
+                "trailing space ", "x".repeat(1000)
+        };
+        for (String id : ids) {
+            assertEquals(originalGetLicenseKey(id), SoftwareLicensing.getLicenseKey(id), id);
+            assertEquals(originalGetLicenseKey(id), SoftwareLicensing.getLicenseKey(id), id);
+        }
+        for (String id : ids(500, 19)) {
+            assertEquals(originalGetLicenseKey(id), SoftwareLicensing.getLicenseKey(id), id);
+        }
+    }
+
+
+    @Test
+    void licenseKeysKeepOrder() {
+        assertEquals(0, SoftwareLicensing.getLicenseKeys(new String[0]).length);
+
+        String[] ids = ids(20000, 20);
+        ids[7] = ids[8];
+        String[] keys = SoftwareLicensing.getLicenseKeys(ids);
+        assertEquals(ids.length, keys.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(originalGetLicenseKey(ids[i]), keys[i], "index " + i);
+        }
+    }
+
+
+    @Test
+    void generateLicenseKeysWritesIdsInOrder() throws Exception {
+        // more lines than one chunk, with blank and padded lines and mixed line ends
+        String[] ids = ids(10000, 21);
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < ids.length; i++) {
+            if (i % 1000 == 0) {
+                input.append("\n   \n");
+            }
+            input.append((i % 3 == 0) ? " " + ids[i] + "\t" : ids[i]);
+            input.append((i % 5 == 0) ? "\r\n" : "\n");
+            expected.add(ids[i] + "," + originalGetLicenseKey(ids[i]));
+        }
+        input.append("\u00e9t\u00e9");
+        expected.add("\u00e9t\u00e9," + originalGetLicenseKey("\u00e9t\u00e9"));
+
+        Path in = tempDir.toPath().resolve("ids.txt");
+        Path out = tempDir.toPath().resolve("keys.txt");
+        Files.writeString(in, input, StandardCharsets.UTF_8);
+
+        assertEquals(expected.size(), SoftwareLicensing.generateLicenseKeys(in, out));
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    void generateLicenseKeysFromEmptyFile() throws Exception {
+        Path in = tempDir.toPath().resolve("empty.txt");
+        Path out = tempDir.toPath().resolve("none.txt");
+        Files.writeString(in, "\n \n", StandardCharsets.UTF_8);
+
+        assertEquals(0, SoftwareLicensing.generateLicenseKeys(in, out));
+        assertTrue(Files.exists(out));
+        assertEquals(0, Files.size(out));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+public class UtilitiesTest {
+
+    private static final String HEXCHARS[] = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"};
+
+
+    // The hex conversions as they were before the table codecs
+
+    private static String originalIntToHex(int value) {
+        String result = Integer.toHexString(value).toUpperCase();
+        if (result.length() == 1)
+            result = "0" + result;
+        return result;
+    }
+
+
+    private static String originalByteToHex(byte value) {
+        int iTemp = (int) value;
+        if (iTemp < 0) {
+            iTemp += 256;
+        }
+        return originalIntToHex(iTemp);
+    }
+
+
+    private static byte[] originalHexStringToBytes(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            String group = value.substring(i + i, i + i + 2);
+            result[i] = (byte) (Integer.parseInt(group, 16) & 0xff);
+        }
+        return result;
+    }
+
+
+    private static String originalHexBytesToString(byte[] value) {
+        StringBuffer sb = new StringBuffer(value.length * 2);
+        for (int i = 0; i < value.length; i++) {
+            sb.append(HEXCHARS[(value[i] & 0xF0) >>> 4]);
+            sb.append(HEXCHARS[value[i] & 0x0F]);
+        }
+        return sb.toString();
+    }
+
+
+    @Test
+    void byteToHexMatchesOriginal() {
+        for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
+            assertEquals(originalByteToHex((byte) i), Utilities.byteToHex((byte) i));
+        }
+    }
+
+
+    @Test
+    void intToHexMatchesOriginal() {
+        int[] edges = {0, 1, 15, 16, 255, 256, 4095, 4096, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, -16};
+        for (int value : edges) {
+            assertEquals(originalIntToHex(value), Utilities.intToHex(value));
+        }
+
+        Random random = new Random(17);
+        for (int i = 0; i < 10000; i++) {
+            int value = random.nextInt() >>> random.nextInt(32);
+            assertEquals(originalIntToHex(value), Utilities.intToHex(value));
+        }
+    }
+
+
+    @Test
+    void hexStringsMatchOriginal() {
+        Random random = new Random(17);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            String hex = Utilities.hexBytesToString(data);
+            assertEquals(originalHexBytesToString(data), hex);
+            assertArrayEquals(originalHexStringToBytes(hex), Utilities.hexStringToBytes(hex));
+            assertArrayEquals(data, Utilities.hexStringToBytes(hex.toUpperCase()));
+
+            // a trailing odd digit is ignored, as before
+            assertArrayEquals(originalHexStringToBytes(hex + "a"), Utilities.hexStringToBytes(hex + "a"));
+        }
+    }
+
+
+    @Test
+    void encodeOverloadsAgree() {
+        Random random = new Random(17);
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        String expected = originalHexBytesToString(data).substring(6, 6 + 1800);
+
+        char[] chars = new char[1810];
+        assertEquals(1800, Utilities.encodeHex(data, 3, 900, chars, 5));
+        assertEquals(expected, new String(chars, 5, 1800));
+
+        byte[] ascii = new byte[1810];
+        assertEquals(1800, Utilities.encodeHex(data, 3, 900, ascii, 5));
+        assertEquals(expected, new String(ascii, 5, 1800, StandardCharsets.US_ASCII));
+
+        ByteBuffer source = ByteBuffer.wrap(data, 3, 900);
+        ByteBuffer target = ByteBuffer.allocateDirect(1800);
+        Utilities.encodeHex(source, target);
+        assertEquals(0, source.remaining());
+        target.flip();
+        byte[] buffered = new byte[target.remaining()];
+        target.get(buffered);
+        assertArrayEquals(Arrays.copyOfRange(ascii, 5, 1805), buffered);
+    }
+
+
+    @Test
+    void decodeOverloadsAgree() {
+        Random random = new Random(17);
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        String hex = "xx" + originalHexBytesToString(data).toUpperCase() + "yy";
+
+        byte[] fromChars = new byte[1004];
+        assertEquals(1000, Utilities.decodeHex(hex, 2, 2000, fromChars, 4));
+        assertArrayEquals(data, Arrays.copyOfRange(fromChars, 4, 1004));
+
+        byte[] ascii = hex.getBytes(StandardCharsets.US_ASCII);
+        byte[] fromBytes = new byte[1004];
+        assertEquals(1000, Utilities.decodeHex(ascii, 2, 2000, fromBytes, 4));
+        assertArrayEquals(data, Arrays.copyOfRange(fromBytes, 4, 1004));
+
+        ByteBuffer source = ByteBuffer.wrap(ascii, 2, 2000);
+        ByteBuffer target = ByteBuffer.allocate(1000);
+        Utilities.decodeHex(source, target);
+        assertArrayEquals(data, target.array());
+    }
+
+
+    @Test
+    void decodeRejectsInvalidDigits() {
+        byte[] target = new byte[4];
+        assertThrows(NumberFormatException.class, () -> Utilities.decodeHex("0g", 0, 2, target, 0));
+        assertThrows(NumberFormatException.class, () -> Utilities.decodeHex("0\u00e9", 0, 2, target, 0));
+        assertThrows(NumberFormatException.class, () -> Utilities.decodeHex("abc", 0, 3, target, 0));
+        assertThrows(NumberFormatException.class, () -> Utilities.hexStringToBytes("zz"));
+    }
+
+
+    @Test
+    void hexStringToBytesKeepsParseIntQuirks() {
+        // a sign and non-ASCII digits were accepted by Integer.parseInt
+        String[] values = {"+f", "-1", "-f", "+0", "00+f7f-1", "\u0661\u0662", "\uff10\uff41ab", "\u0967F"};
+        for (String value : values) {
+            assertArrayEquals(originalHexStringToBytes(value), Utilities.hexStringToBytes(value), value);
+        }
+
+        String[] invalid = {"zz", "--", "+-", "0g", "\u00e9\u00e9", "f "};
+        for (String value : invalid) {
+            assertThrows(NumberFormatException.class, () -> originalHexStringToBytes(value), value);
+            assertThrows(NumberFormatException.class, () -> Utilities.hexStringToBytes(value), value);
+        }
+
+        // decodeHex stays strict
+        assertThrows(NumberFormatException.class, () -> Utilities.decodeHex("+f", 0, 2, new byte[1], 0));
+    }
+}
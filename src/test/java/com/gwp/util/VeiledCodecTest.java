@@ -0,0 +1,198 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class VeiledCodecTest {
+
+    // The BasicProperties codec as it was before VeiledCodec
+
+    private static String originalEncryptString(String data) {
+        StringBuffer temp = new StringBuffer();
+        int residue = 0x7e71;
+
+        for (int i = 0; i < data.length(); i++) {
+            char c1 = data.charAt(i);
+            int v1 = ((c1 >> 4) + 'A' + (residue) % 10);
+            int v2 = ((c1 & 0x0f) + 'A' + (residue >> 1) % 10);
+            residue += ((residue >> 4) + c1);
+            residue = residue & 0xffff;
+
+            temp.append((char) v1);
+            temp.append((char) v2);
+        }
+
+        return temp.toString();
+    }
+
+
+    private static String originalDecryptString(String data) {
+        StringBuffer temp = new StringBuffer();
+        int residue = 0x7e71;
+
+        for (int i = 0; i < (data.length() / 2); i++) {
+            int v = ((data.charAt(i * 2) - 'A' - (residue) % 10) << 4) +
+                    (data.charAt(i * 2 + 1) - 'A' - (residue >> 1) % 10);
+            temp.append((char) v);
+            residue += (residue >> 4) + (char) v;
+            residue = residue & 0xffff;
+        }
+
+        return temp.toString();
+    }
+
+
+    private static String originalEncryptBytes(byte[] data) {
+        StringBuffer temp = new StringBuffer();
+        int residue = 0x7e71;
+
+        for (int i = 0; i < data.length; i++) {
+            int c1 = data[i] & 0xff;
+            int v1 = ((c1 >> 4) + 'A' + (residue) % 10);
+            int v2 = ((c1 & 0x0f) + 'A' + (residue >> 1) % 10);
+            residue += ((residue >> 4) + c1);
+            residue = residue & 0xffff;
+
+            temp.append((char) v1);
+            temp.append((char) v2);
+        }
+
+        return temp.toString();
+    }
+
+
+    private static byte[] originalDecryptBytes(String data) {
+        int residue = 0x7e71;
+        byte[] result = new byte[data.length() / 2];
+
+        for (int i = 0; i < (result.length); i++) {
+            int v = ((data.charAt(i * 2) - 'A' - (residue) % 10) << 4) +
+                    (data.charAt(i * 2 + 1) - 'A' - (residue >> 1) % 10);
+            result[i] = (byte) (v & 0xff);
+            residue += (residue >> 4) + (char) v;
+            residue = residue & 0xffff;
+        }
+
+        return result;
+    }
+
+
+    private static String randomString(Random random, int length, int maxChar) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) random.nextInt(maxChar);
+        }
+        return new String(chars);
+    }
+
+
+    @Test
+    void stringsMatchOriginal() {
+        Random random = new Random(18);
+        for (int i = 0; i < 500; i++) {
+            // includes chars above 0xff, which the format carries in a wider first char
+            String data = randomString(random, random.nextInt(200), (i % 2 == 0) ? 0x100 : 0x10000);
+
+            String encoded = VeiledCodec.encodeString(data);
+            assertEquals(originalEncryptString(data), encoded);
+            assertEquals(originalDecryptString(encoded), VeiledCodec.decodeString(encoded));
+            assertEquals(data, VeiledCodec.decodeString(encoded));
+        }
+    }
+
+
+    @Test
+    void bytesMatchOriginal() {
+        Random random = new Random(18);
+        for (int i = 0; i < 500; i++) {
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+
+            String encoded = VeiledCodec.encodeBytes(data);
+            assertEquals(originalEncryptBytes(data), encoded);
+            assertArrayEquals(originalDecryptBytes(encoded), VeiledCodec.decodeBytes(encoded));
+            assertArrayEquals(data, VeiledCodec.decodeBytes(encoded));
+        }
+    }
+
+
+    @Test
+    void malformedInputMatchesOriginal() {
+        Random random = new Random(18);
+        for (int i = 0; i < 500; i++) {
+            // arbitrary text, odd lengths included, is decoded the same way as before
+            String data = randomString(random, random.nextInt(101), (i % 2 == 0) ? 0x80 : 0x10000);
+
+            assertEquals(originalDecryptString(data), VeiledCodec.decodeString(data));
+            assertArrayEquals(originalDecryptBytes(data), VeiledCodec.decodeBytes(data));
+        }
+    }
+
+
+    @Test
+    void piecesMatchWholeValue() {
+        Random random = new Random(18);
+        byte[] data = new byte[5000];
+        random.nextBytes(data);
+        String expected = originalEncryptBytes(data);
+
+        VeiledCodec codec = new VeiledCodec();
+        char[] encoded = new char[data.length * 2];
+        int written = 0;
+        for (int offset = 0; offset < data.length; ) {
+            int length = Math.min(random.nextInt(100), data.length - offset);
+            written += codec.encode(data, offset, length, encoded, written);
+            offset += length;
+        }
+        assertEquals(expected, new String(encoded, 0, written));
+
+        codec.reset();
+        byte[] decoded = new byte[data.length];
+        int count = 0;
+        for (int offset = 0; offset < expected.length(); ) {
+            int length = Math.min(2 * random.nextInt(50), expected.length() - offset);
+            count += codec.decode(expected, offset, length, decoded, count);
+            offset += length;
+        }
+        assertEquals(data.length, count);
+        assertArrayEquals(data, decoded);
+    }
+
+
+    @Test
+    void streamsMatchWholeValue() throws IOException {
+        Random random = new Random(18);
+        byte[] data = new byte[50000];
+        random.nextBytes(data);
+
+        StringWriter encoded = new StringWriter();
+        VeiledCodec.encode(new ByteArrayInputStream(data), encoded);
+        assertEquals(originalEncryptBytes(data), encoded.toString());
+
+        // a reader that returns odd sized pieces, so pairs are split across reads
+        Reader reader = new StringReader(encoded.toString()) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1 + random.nextInt(777)));
+            }
+        };
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        VeiledCodec.decode(reader, decoded);
+        assertArrayEquals(data, decoded.toByteArray());
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ZipArchiveBuilderTest {
+
+    @TempDir
+    File tempDir;
+
+
+    private File sampleTree() throws IOException {
+        File root = new File(tempDir, "tree");
+        assertTrue(new File(root, "a/b").mkdirs());
+        assertTrue(new File(root, "empty").mkdirs());
+
+        Random random = new Random(21);
+        write(new File(root, "top.txt"), "top level".getBytes("UTF-8"));
+        write(new File(root, "zero.bin"), new byte[0]);
+        for (int i = 0; i < 10; i++) {
+            byte[] data = new byte[random.nextInt(5000)];
+            random.nextBytes(data);
+            write(new File(root, "a/b/file" + i + ".bin"), data);
+        }
+
+        // larger than the copy buffer
+        byte[] large = new byte[ZipArchiveBuilder.BUFFER_SIZE * 2 + 17];
+        random.nextBytes(large);
+        write(new File(root, "a/large.bin"), large);
+        return root;
+    }
+
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+    }
+
+
+    /**
+     * Writes the tree with addZipEntries to a stream whose default method
+     * is the given one
+     */
+    private File addZipEntries(File tree, String name, int method) throws IOException {
+        File zip = new File(tempDir, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            output.setMethod(method);
+            Utilities.addZipEntries(output, tree, "", true, "");
+        }
+        return zip;
+    }
+
+
+    /**
+     * Lists each entry as name, size, CRC, time and a digest of the data,
+     * in archive order, as read through ZipFile
+     */
+    private static List<String> describe(File zip) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    result.add(describe(entry, input.readAllBytes()));
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * As describe, but reading the local headers through ZipInputStream
+     */
+    private static List<String> describeStream(File zip) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (ZipInputStream input = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                result.add(describe(entry, input.readAllBytes()));
+            }
+        }
+        return result;
+    }
+
+
+    private static String describe(ZipEntry entry, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        assertEquals(crc.getValue(), entry.getCrc(), entry.getName());
+
+        // DOS times have two second resolution
+        String time = entry.isDirectory() ? "" : String.valueOf(entry.getTime() / 2000);
+        return entry.getName() + "|" + data.length + "|" + entry.getCrc() + "|" + time + "|"
+                + Arrays.hashCode(data);
+    }
+
+
+    /**
+     * Checks that every file in the tree is in the archive with the given
+     * method and its contents
+     */
+    private static void assertHoldsTree(File zip, File tree, int method) throws IOException {
+        int files = 0;
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File file = new File(tree.getParentFile(), entry.getName());
+                if (entry.isDirectory()) {
+                    assertTrue(file.isDirectory(), entry.getName());
+                    assertEquals(ZipEntry.STORED, entry.getMethod());
+                } else {
+                    assertEquals(method, entry.getMethod(), entry.getName());
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        assertArrayEquals(Files.readAllBytes(file.toPath()), input.readAllBytes(), entry.getName());
+                    }
+                    files++;
+                }
+            }
+        }
+        assertEquals(13, files);
+    }
+
+
+    @Test
+    void addZipEntriesUsesStreamDefaultMethod() throws IOException {
+        File tree = sampleTree();
+        File deflated = addZipEntries(tree, "deflated.zip", ZipEntry.DEFLATED);
+        File stored = addZipEntries(tree, "stored.zip", ZipEntry.STORED);
+
+        assertHoldsTree(deflated, tree, ZipEntry.DEFLATED);
+        assertHoldsTree(stored, tree, ZipEntry.STORED);
+
+        // STORED local headers carry the size and CRC, so a stream reader sees the same entries
+        List<String> expected = describe(deflated);
+        assertEquals(expected, describe(stored));
+        assertEquals(expected, describeStream(stored));
+        assertEquals(expected, describeStream(deflated));
+    }
+
+
+    @Test
+    void addTreeMatchesAddZipEntries() throws IOException {
+        File tree = sampleTree();
+        java.io.FileFilter filter = file -> !file.getName().startsWith("file1");
+
+        for (int method : new int[]{ZipEntry.DEFLATED, ZipEntry.STORED}) {
+            File expected = new File(tempDir, "expected" + method + ".zip");
+            try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(expected))) {
+                output.setMethod(method);
+                Utilities.addZipEntries(output, tree, "base\\dir", true, ".d", filter);
+            }
+
+            File actual = new File(tempDir, "actual" + method + ".zip");
+            try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(actual));
+                 ZipArchiveBuilder builder = new ZipArchiveBuilder(output)) {
+                output.setMethod(method);
+                builder.addTree(tree, "base\\dir", true, ".d", filter);
+            }
+
+            assertEquals(describe(expected), describe(actual));
+            assertEquals(describe(expected), describeStream(actual));
+        }
+    }
+
+
+    @Test
+    void archiveRoundTrip() throws IOException {
+        File tree = sampleTree();
+        File zip = new File(tempDir, "archive.zip");
+        ZipArchiveBuilder.archive(tree, zip);
+        assertHoldsTree(zip, tree, ZipEntry.DEFLATED);
+
+        File destination = new File(tempDir, "out");
+        assertTrue(Utilities.extractZipFile(zip, destination, null, null));
+        assertArrayEquals(Files.readAllBytes(new File(tree, "a/large.bin").toPath()),
+                Files.readAllBytes(new File(destination, "tree/a/large.bin").toPath()));
+        assertTrue(new File(destination, "tree/empty").isDirectory());
+    }
+
+
+    @Test
+    void addEntryIsAlwaysDeflated() throws IOException {
+        byte[] data = "from a stream".getBytes("UTF-8");
+        File zip = new File(tempDir, "entry.zip");
+
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip));
+             ZipArchiveBuilder builder = new ZipArchiveBuilder(output)) {
+            output.setMethod(ZipEntry.STORED);
+            builder.addEntry("stream.txt", new ByteArrayInputStream(data), -1);
+            builder.addDirectory("dir");
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("stream.txt");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            try (InputStream input = zipFile.getInputStream(entry)) {
+                assertArrayEquals(data, input.readAllBytes());
+            }
+            assertTrue(zipFile.getEntry("dir/").isDirectory());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * @author Greg W. Pola
+ * @version 1.0
+ */
+package com.gwp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class ZipArchiveCacheTest {
+
+    @TempDir
+    File tempDir;
+
+
+    /**
+     * Writes an archive holding the given names, each with its own name
+     * as the data
+     */
+    private File namedZip(String name, String... entryNames) throws IOException {
+        File zip = new File(tempDir, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            for (String entryName : entryNames) {
+                output.putNextEntry(new ZipEntry(entryName));
+                output.write(entryName.getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+
+    /**
+     * Writes an archive with one STORED and one DEFLATED copy of the data
+     */
+    private File mixedZip(String name, byte[] data) throws IOException {
+        File zip = new File(tempDir, name);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry stored = new ZipEntry("stored/data.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(data.length);
+            stored.setCompressedSize(data.length);
+            stored.setCrc(crc.getValue());
+            output.putNextEntry(stored);
+            output.write(data);
+            output.closeEntry();
+
+            output.putNextEntry(new ZipEntry("deflated/data.bin"));
+            output.write(data);
+            output.closeEntry();
+        }
+        return zip;
+    }
+
+
+    private static byte[] contents(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+
+    private static String read(ZipArchiveCache.Archive archive, ZipEntry entry) throws IOException {
+        try (InputStream input = archive.getZipFile().getInputStream(entry)) {
+            return new String(input.readAllBytes(), "UTF-8");
+        }
+    }
+
+
+    @Test
+    void findEntryMatchesEndOfName() throws IOException {
+        File zip = namedZip("find.zip", "docs/intro.txt", "a/ReadMe.TXT", "b/readme.txt", "readme.txt.bak");
+        ZipArchiveCache cache = new ZipArchiveCache();
+
+        try (ZipArchiveCache.Archive archive = cache.open(zip)) {
+            // the first entry in archive order wins, ignoring case
+            for (int i = 0; i < 2; i++) {
+                assertEquals("a/ReadMe.TXT", archive.findEntry("readme.txt").getName());
+                assertEquals("a/ReadMe.TXT", archive.findEntry("README.TXT").getName());
+                assertEquals("b/readme.txt", archive.findEntry("b/readme.txt").getName());
+                assertEquals("readme.txt.bak", archive.findEntry(".bak").getName());
+                assertNull(archive.findEntry("missing.txt"));
+            }
+
+            // misses are not remembered, and many names do not change the answers
+            for (int i = 0; i < 5000; i++) {
+                assertNull(archive.findEntry("missing" + i));
+                archive.findEntry(String.valueOf(i % 10));
+            }
+            assertEquals("docs/intro.txt", archive.findEntry("intro.txt").getName());
+            assertEquals("b/readme.txt", archive.getEntry("b/readme.txt").getName());
+            assertNull(archive.getEntry("readme.txt"));
+            assertEquals(4, archive.getEntries().size());
+        }
+    }
+
+
+    @Test
+    void reusesOpenArchive() throws IOException {
+        File zip = namedZip("reuse.zip", "one.txt");
+        ZipArchiveCache cache = new ZipArchiveCache();
+
+        try (ZipArchiveCache.Archive first = cache.open(zip);
+             ZipArchiveCache.Archive second = cache.open(zip)) {
+            // separate handles on the same open archive
+            assertFalse(first == second);
+            assertTrue(first.getZipFile() == second.getZipFile());
+        }
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+
+    @Test
+    void reopensChangedArchive() throws IOException {
+        File zip = namedZip("change.zip", "one.txt");
+        ZipArchiveCache cache = new ZipArchiveCache();
+
+        try (ZipArchiveCache.Archive archive = cache.open(zip)) {
+            assertNotNull(archive.findEntry("one.txt"));
+        }
+
+        namedZip("change.zip", "one.txt", "two.txt");
+        assertTrue(zip.setLastModified(zip.lastModified() - 10000));
+
+        try (ZipArchiveCache.Archive archive = cache.open(zip)) {
+            assertEquals("two.txt", read(archive, archive.findEntry("two.txt")));
+        }
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        File a = namedZip("a.zip", "a.txt");
+        File b = namedZip("b.zip", "b.txt");
+        File c = namedZip("c.zip", "c.txt");
+        ZipArchiveCache cache = new ZipArchiveCache(2);
+
+        ZipArchiveCache.Archive held = cache.open(a);
+        cache.open(b).close();
+        cache.open(c).close();
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        // an evicted archive stays usable until its handle is closed
+        ZipEntry entry = held.findEntry("a.txt");
+        assertEquals("a.txt", read(held, entry));
+        ZipFile zipFile = held.getZipFile();
+        held.close();
+        assertThrows(IllegalStateException.class, () -> zipFile.getInputStream(entry));
+
+        // b was used more recently than a, so it is still cached
+        cache.open(b).close();
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+
+    @Test
+    void invalidateClosesArchive() throws IOException {
+        File zip = namedZip("invalidate.zip", "one.txt");
+        ZipArchiveCache cache = new ZipArchiveCache();
+
+        ZipArchiveCache.Archive archive = cache.open(zip);
+        ZipFile zipFile = archive.getZipFile();
+        ZipEntry entry = archive.getEntry("one.txt");
+        archive.close();
+        cache.invalidate(zip);
+
+        assertEquals(0, cache.size());
+        assertThrows(IllegalStateException.class, () -> zipFile.getInputStream(entry));
+        try (ZipArchiveCache.Archive reopened = cache.open(zip)) {
+            assertFalse(zipFile == reopened.getZipFile());
+        }
+    }
+
+
+    @Test
+    void doubleCloseKeepsOtherHandlesOpen() throws IOException {
+        File a = namedZip("a.zip", "a.txt");
+        File b = namedZip("b.zip", "b.txt");
+        ZipArchiveCache cache = new ZipArchiveCache(1);
+
+        ZipArchiveCache.Archive first = cache.open(a);
+        ZipArchiveCache.Archive second = cache.open(a);
+        first.close();
+        first.close();
+
+        // evict a while the second handle is still open
+        cache.open(b).close();
+        assertEquals(1, cache.getEvictionCount());
+
+        ZipEntry entry = second.findEntry("a.txt");
+        assertEquals("a.txt", read(second, entry));
+        assertThrows(IllegalStateException.class, () -> first.findEntry("a.txt"));
+        assertThrows(IllegalStateException.class, () -> first.getZipFile());
+
+        ZipFile zipFile = second.getZipFile();
+        second.close();
+        second.close();
+        assertThrows(IllegalStateException.class, () -> zipFile.getInputStream(entry));
+    }
+
+
+    @Test
+    void extractEntryFromZipUsesSuffixLookup() throws IOException {
+        File zip = namedZip("extract.zip", "dir/config.properties", "other.txt");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(Utilities.extractEntryFromZip(zip, "CONFIG.properties", output));
+            assertArrayEquals("dir/config.properties".getBytes("UTF-8"), output.toByteArray());
+        }
+        assertFalse(Utilities.extractEntryFromZip(zip, "missing", output));
+        assertFalse(Utilities.extractEntryFromZip(new File(tempDir, "missing.zip"), "other.txt", output));
+    }
+
+
+    @Test
+    void mapsStoredAndDeflatedEntries() throws IOException {
+        byte[] data = new byte[300000];
+        new Random(25).nextBytes(data);
+        File zip = mixedZip("map.zip", data);
+        ZipArchiveCache cache = new ZipArchiveCache();
+
+        ByteBuffer stored;
+        ByteBuffer deflated;
+        try (ZipArchiveCache.Archive archive = cache.open(zip)) {
+            stored = archive.map(archive.getEntry("stored/data.bin"));
+            deflated = archive.map(archive.getEntry("deflated/data.bin"));
+
+            // a second mapping reuses the channel and central directory
+            assertArrayEquals(data, contents(archive.map(archive.getEntry("stored/data.bin"))));
+        }
+
+        // STORED data is mapped from the file, and both stay valid after close
+        assertTrue(stored.isDirect());
+        assertTrue(stored.isReadOnly());
+        assertTrue(deflated.isReadOnly());
+        assertArrayEquals(data, contents(stored));
+        assertArrayEquals(data, contents(deflated));
+    }
+
+
+    @Test
+    void mapEntryFromZipUsesSuffixLookup() throws IOException {
+        byte[] data = "mapped contents".getBytes("UTF-8");
+        File zip = mixedZip("lookup.zip", data);
+
+        assertArrayEquals(data, contents(Utilities.mapEntryFromZip(zip, "STORED/data.bin")));
+        assertArrayEquals(data, contents(Utilities.mapEntryFromZip(zip, "deflated/data.bin")));
+        assertNull(Utilities.mapEntryFromZip(zip, "missing.bin"));
+        assertNull(Utilities.mapEntryFromZip(new File(tempDir, "missing.zip"), "data.bin"));
+    }
+
+
+    @Test
+    void mapsEmptyStoredEntry() throws IOException {
+        File zip = mixedZip("empty.zip", new byte[0]);
+
+        try (ZipArchiveCache.Archive archive = new ZipArchiveCache().open(zip)) {
+            assertEquals(0, archive.map(archive.getEntry("stored/data.bin")).remaining());
+            assertEquals(0, archive.map(archive.getEntry("deflated/data.bin")).remaining());
+        }
+    }
+}